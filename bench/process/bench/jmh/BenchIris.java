@@ -0,0 +1,91 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.bench.jmh;
+
+import org.encog.engine.network.activation.ActivationTANH;
+import org.encog.neural.networks.BasicNetwork;
+import org.encog.neural.networks.layers.BasicLayer;
+import process.plugin.AbstractIris;
+import process.util.Dataset;
+import process.util.FlatMLDataSet;
+
+/**
+ * This class is the plugin the benchmarks drive: one hidden layer of tanh
+ * neurons sized by the benchmark, with the inputs and outputs sized by the
+ * data. Scoring is left to the benchmarks.
+ * @author Ron.Coleman
+ */
+public class BenchIris extends AbstractIris {
+    // Number of hidden neurons
+    private final int hidden;
+
+    /**
+     * Constructor
+     * @param dataset Loaded data
+     * @param hidden Number of hidden neurons
+     */
+    public BenchIris(Dataset dataset, int hidden) {
+        super(dataset);
+
+        this.hidden = hidden;
+    }
+
+    @Override
+    public void createNetwork() {
+        network = new BasicNetwork();
+        network.addLayer(new BasicLayer(null, true, allData.getInputSize()));
+        network.addLayer(new BasicLayer(new ActivationTANH(), true, hidden));
+        network.addLayer(new BasicLayer(new ActivationTANH(), false, allData.getIdealSize()));
+        network.getStructure().finalizeStructure();
+        network.reset(0);
+    }
+
+    @Override
+    public void testNetwork() {
+        throw new UnsupportedOperationException("scored by the benchmarks");
+    }
+
+    /**
+     * Gets the loaded data.
+     * @return Data set
+     */
+    public Dataset getDataset() {
+        return dataset;
+    }
+
+    /**
+     * Gets the normalized rows.
+     * @return Rows
+     */
+    public FlatMLDataSet getAllData() {
+        return allData;
+    }
+
+    /**
+     * Gets the network.
+     * @return Network
+     */
+    public BasicNetwork getNetwork() {
+        return network;
+    }
+}
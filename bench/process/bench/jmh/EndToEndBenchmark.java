@@ -0,0 +1,127 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.bench.jmh;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import process.bench.SyntheticCsv;
+import process.score.BatchClassifier;
+import process.train.TrainConfig;
+import process.util.Helper;
+
+/**
+ * This class benchmarks the whole pipeline the way Main runs it: load,
+ * normalize, split, train for a fixed number of epochs, then score every
+ * row. Each run is timed once since a run is long and warms itself up.
+ * @author Ron.Coleman
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Dprocess.metrics=none")
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class EndToEndBenchmark {
+    // Number of rows, from 10^4 up to 10^8
+    @Param({"10000", "100000", "1000000"})
+    public int rows;
+
+    // Number of features
+    @Param({"4"})
+    public int width;
+
+    // Number of classes
+    @Param({"3"})
+    public int classes;
+
+    // Number of hidden neurons
+    @Param({"16"})
+    public int hidden;
+
+    // Training epochs
+    @Param({"10"})
+    public int epochs;
+
+    // Path of the synthetic CSV
+    private String path;
+
+    /**
+     * Writes the CSV, if it isn't there already.
+     * @throws Exception
+     */
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        Helper.DEBUGGING = false;
+
+        path = PipelineState.getCsv(rows, width, classes);
+    }
+
+    /**
+     * Runs the whole pipeline from loading through scoring.
+     * @return Classes
+     * @throws Exception
+     */
+    @Benchmark
+    public int[] pipeline() throws Exception {
+        BenchIris iris = new BenchIris(Helper.loadCsv(path, SyntheticCsv.getTypes(width), SyntheticCsv.CLASSIFYING), hidden);
+
+        iris.normalizeData();
+        iris.createTrainingData();
+        iris.createNetwork();
+
+        iris.setTrainConfig(TrainConfig.fromProperties().setMaxEpochs(epochs).setValidateEvery(0));
+        iris.trainNetwork();
+
+        BatchClassifier classifier = iris.createClassifier();
+
+        // Score the raw features as a client would send them
+        double[][] features = new double[width][];
+
+        for(int col=0; col < width; col++)
+            features[col] = iris.getDataset().getTable().getDecimals(col);
+
+        double[] row = new double[width];
+
+        int[] scores = new int[rows];
+
+        for(int k=0; k < rows; k++) {
+            for(int col=0; col < width; col++)
+                row[col] = features[col][k];
+
+            scores[k] = classifier.classify(row, 0);
+        }
+
+        return scores;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.bench.jmh;
+
+import java.io.File;
+import org.encog.neural.networks.training.propagation.Propagation;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import process.bench.SyntheticCsv;
+import process.score.BatchClassifier;
+import process.train.ParallelEvaluation;
+import process.train.TrainConfig;
+import process.util.Dataset;
+import process.util.Helper;
+
+/**
+ * This class holds what each pipeline stage starts from, built once per
+ * trial so a benchmark measures only its own stage: the synthetic CSV, the
+ * data loaded from it, a plugin normalized and split, a trainer, an
+ * evaluation of the test rows, and a classifier with the raw features to
+ * score.
+ * <p>
+ * The CSV is written to the temp directory the first time a size is asked
+ * for and reused after that, since 10^8 rows take a while to write. Run the
+ * large sizes with a heap to match, e.g., -jvmArgsAppend -Xmx16g.
+ * @author Ron.Coleman
+ */
+@State(Scope.Benchmark)
+public class PipelineState {
+    // Number of rows, from 10^4 up to 10^8
+    @Param({"10000", "100000", "1000000"})
+    public int rows;
+
+    // Number of features
+    @Param({"4"})
+    public int width;
+
+    // Number of classes
+    @Param({"3"})
+    public int classes;
+
+    // Number of hidden neurons
+    @Param({"16"})
+    public int hidden;
+
+    // Path of the synthetic CSV
+    String path;
+
+    // Column types of the CSV
+    char[] types;
+
+    // Data loaded from the CSV
+    Dataset dataset;
+
+    // Plugin with the data normalized and split and the network created
+    BenchIris iris;
+
+    // Trainer on the training rows
+    Propagation train;
+
+    // Scores the network on the test rows
+    ParallelEvaluation evaluation;
+
+    // Classifier of the raw features
+    BatchClassifier classifier;
+
+    // Raw features of every row, row after row
+    double[] features;
+
+    // Class of every row, once scored
+    int[] scores;
+
+    /**
+     * Runs the pipeline once so each stage has its inputs ready.
+     * @throws Exception
+     */
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        Helper.DEBUGGING = false;
+
+        path = getCsv(rows, width, classes);
+
+        types = SyntheticCsv.getTypes(width);
+
+        dataset = Helper.loadCsv(path, types, SyntheticCsv.CLASSIFYING);
+
+        iris = new BenchIris(dataset, hidden);
+        iris.normalizeData();
+        iris.createTrainingData();
+        iris.createNetwork();
+
+        train = TrainConfig.fromProperties().createTrainer(iris.getNetwork(), iris.getTrainingSet());
+
+        evaluation = new ParallelEvaluation(iris.getNetwork(), iris.getLabels());
+
+        classifier = iris.createClassifier();
+
+        features = new double[rows * width];
+
+        for(int col=0; col < width; col++) {
+            double[] decimals = dataset.getTable().getDecimals(col);
+
+            for(int row=0; row < rows; row++)
+                features[row * width + col] = decimals[row];
+        }
+
+        scores = new int[rows];
+    }
+
+    /**
+     * Stops the trainer's workers.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        train.finishTraining();
+    }
+
+    /**
+     * Gets a synthetic CSV, writing it if it's not already there.
+     * @param rows Number of rows
+     * @param width Number of features
+     * @param classes Number of classes
+     * @return File path
+     * @throws Exception
+     */
+    static String getCsv(int rows, int width, int classes) throws Exception {
+        File file = new File(System.getProperty("java.io.tmpdir"), "iris-" + rows + "x" + width + "-" + classes + ".csv");
+
+        if(!file.exists()) {
+            File temp = new File(file.getPath() + ".tmp");
+
+            SyntheticCsv.write(temp.getPath(), rows, width, classes, 0);
+
+            if(!temp.renameTo(file))
+                throw new Exception("can't rename " + temp);
+        }
+
+        return file.getPath();
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.bench.jmh;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import process.bench.SyntheticCsv;
+import process.util.Dataset;
+import process.util.FlatMLDataSet;
+import process.util.Helper;
+
+/**
+ * This class benchmarks each stage of the pipeline on its own: loading the
+ * CSV, normalizing, splitting, one training epoch, testing, and scoring
+ * every row. Each operation covers all the rows of its stage, so rows per
+ * second is the score times the rows parameter. Run with -prof gc for the allocation rate and GC
+ * counts, as the bench target does.
+ * @author Ron.Coleman
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Dprocess.metrics=none")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class StageBenchmark {
+    /**
+     * Loads the CSV with the configured loader.
+     * @param state Pipeline
+     * @return Data set
+     * @throws Exception
+     */
+    @Benchmark
+    public Dataset load(PipelineState state) throws Exception {
+        return Helper.loadCsv(state.path, state.types, SyntheticCsv.CLASSIFYING);
+    }
+
+    /**
+     * Normalizes the loaded data.
+     * @param state Pipeline
+     * @return Normalized rows
+     */
+    @Benchmark
+    public FlatMLDataSet normalize(PipelineState state) {
+        BenchIris iris = new BenchIris(state.dataset, state.hidden);
+
+        iris.normalizeData();
+
+        return iris.getAllData();
+    }
+
+    /**
+     * Splits the normalized rows into training and test rows.
+     * @param state Pipeline
+     * @return Training rows
+     */
+    @Benchmark
+    public FlatMLDataSet split(PipelineState state) {
+        state.iris.createTrainingData();
+
+        return state.iris.getTrainingSet();
+    }
+
+    /**
+     * Trains the network for an epoch.
+     * @param state Pipeline
+     * @return Training error
+     */
+    @Benchmark
+    public double trainEpoch(PipelineState state) {
+        state.train.iteration();
+
+        return state.train.getError();
+    }
+
+    /**
+     * Scores the network on the test rows.
+     * @param state Pipeline
+     * @return Accuracy
+     */
+    @Benchmark
+    public double test(PipelineState state) {
+        return state.evaluation.evaluate(state.iris.getTestSet()).getAccuracy();
+    }
+
+    /**
+     * Classifies every row of raw features.
+     * @param state Pipeline
+     * @return Classes
+     */
+    @Benchmark
+    public int[] score(PipelineState state) {
+        state.classifier.classify(state.features, state.rows, state.scores);
+
+        return state.scores;
+    }
+}
@@ -22,9 +22,27 @@
  */
 package process;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.encog.neural.networks.BasicNetwork;
+import process.plugin.AbstractIris;
 import process.plugin.INeuralProcess;
+import process.plugin.InstrumentedProcess;
+import process.plugin.StageReport;
+import process.score.ScoringServer;
+import process.search.Candidate;
+import process.train.StreamingTrainer;
+import process.train.TrainConfig;
+import process.train.TrainingProgress;
+import process.util.Constant;
+import process.util.Helper;
+import process.util.ModelArtifact;
+import process.util.NormalizedBatchReader;
 
 
 /**
@@ -36,30 +54,178 @@ public class Main {
      * @param args the command line arguments
      */
     public static void main(String[] args) {
+        // A saved model to start from and save to, e.g., -Dprocess.model=iris.model
+        String model = System.getProperty("process.model");
+        
+        boolean warm = model != null && new File(model).exists();
+        
+        boolean serve = Boolean.getBoolean("process.serve");
+        
+        // Train on data too big to load, e.g., -Dprocess.stream=big.csv
+        String stream = System.getProperty("process.stream");
+        
+        if (stream != null) {
+            stream(stream, model);
+            
+            return;
+        }
+        
+        // Serve a saved model straight away unless we're to retrain it
+        if (warm && serve && !Boolean.getBoolean("process.model.retrain")) {
+            try {
+                ScoringServer.fromProperties(ModelArtifact.load(model).createClassifier()).start();
+            } catch (IOException ex) {
+                Logger.getLogger(Main.class.getName()).log(Level.SEVERE, null, ex);
+            }
+            
+            return;
+        }
+        
+        // Cross-validate instead if asked, e.g., -Dprocess.folds=10
+        int folds = Integer.getInteger("process.folds", 0);
+        
+        // A saved model has trained on every fold, so it would score rows it's seen
+        if (folds > 1 && warm) {
+            Logger.getLogger(Main.class.getName()).log(Level.SEVERE,
+                    "can''t cross-validate saved model {0}, drop process.model or process.folds", model);
+            return;
+        }
+        
         // Load the processor
         INeuralProcess process = loadProcess();
         
+        // Record what each stage costs if asked, e.g., -Dprocess.instrument=true
+        if (process != null && Boolean.getBoolean("process.instrument"))
+            process = new InstrumentedProcess(process);
+        
+        // Start from the saved model, if there is one
+        if (warm) {
+            try {
+                process.loadModel(model);
+            } catch (IOException ex) {
+                Logger.getLogger(Main.class.getName()).log(Level.SEVERE, null, ex);
+                return;
+            }
+        }
+        
         // Normalize the data
         process.normalizeData();
         
+        if (folds > 1) {
+            process.createNetwork();
+            
+            process.crossValidate(folds);
+            
+            report(process);
+            
+            return;
+        }
+        
         // From the normalized data, create the training data
         process.createTrainingData();
         
-        // Build the ANN
-        process.createNetwork();
+        // Build the ANN, unless we're resuming a saved one
+        if (!warm)
+            process.createNetwork();
         
         // Using the training data, train the network
         process.trainNetwork();
         
+        // Save the trained model for next time
+        if (model != null) {
+            try {
+                process.saveModel(model);
+            } catch (IOException ex) {
+                Logger.getLogger(Main.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+        
         // Using the test data, test the network
         process.testNetwork();
+        
+        report(process);
+        
+        // Keep the model loaded and serve it if asked, e.g., -Dprocess.serve=true
+        if (serve) {
+            try {
+                ScoringServer.fromProperties(process.createClassifier()).start();
+            } catch (IOException ex) {
+                Logger.getLogger(Main.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+
+    /**
+     * Trains a network on mini-batches streamed from a CSV file or its
+     * snapshot, a ".snap" file, and saves it if there's a model path.
+     * @param path Path to the CSV file or snapshot
+     * @param model Path to save the model to or null
+     */
+    private static void stream(String path, String model) {
+        // Keep the parser from echoing every row
+        Helper.DEBUGGING = false;
+        
+        char[] types = System.getProperty("process.stream.types", new String(AbstractIris.DATA_TYPES)).toCharArray();
+        
+        String classifying = System.getProperty("process.stream.classifying", Constant.CLASSIFYING);
+        
+        String[] sizes = System.getProperty("process.stream.hidden", "8").split(",");
+        
+        int[] hidden = new int[sizes.length];
+        
+        for (int k = 0; k < sizes.length; k++)
+            hidden[k] = Integer.parseInt(sizes[k].trim());
+        
+        String activation = System.getProperty("process.stream.activation", Candidate.TANH);
+        
+        try (NormalizedBatchReader reader = NormalizedBatchReader.open(path, types, classifying, AbstractIris.NORMALIZATION, AbstractIris.LABELS)) {
+            BasicNetwork network = new Candidate(hidden, activation, Constant.TRAIN_THRESHOLD)
+                    .createNetwork(reader.getInputSize(), reader.getIdealSize(), 0);
+            
+            StreamingTrainer trainer = new StreamingTrainer(TrainConfig.fromProperties(), Constant.TRAIN_THRESHOLD);
+            
+            TrainingProgress progress = trainer.train(network, reader);
+            
+            Logger.getLogger(Main.class.getName()).log(Level.INFO, "streamed {0} epochs to error {1}: {2}",
+                    new Object[] { progress.getEpoch(), progress.getTrainingError(), trainer.getReason() });
+            
+            if (model != null)
+                new ModelArtifact(network, reader.getNormalizer(), reader.getInputs(), reader.getClassifying(),
+                        reader.getSubtypes(), reader.getLabels().getKind()).save(model);
+        } catch (Exception ex) {
+            Logger.getLogger(Main.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * Reports what each stage cost, if the process is instrumented: to the
+     * log and, e.g., -Dprocess.instrument.file=stages.json, as JSON.
+     * @param process Process plug-in
+     */
+    private static void report(INeuralProcess process) {
+        if (!(process instanceof InstrumentedProcess))
+            return;
+        
+        StageReport report = ((InstrumentedProcess) process).getReport();
+        
+        Logger.getLogger(Main.class.getName()).log(Level.INFO, "stages:\n{0}", report);
+        
+        String path = System.getProperty("process.instrument.file");
+        
+        if (path != null) {
+            try {
+                Files.write(Paths.get(path), report.toJson().getBytes(StandardCharsets.UTF_8));
+            } catch (IOException ex) {
+                Logger.getLogger(Main.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
     }
 
     /**
      * Loads the process plug-in.
      * @return Process plug-in
      */
-    private static INeuralProcess loadProcess() {
+    public static INeuralProcess loadProcess() {
         // Check the properties for the iris plugin
         String className = System.getProperty("process.plugin");
 
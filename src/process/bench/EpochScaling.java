@@ -0,0 +1,94 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.bench;
+
+import org.encog.engine.network.activation.ActivationTANH;
+import org.encog.neural.networks.BasicNetwork;
+import org.encog.neural.networks.layers.BasicLayer;
+import org.encog.neural.networks.training.propagation.Propagation;
+import process.train.TrainConfig;
+import process.util.DoubleStore;
+import process.util.FlatMLDataSet;
+
+/**
+ * This class measures wall-clock time per training epoch as the number of
+ * worker threads grows, to show the gradient computation scales.
+ * <p>
+ * Usage: EpochScaling [rows [width [hidden [epochs [max threads]]]]]
+ * <br>The other training settings come from the process.train properties.
+ * @author Ron.Coleman
+ */
+public class EpochScaling {
+    /**
+     * @param args the command line arguments
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int width = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int hidden = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+        int epochs = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        int maxThreads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+        FlatMLDataSet data = new SyntheticIris(width, 3, 0).generate(rows, DoubleStore.HEAP);
+
+        TrainConfig config = TrainConfig.fromProperties();
+
+        System.out.println("rows=" + rows + " width=" + width + " hidden=" + hidden + " " + config);
+        System.out.println("threads,ms/epoch,speedup,rows/sec");
+
+        double base = 0;
+
+        for(int threads=1; ; threads = Math.min(2 * threads, maxThreads)) {
+            BasicNetwork network = new BasicNetwork();
+            network.addLayer(new BasicLayer(null, true, width));
+            network.addLayer(new BasicLayer(new ActivationTANH(), true, hidden));
+            network.addLayer(new BasicLayer(new ActivationTANH(), false, data.getIdealSize()));
+            network.getStructure().finalizeStructure();
+            network.reset(0);
+
+            Propagation train = config.setThreads(threads).createTrainer(network, data);
+
+            // Let the JIT and the worker pool settle
+            for(int epoch=0; epoch < 3; epoch++)
+                train.iteration();
+
+            long start = System.nanoTime();
+
+            for(int epoch=0; epoch < epochs; epoch++)
+                train.iteration();
+
+            double ms = (System.nanoTime() - start) / 1e6 / epochs;
+
+            train.finishTraining();
+
+            if(threads == 1)
+                base = ms;
+
+            System.out.printf("%d,%.3f,%.2f,%.0f%n", threads, ms, base / ms, rows / (ms / 1000));
+
+            if(threads == maxThreads)
+                break;
+        }
+    }
+}
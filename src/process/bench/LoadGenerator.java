@@ -0,0 +1,168 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.bench;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import process.score.LatencyHistogram;
+
+/**
+ * This class loads a local scoring server: client threads post rows drawn
+ * from a CSV as fast as they can for a while, then it prints the QPS and
+ * latency percentiles the clients saw, and the server's own metrics.
+ * <p>
+ * Usage: LoadGenerator [port [threads [seconds [rows/request [csv [width]]]]]]
+ * @author Ron.Coleman
+ */
+public class LoadGenerator {
+    /**
+     * @param args the command line arguments
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int rowsPerRequest = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        String path = args.length > 4 ? args[4] : "iris.csv";
+        int width = args.length > 5 ? Integer.parseInt(args[5]) : 4;
+
+        ArrayList<String> rows = readRows(path, width);
+
+        URL url = new URL("http://localhost:" + port + "/classify");
+
+        LatencyHistogram latencies = new LatencyHistogram();
+
+        AtomicLong failures = new AtomicLong();
+
+        long end = System.nanoTime() + seconds * 1000000000L;
+
+        Thread[] clients = new Thread[threads];
+
+        for(int t=0; t < threads; t++) {
+            final Random ran = new Random(t);
+
+            clients[t] = new Thread(() -> {
+                byte[] buffer = new byte[4096];
+
+                while(System.nanoTime() < end) {
+                    StringBuilder body = new StringBuilder();
+
+                    for(int k=0; k < rowsPerRequest; k++)
+                        body.append(rows.get(ran.nextInt(rows.size()))).append('\n');
+
+                    long start = System.nanoTime();
+
+                    try {
+                        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+
+                        conn.setRequestMethod("POST");
+                        conn.setDoOutput(true);
+
+                        try (OutputStream out = conn.getOutputStream()) {
+                            out.write(body.toString().getBytes(StandardCharsets.UTF_8));
+                        }
+
+                        if(conn.getResponseCode() != 200)
+                            failures.incrementAndGet();
+
+                        try (InputStream in = conn.getInputStream()) {
+                            while(in.read(buffer) >= 0)
+                                ;
+                        }
+
+                        latencies.record(System.nanoTime() - start);
+                    }
+                    catch(Exception ex) {
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+
+            clients[t].start();
+        }
+
+        for(Thread client: clients)
+            client.join();
+
+        long count = latencies.getCount();
+
+        System.out.printf("threads %d, rows/request %d: %d requests, %d failures, %.0f qps, p50 %.3f ms, p99 %.3f ms, p99.9 %.3f ms%n",
+                threads, rowsPerRequest, count, failures.get(), (double) count / seconds,
+                latencies.getPercentile(50), latencies.getPercentile(99), latencies.getPercentile(99.9));
+
+        // What the server says about itself
+        try (InputStream in = new URL("http://localhost:" + port + "/metrics").openStream()) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+
+            for(String line = reader.readLine(); line != null; line = reader.readLine())
+                System.out.println("server " + line);
+        }
+    }
+
+    /**
+     * Reads rows of features from a CSV file, skipping any that don't parse.
+     * @param path Path to the file
+     * @param width Number of leading decimal columns to keep
+     * @return Rows as comma-separated features
+     * @throws Exception
+     */
+    private static ArrayList<String> readRows(String path, int width) throws Exception {
+        ArrayList<String> rows = new ArrayList<>();
+
+        try (BufferedReader br = new BufferedReader(new FileReader(path))) {
+            for(String line = br.readLine(); line != null; line = br.readLine()) {
+                String[] fields = line.split(",");
+
+                if(fields.length < width)
+                    continue;
+
+                try {
+                    StringBuilder row = new StringBuilder();
+
+                    for(int k=0; k < width; k++) {
+                        Double.parseDouble(fields[k]);
+
+                        row.append(k == 0 ? "" : ",").append(fields[k]);
+                    }
+
+                    rows.add(row.toString());
+                }
+                catch(NumberFormatException ex) {
+                    // Header or bad row
+                }
+            }
+        }
+
+        return rows;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.bench;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import process.util.Constant;
+
+/**
+ * This class writes iris-shaped CSV files of any size for benchmarks: a
+ * header, some number of decimal features with one decimal place like the
+ * measurements in iris.csv, then the nominal class in the last column.
+ * Rows stream straight to the file so 10^8 of them need no more memory
+ * than ten.
+ * <p>
+ * Usage: SyntheticCsv path [rows [width [classes [seed]]]]
+ * @author Ron.Coleman
+ */
+public class SyntheticCsv {
+    // Title of the class column, same as iris.csv
+    public final static String CLASSIFYING = "iris";
+
+    // Feature titles of iris.csv, used when the width matches
+    private final static String[] TITLES = {
+        "sepal length", "sepal width", "petal length", "petal width"
+    };
+
+    // Class names of iris.csv, used when there are few enough classes
+    private final static String[] NAMES = {
+        "setosa", "versicolor", "virginica"
+    };
+
+    // Size of the write buffer
+    private final static int BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * Gets the column types of a file for loading.
+     * @param width Number of features
+     * @return Decimals then the nominal class
+     * @see process.util.Helper#loadCsv(String, char[], String)
+     */
+    public static char[] getTypes(int width) {
+        char[] types = new char[width + 1];
+
+        for(int col=0; col < width; col++)
+            types[col] = Constant.TYPE_DECIMAL;
+
+        types[width] = Constant.TYPE_NOMINAL;
+
+        return types;
+    }
+
+    /**
+     * Writes a file.
+     * @param path File path
+     * @param rows Number of rows, not counting the header
+     * @param width Number of features
+     * @param classes Number of classes
+     * @param seed Random seed
+     * @throws IOException
+     */
+    public static void write(String path, long rows, int width, int classes, long seed) throws IOException {
+        SyntheticIris source = new SyntheticIris(width, classes, seed);
+
+        String[] names = new String[classes];
+
+        for(int k=0; k < classes; k++)
+            names[k] = classes <= NAMES.length ? NAMES[k] : "class" + k;
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(path), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            StringBuilder line = new StringBuilder();
+
+            for(int col=0; col < width; col++)
+                line.append(width == TITLES.length ? TITLES[col] : "feature " + col).append(',');
+
+            line.append(CLASSIFYING).append('\n');
+
+            writer.append(line);
+
+            double[] features = new double[width];
+
+            for(long row=0; row < rows; row++) {
+                int k = source.next(features);
+
+                line.setLength(0);
+
+                // Map [-1, 1] onto [2, 6] in tenths, formatted by hand since
+                // String.format would dominate at this scale
+                for(int col=0; col < width; col++) {
+                    int tenths = (int) Math.round(40 + 20 * features[col]);
+
+                    line.append(tenths / 10).append('.').append(tenths % 10).append(',');
+                }
+
+                line.append(names[k]).append('\n');
+
+                writer.append(line);
+            }
+        }
+    }
+
+    /**
+     * @param args the command line arguments
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        if(args.length < 1) {
+            System.err.println("usage: SyntheticCsv path [rows [width [classes [seed]]]]");
+            System.exit(1);
+        }
+
+        long rows = args.length > 1 ? Long.parseLong(args[1]) : 10000;
+        int width = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int classes = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 0;
+
+        long start = System.nanoTime();
+
+        write(args[0], rows, width, classes, seed);
+
+        System.out.printf("wrote %d rows of width %d in %.1f s%n", rows, width, (System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.bench;
+
+import java.io.IOException;
+import java.util.Random;
+import process.util.DoubleStore;
+import process.util.FlatMLDataSet;
+import process.util.LabelEncoding;
+
+/**
+ * This class makes iris-shaped data of any size for benchmarks: some number
+ * of decimal features and one nominal class, with each class clustered
+ * around its own center so there's something to learn.
+ * @author Ron.Coleman
+ */
+public class SyntheticIris {
+    // Number of features
+    private final int width;
+
+    // Number of classes
+    private final int classes;
+
+    // Random number generator for the rows
+    private final Random ran;
+
+    // Cluster center of each class
+    private final double[][] centers;
+
+    /**
+     * Constructor
+     * @param width Number of features
+     * @param classes Number of classes
+     * @param seed Random seed
+     */
+    public SyntheticIris(int width, int classes, long seed) {
+        this.width = width;
+        this.classes = classes;
+        this.ran = new Random(seed);
+
+        centers = new double[classes][width];
+
+        for(int k=0; k < classes; k++)
+            for(int col=0; col < width; col++)
+                centers[k][col] = ran.nextDouble() - 0.5;
+    }
+
+    /**
+     * Makes the next row.
+     * @param features Buffer for the features in [-1, 1]
+     * @return Class of the row
+     */
+    public int next(double[] features) {
+        int k = ran.nextInt(classes);
+
+        for(int col=0; col < width; col++)
+            features[col] = Math.max(-1, Math.min(1, centers[k][col] + 0.2 * ran.nextGaussian()));
+
+        return k;
+    }
+
+    /**
+     * Makes a normalized data set with equilateral ideals.
+     * @param rows Number of rows
+     * @param storage Storage kind: heap, direct, or mapped
+     * @return Data set
+     * @throws IOException
+     */
+    public FlatMLDataSet generate(int rows, String storage) throws IOException {
+        LabelEncoding labels = new LabelEncoding(LabelEncoding.EQUILATERAL, classes);
+
+        FlatMLDataSet data = FlatMLDataSet.allocate(storage, rows, width, labels.getWidth());
+
+        DoubleStore store = data.getStore();
+
+        double[] features = new double[width];
+
+        for(int row=0; row < rows; row++) {
+            int k = next(features);
+
+            store.put(data.offset(row), features, 0, width);
+
+            store.put(data.offset(row) + width, labels.getTable(), k * labels.getWidth(), labels.getWidth());
+        }
+
+        return data;
+    }
+}
@@ -23,19 +23,35 @@
 package process.plugin;
 
 import process.util.Constant;
-import static process.util.Constant.CLASSIFYING;
+import process.util.DataTable;
+import process.util.Dataset;
+import process.util.DoubleStore;
+import process.util.FlatMLDataSet;
 import process.util.Helper;
+import process.util.LabelEncoding;
+import process.util.ModelArtifact;
+import process.util.NominalDictionary;
+import process.util.Normalizer;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.encog.mathutil.Equilateral;
-import org.encog.ml.data.basic.BasicMLDataSet;
 import org.encog.neural.networks.BasicNetwork;
-import org.encog.neural.networks.training.propagation.resilient.ResilientPropagation;
-import org.encog.util.arrayutil.NormalizationAction;
-import org.encog.util.arrayutil.NormalizedField;
+import process.score.BatchClassifier;
+import process.train.CrossValidation;
+import process.train.NetworkTrainer;
+import process.train.ParallelEvaluation;
+import process.train.TrainConfig;
+import process.train.TrainingProgress;
 import static process.util.Constant.TRAIN_FRACTION;
 import static process.util.Constant.TRAIN_THRESHOLD;
+import static process.util.Constant.VALIDATION_FRACTION;
 
 /**
  * This class partially implements an neural process for the iris data.
@@ -44,6 +60,18 @@ import static process.util.Constant.TRAIN_THRESHOLD;
 abstract public class AbstractIris implements INeuralProcess {
     // Controls certain debugging operations
     public static boolean DEBUGGING = false;
+    
+    // Input normalization: "range" scales onto [-1, 1], "zscore" standardizes
+    public static String NORMALIZATION = System.getProperty("process.normalize", "range");
+    
+    // Where the normalized data lives: "heap", or off the heap "direct" or "mapped"
+    public static String STORAGE = System.getProperty("process.storage", DoubleStore.HEAP);
+    
+    // Ideal encoding: "equilateral", "oneofn", or "binary"
+    public static String LABELS = System.getProperty("process.labels", LabelEncoding.EQUILATERAL);
+    
+    // Rows normalized at a time, blocks going to all the cores
+    public static int NORMALIZE_BLOCK = Integer.getInteger("process.normalize.block", 64 * 1024);
 
     // Defines the column data types in iris.csv
     public final static char[] DATA_TYPES = {
@@ -72,23 +100,41 @@ abstract public class AbstractIris implements INeuralProcess {
     /** Number of test (input and ideal) data rows */
     protected int numTestRows = -1;
     
-    // Training data set
-    protected BasicMLDataSet trainingSet;
+    // Loaded data, shared read-only with anything else using it
+    protected final Dataset dataset;
+    
+    // Training data set, a view of the training rows of allData
+    protected FlatMLDataSet trainingSet;
+    
+    // Test data set, a view of the test rows of allData
+    protected FlatMLDataSet testSet;
     
     // Neural network
     protected BasicNetwork network;
+    
+    // Algorithm, threads, and batch size for training
+    protected TrainConfig trainConfig = TrainConfig.fromProperties();
  
-    // Using equilateral (as opposed to one-of-n) normalization
+    // Encodes the subtypes as ideals and decodes outputs
+    protected LabelEncoding labels = null;
+    
+    // Using equilateral (as opposed to one-of-n) normalization, null otherwise
     protected Equilateral equilateral = null;
     
     // Nominal subtypes: for irs.csv it's setosa, versicolor, and virginica
     protected ArrayList<String> subtypes = null;
        
-    // All normalized inputs: training and test
-    protected double[][] allInputs = null;
+    // All normalized rows, inputs then ideals: training and test
+    protected FlatMLDataSet allData = null;
+    
+    // Table columns of the inputs
+    protected int[] inputColumns = null;
     
-    // All normalized ideals: training and test
-    protected double [][] allIdeals = null;
+    // Normalizes the inputs over [-1, 1] or to z-scores
+    protected Normalizer normalizer = null;
+    
+    // Scores the network on the test rows, keeping its buffers between tests
+    protected ParallelEvaluation evaluation = null;
     
     /**
      * Constructor
@@ -114,27 +160,60 @@ abstract public class AbstractIris implements INeuralProcess {
      * @see process.util.Constant
      */
     protected AbstractIris(String classifying, String path, char[] columnTypes) {
-        try {
-            // Load the csv file into memory
-            Helper.loadCsv(path, columnTypes);
-            
-            // Compute the data indexes
-            this.trainStart = 0;
-            this.trainEnd = (int) (Helper.rowCount * TRAIN_FRACTION + 0.5) - 1;
-            this.numTrainRows = this.trainEnd - this.trainStart + 1;
+        this(load(classifying, path, columnTypes));
+    }
+    
+    /**
+     * Constructor
+     * @param dataset Loaded data, which may be shared with other plugins
+     */
+    protected AbstractIris(Dataset dataset) {
+        this.dataset = dataset;
+        
+        if(dataset == null)
+            return;
+        
+        // Compute the data indexes
+        this.trainStart = 0;
+        this.trainEnd = (int) (dataset.getRowCount() * TRAIN_FRACTION + 0.5) - 1;
+        this.numTrainRows = this.trainEnd - this.trainStart + 1;
 
-            this.testStart = this.trainEnd + 1;
-            this.testEnd = Helper.rowCount - 1;
-            this.numTestRows = this.testEnd - this.testStart + 1;            
-            
-            // Get the number of subtypes of the nominal data
-            this.subtypes = Helper.getNominalSubtypes();
+        this.testStart = this.trainEnd + 1;
+        this.testEnd = dataset.getRowCount() - 1;
+        this.numTestRows = this.testEnd - this.testStart + 1;            
+
+        // Get the number of subtypes of the nominal data
+        this.subtypes = new ArrayList<>(dataset.getSubtypes());
+
+        // Define the encodings, e.g., equilateral over [-1, 1].
+        setLabels(LABELS);
+    }
+    
+    /**
+     * Sets how the subtypes get encoded as ideals.
+     * @param kind Encoding: equilateral, oneofn, or binary
+     */
+    protected final void setLabels(String kind) {
+        this.labels = new LabelEncoding(kind, subtypes.size());
         
-            // Define the equilateral over [-1, 1].
-            this.equilateral = new Equilateral(subtypes.size(), -1, 1); 
+        this.equilateral = kind.equals(LabelEncoding.EQUILATERAL) ? new Equilateral(subtypes.size(), -1, 1) : null;
+    }
+    
+    /**
+     * Loads a CSV file.
+     * @param classifying Header column name
+     * @param path File path of the CSV data
+     * @param columnTypes Column types
+     * @return Data set or null if it couldn't be loaded
+     */
+    private static Dataset load(String classifying, String path, char[] columnTypes) {
+        try {
+            return Helper.loadCsv(path, columnTypes, classifying);
         } catch (Exception ex) {
             Logger.getLogger(AbstractIris.class.getName()).log(Level.SEVERE, null, ex);
         }
+        
+        return null;
     }
     
     /**
@@ -142,72 +221,94 @@ abstract public class AbstractIris implements INeuralProcess {
      */
     @Override
     public void normalizeData() {        
-        ArrayList<String> headers = Helper.headers;
-        
-        // Normalize the independent variables
-        int numCols = Helper.headers.size() - 1;
+        DataTable data = dataset.getTable();
         
-        // This variable hold the preliminary normalized inputs in row-major form
-        double[][] inputs_ = new double[numCols][];
+        // The independent variables are the decimals we're not classifying,
+        // unless a loaded model says which
+        if(inputColumns == null) {
+            int numCols = 0;
 
-        for(int index=0; index < numCols; index++) {
-            String header = headers.get(index);
-            
-            if(!headers.get(index).equals(CLASSIFYING)) {
-                double[] normalized = normalizeInputs(header);
-                
-                inputs_[index] = normalized;
+            inputColumns = new int[data.getColumnCount()];
+
+            for(int col=0; col < data.getColumnCount(); col++) {
+                if(data.getType(col) == Constant.TYPE_DECIMAL && col != dataset.getClassColumn())
+                    inputColumns[numCols++] = col;
             }
+
+            inputColumns = Arrays.copyOf(inputColumns, numCols);
         }
         
-        // Transpose the normalized inputs into column-major form
-        allInputs = new double[Helper.rowCount][numCols];
+        int numCols = inputColumns.length;
         
-        for(int row=0; row < Helper.rowCount; row++) {
-            for(int col=0; col < numCols; col++) {
-                allInputs[row][col] = inputs_[col][row];
-            }
+        // Normalize the independent variables in one pass, straight into
+        // row-major form with the rows in shuffled order, the way a loaded
+        // model was trained if there is one
+        if(normalizer == null)
+            normalizer = NORMALIZATION.equals("zscore") ?
+                    Normalizer.fitZScore(data, inputColumns) : Normalizer.fit(data, inputColumns, -1, 1);
+        
+        try {
+            allData = FlatMLDataSet.allocate(STORAGE, dataset.getRowCount(), numCols, labels.getWidth());
+        } catch (IOException ex) {
+            Logger.getLogger(AbstractIris.class.getName()).log(Level.SEVERE, null, ex);
+            return;
         }
         
-        // Normalize the dependent variable which is in column-major form
-        allIdeals = normalizeIdeals(Constant.CLASSIFYING);
+        normalize(data, dataset.getOrder());
+        
+        // Normalize the dependent variable next to the inputs
+        normalizeIdeals(dataset.getClassifying(), allData);
     }
+    
+    /**
+     * Normalizes the inputs into the rows of all the data, a block of rows
+     * per task on all the cores since the blocks don't overlap.
+     * @param data Data
+     * @param order Table row for each row
+     */
+    private void normalize(DataTable data, int[] order) {
+        DoubleStore store = allData.getStore();
+        
+        int stride = allData.getStride();
+        
+        if(order.length <= NORMALIZE_BLOCK) {
+            normalizer.normalize(data, inputColumns, order, store, 0, stride);
+            return;
+        }
+        
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        
+        for(int from=0; from < order.length; from += NORMALIZE_BLOCK) {
+            final int start = from;
+            final int to = Math.min(order.length, from + NORMALIZE_BLOCK);
+            
+            tasks.add(ForkJoinPool.commonPool().submit(() -> normalizer.normalize(data, inputColumns, order, start, to, store, 0, stride)));
+        }
+        
+        for(ForkJoinTask<?> task: tasks)
+            task.join();
+    }
+    
     /**
      * Gets the normalized encodings for the column with string name in header.
      * @param header String name of the column, e.g., "setosa".
      * @return 1D array: normalize encoding in range [-1, 1]
      */    
     protected double[] normalizeInputs(String header) {
-        double[] denormalized = new double[Helper.rowCount];
-
-        ArrayList decimals = Helper.rawData.get(header);
-
-        double max = Double.MIN_VALUE;
-        double min = Double.MAX_EXPONENT;
+        DataTable data = dataset.getTable();
         
-        for (int index=0; index < Helper.rowCount-1; index++) {
-            double decimal = (Double) decimals.get(index);
-            
-            denormalized[index] = decimal;
-            
-            if(decimal > max)
-                max = decimal;
-            
-            if(decimal < min)
-                min = decimal;
-        } 
+        int col = data.getColumn(header);
+        
+        double[] decimals = data.getDecimals(col);
+
+        Normalizer norm = Normalizer.fit(data, new int[] {col}, -1, 1);
 
         // This buffer holds the normalized data
-        double[] normalized = new double[Helper.rowCount];
-        
-        // Use normalization object where we can specify the denormalized
-        // high and low and the normalized high and low.
-        NormalizedField norm =
-                new NormalizedField(NormalizationAction.Normalize, null, max, min, 1, -1);
+        double[] normalized = new double[dataset.getRowCount()];
         
         // Normalize the data
-        for(int index=0; index < denormalized.length; index++) {
-            normalized[index] = norm.normalize(denormalized[index]);
+        for(int index=0; index < normalized.length; index++) {
+            normalized[index] = norm.normalize(0, decimals[index]);
             assert(normalized[index] >= -1 && normalized[index] <= 1);
         }
 
@@ -215,45 +316,51 @@ abstract public class AbstractIris implements INeuralProcess {
     }
     
     /**
-     * Gets the normalized encodings for the column with string name in header
+     * Writes the normalized encodings for the column with string name in
+     * header as the ideals of the rows.
      * @param header String name of the column, e.g., "iris".
-     * @return 2D array: [A][B] where A=all rows, B=n-1 dimension array
+     * @param rows Rows to get the ideals, all rows in shuffled order
      */
-    protected double[][] normalizeIdeals(String header) { 
-        double[][] normalized = new double[Helper.rowCount][];
-
+    protected void normalizeIdeals(String header, FlatMLDataSet rows) { 
         // This is the entire column of nominal data
-        ArrayList nominals = Helper.rawData.get(header);
+        DataTable data = dataset.getTable();
         
-        // This will be "setosa," "versicolor," and "virginic" for iris data
-        subtypes = Helper.getNominalSubtypes();
-        int numCols = subtypes.size();
-               
-        // Get the encodings for the subtype
-        for(int index=0; index < Helper.rowCount; index++) {
-            // Translate the subtype to a set number for the equilateral coding
-            String nominal = (String) nominals.get(index);
-            
-            boolean translated = false;
-            
-            for(int setno=0; setno < numCols; setno++) {
-                String name = subtypes.get(setno);
-                
-                if(nominal.equals(name)) {
-                    // This will be an n-1 dimensional array for n subtypes.
-                    normalized[index] = this.equilateral.encode(setno);
-                    assert(normalized[index].length == numCols - 1);
-                    
-                    translated = true;
-                    break;
-                }
-            }
+        int col = data.getColumn(header);
+        
+        // These are the codes of "setosa," "versicolor," and "virginica"
+        // for iris data
+        NominalDictionary dictionary = col == dataset.getClassColumn() ?
+                dataset.getDictionary() : NominalDictionary.of(data, col);
+        
+        int[] codes = col == dataset.getClassColumn() ?
+                dataset.getClassCodes() : dictionary.encode(data, col);
+        
+        // Translate each code to its subtype once: they're the same unless a
+        // loaded model ordered the subtypes differently
+        int[] setnos = new int[dictionary.size()];
+        
+        for(int code=0; code < setnos.length; code++) {
+            setnos[code] = subtypes.indexOf(dictionary.getName(code));
             
-            // If we didn't translate the nominal to a set number, something is wrong
-            assert(translated);
+            // If we can't translate the nominal to a set number, something is wrong
+            assert(setnos[code] >= 0);
         }
         
-        return normalized;
+        DoubleStore store = rows.getStore();
+        
+        int inputSize = rows.getInputSize();
+        
+        double[] table = labels.getTable();
+        
+        int width = labels.getWidth();
+        
+        assert(rows.getIdealSize() == width);
+               
+        // Copy the encodings for the subtype in shuffled row order
+        int[] order = dataset.getOrder();
+        
+        for(int index=0; index < order.length; index++)
+            store.put(rows.offset(index) + inputSize, table, setnos[codes[order[index]]] * width, width);
     }
 
     /**
@@ -261,56 +368,209 @@ abstract public class AbstractIris implements INeuralProcess {
      */
     @Override
     public void createTrainingData() {
-        // Transfer a portion of the data to make the training set
+        // The training and test sets are views over the normalized data
+        assert(allData != null && allData.size() != 0);
+        assert(allData.getIdealSize() == labels.getWidth());
+
+        trainingSet = allData.view(trainStart, numTrainRows);
         
-        assert(allInputs != null && allInputs.length != 0);
-        assert(allIdeals != null && allIdeals.length != 0);
-        assert(allInputs.length == allIdeals.length);
+        testSet = allData.view(testStart, numTestRows);
+    }
+
+    /**
+     * Gets the training rows, once createTrainingData has run.
+     * @return Training set
+     */
+    public FlatMLDataSet getTrainingSet() {
+        return trainingSet;
+    }
+
+    /**
+     * Gets the test rows, once createTrainingData has run.
+     * @return Test set
+     */
+    public FlatMLDataSet getTestSet() {
+        return testSet;
+    }
+
+    /**
+     * Gets the encoding of the nominal subtypes.
+     * @return Equilateral or null if the subtypes are encoded otherwise
+     */
+    public Equilateral getEquilateral() {
+        return equilateral;
+    }
+
+    /**
+     * Gets the encoding of the nominal subtypes.
+     * @return Label encoding
+     */
+    public LabelEncoding getLabels() {
+        return labels;
+    }
+
+    /**
+     * Gets the nominal subtypes.
+     * @return Subtypes by code
+     */
+    public ArrayList<String> getSubtypes() {
+        return subtypes;
+    }
 
-        int numCols = Helper.headers.size() - 1;
+    /**
+     * Sets how the network gets trained, overriding the system properties.
+     * @param trainConfig Training configuration
+     */
+    public void setTrainConfig(TrainConfig trainConfig) {
+        this.trainConfig = trainConfig;
+    }
+
+    /**
+     * Trains the network.
+     */
+    @Override
+    public void trainNetwork() {
+        assert(network != null && trainingSet != null);
         
-        double[][] trainInputs = new double[numTrainRows][numCols];
+        // Picks the best weights on a slice of the training rows, if it
+        // validates, so the test rows stay unseen until testing
+        FlatMLDataSet fit = trainingSet;
         
-        for(int row=trainStart; row <= trainEnd; row++)
-            for(int col=0; col < numCols; col++)
-                trainInputs[row][col] = allInputs[row][col];
+        FlatMLDataSet validation = null;
         
-        assert(equilateral.encode(0).length == numCols);
-        numCols = equilateral.encode(0).length;
+        if(trainConfig.getValidationPeriod() > 0) {
+            int held = (int) (trainingSet.size() * VALIDATION_FRACTION);
+            
+            fit = trainingSet.view(0, trainingSet.size() - held);
+            
+            validation = trainingSet.view(trainingSet.size() - held, held);
+        }
         
-        double[][] trainIdeals = new double[numTrainRows][numCols];
+        // Trains with the configured algorithm, RPROP by default, computing
+        // the gradients on all the cores, until the error drops below our
+        // threshold or a limit's hit, keeping the weights that did best on
+        // the held-out rows
+        NetworkTrainer trainer = new NetworkTrainer(trainConfig, TRAIN_THRESHOLD);
+
+        TrainingProgress progress = trainer.train(network, fit, validation);
+
+        Logger.getLogger(AbstractIris.class.getName()).log(Level.INFO, "stopped: {0}, {1}",
+                new Object[] { trainer.getReason(), progress });
+    }
+    
+    /**
+     * Cross-validates the network: trains a copy per fold of all the data,
+     * the folds in parallel, and logs the mean and variance of the error
+     * and accuracy.
+     * @param folds Number of folds
+     */
+    @Override
+    public void crossValidate(int folds) {
+        assert(network != null && allData != null);
         
-        for(int row=trainStart; row <= trainEnd; row++) {
-            for(int col=0; col < numCols; col++)
-                trainIdeals[row][col] = allIdeals[row][col];            
+        CrossValidation validation = new CrossValidation(allData, folds, trainConfig, TRAIN_THRESHOLD, labels);
+        
+        int threads = trainConfig.getThreads() > 0 ? trainConfig.getThreads() : Runtime.getRuntime().availableProcessors();
+        
+        try {
+            CrossValidation.Result result = validation.run(network, threads);
+            
+            Logger.getLogger(AbstractIris.class.getName()).log(Level.INFO, "cross-validation: {0}", result);
+        } catch (Exception ex) {
+            Logger.getLogger(AbstractIris.class.getName()).log(Level.SEVERE, null, ex);
         }
+    }
+    
+    /**
+     * Scores the network on the test rows, on all the cores, and logs the
+     * error and the confusion matrix with each subtype's precision and
+     * recall.
+     * @return Scores
+     */
+    protected ParallelEvaluation evaluateTest() {
+        assert(network != null && testSet != null);
         
-        // Build the training set
-        trainingSet = new BasicMLDataSet(trainInputs, trainIdeals);
+        if(evaluation == null || evaluation.getNetwork() != network)
+            evaluation = new ParallelEvaluation(network, labels);
+        
+        evaluation.evaluate(testSet);
+        
+        Logger.getLogger(AbstractIris.class.getName()).log(Level.INFO, "test error {0}:\n{1}",
+                new Object[] { evaluation.getError(), evaluation.getMatrix().toString(subtypes) });
+        
+        return evaluation;
     }
     
     /**
-     * Trains the network.
+     * Creates a classifier for raw feature rows, in the order of the input
+     * columns, from the trained network.
+     * @return Classifier
      */
     @Override
-    public void trainNetwork() {
-        assert(network != null && trainingSet != null);
+    public BatchClassifier createClassifier() {
+        assert(network != null && normalizer != null);
         
-        // Gets a backpropagation algorithm for training
-        final ResilientPropagation train = new ResilientPropagation(network, trainingSet);
-
-        // Training the network until the error drop below our threshold
-        int epoch = 1;
-
-        do {
-            train.iteration();
+        return new BatchClassifier(network.getFlat(), normalizer, labels, subtypes);
+    }
+    
+    /**
+     * Saves the trained model: the network, the input normalization, and
+     * the subtypes in encoding order.
+     * @param path File path
+     * @throws IOException
+     */
+    @Override
+    public void saveModel(String path) throws IOException {
+        assert(network != null && normalizer != null);
+        
+        DataTable data = dataset.getTable();
+        
+        ArrayList<String> inputs = new ArrayList<>();
+        
+        for(int col: inputColumns)
+            inputs.add(data.getTitle(col));
+        
+        new ModelArtifact(network, normalizer, inputs, dataset.getClassifying(), subtypes, labels.getKind()).save(path);
+    }
+    
+    /**
+     * Loads a trained model in place of creating a network. The data then
+     * gets normalized the way the model was trained and training, if any,
+     * resumes from the model's weights.
+     * @param path File path
+     * @throws IOException if the model doesn't fit the data
+     */
+    @Override
+    public void loadModel(String path) throws IOException {
+        ModelArtifact model = ModelArtifact.load(path);
+        
+        DataTable data = dataset.getTable();
+        
+        if(!model.getClassifying().equals(dataset.getClassifying()))
+            throw new IOException("model classifies " + model.getClassifying() + " not " + dataset.getClassifying());
+        
+        if(!new HashSet<>(model.getSubtypes()).equals(new HashSet<>(dataset.getSubtypes())))
+            throw new IOException("model subtypes " + model.getSubtypes() + " not " + dataset.getSubtypes());
+        
+        int[] cols = new int[model.getInputs().size()];
+        
+        for(int k=0; k < cols.length; k++) {
+            String input = model.getInputs().get(k);
             
-            System.out.println("Epoch #" + epoch + " Error:" + train.getError());
+            cols[k] = data.getColumn(input);
             
-            epoch++;
-        } while (train.getError() > TRAIN_THRESHOLD);
+            if(cols[k] < 0 || data.getType(cols[k]) != Constant.TYPE_DECIMAL || cols[k] == dataset.getClassColumn())
+                throw new IOException("model input " + input + " isn't a decimal column");
+        }
+        
+        inputColumns = cols;
+        network = model.getNetwork();
+        normalizer = model.getNormalizer();
+        
+        // The encodings depend on the order of the subtypes
+        subtypes = new ArrayList<>(model.getSubtypes());
         
-        train.finishTraining();        
+        setLabels(model.getLabels());
     }
     
     /**
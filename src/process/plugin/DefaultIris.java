@@ -22,6 +22,8 @@
  */
 package process.plugin;
 
+import process.util.Dataset;
+
 /**
  *
  * @author Ron.Coleman
@@ -35,15 +37,23 @@ public class DefaultIris extends AbstractIris {
     public DefaultIris(String classifying, String path) {
         super(classifying, path);
     }
+    
+    public DefaultIris(Dataset dataset) {
+        super(dataset);
+    }
 
     @Override
     public void createNetwork() {
         throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
     }
 
+    /**
+     * Tests the network on the test rows: the error, accuracy, and confusion
+     * matrix.
+     */
     @Override
     public void testNetwork() {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        evaluateTest();
     }
     
 }
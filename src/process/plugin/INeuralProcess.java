@@ -22,6 +22,9 @@
  */
 package process.plugin;
 
+import java.io.IOException;
+import process.score.BatchClassifier;
+
 /**
  * This interface defines the behavior of training and using a neural process.
  * @author Ron.Coleman
@@ -41,4 +44,32 @@ public interface INeuralProcess {
     
     /** Tests the network */
     public void testNetwork();
+    
+    /**
+     * Cross-validates the network instead of training and testing it once.
+     * @param folds Number of folds
+     */
+    public void crossValidate(int folds);
+    
+    /**
+     * Creates a classifier for raw feature rows from the trained network,
+     * one per scoring thread.
+     * @return Classifier
+     */
+    public BatchClassifier createClassifier();
+    
+    /**
+     * Saves the trained model.
+     * @param path File path
+     * @throws IOException
+     */
+    public void saveModel(String path) throws IOException;
+    
+    /**
+     * Loads a trained model in place of creating a network, to score with
+     * it or resume training it. Load before normalizing the data.
+     * @param path File path
+     * @throws IOException
+     */
+    public void loadModel(String path) throws IOException;
 }
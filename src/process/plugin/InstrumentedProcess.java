@@ -0,0 +1,328 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.plugin;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import process.score.BatchClassifier;
+
+/**
+ * This class wraps any process and records what each stage of the pipeline
+ * costs, e.g., -Dprocess.instrument=true in Main. Per stage it measures
+ * wall-clock time, process CPU time, the bytes allocated by way of the
+ * thread MXBean, peak heap, and collections, logging each stage as it ends.
+ * With -Dprocess.instrument.jfr=true each stage is also a Flight Recorder
+ * event, if the JVM has Flight Recorder.
+ * <p>
+ * Training spreads over worker threads, so CPU time is the whole process's
+ * and allocations are summed over the threads alive when the stage ends.
+ * Threads that start and die within a stage aren't counted.
+ * @author Ron.Coleman
+ */
+public class InstrumentedProcess implements INeuralProcess {
+    // Emit a Flight Recorder event per stage
+    public static boolean JFR = Boolean.getBoolean("process.instrument.jfr");
+
+    // Process being instrumented
+    private final INeuralProcess process;
+
+    // What the stages cost so far
+    private final StageReport report = new StageReport();
+
+    // Emitting events, if asked and Flight Recorder's there
+    private final boolean jfr;
+
+    // Sources of the measures
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    private final List<MemoryPoolMXBean> pools = ManagementFactory.getMemoryPoolMXBeans();
+    private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+
+    /**
+     * This interface is a stage to run.
+     */
+    private interface Body {
+        void run() throws IOException;
+    }
+
+    /**
+     * Constructor
+     * @param process Process to instrument
+     */
+    public InstrumentedProcess(INeuralProcess process) {
+        this.process = process;
+
+        this.jfr = JFR && isJfrAvailable();
+
+        // Allocation counting may be off by default on some JVMs
+        if(threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) threads;
+
+            if(sun.isThreadAllocatedMemorySupported() && !sun.isThreadAllocatedMemoryEnabled())
+                sun.setThreadAllocatedMemoryEnabled(true);
+        }
+    }
+
+    /**
+     * Tests if the JVM has Flight Recorder events.
+     * @return True if it does
+     */
+    private static boolean isJfrAvailable() {
+        if(StageEvent.isAvailable())
+            return true;
+
+        Logger.getLogger(InstrumentedProcess.class.getName()).log(Level.WARNING, "no Flight Recorder, events off");
+
+        return false;
+    }
+
+    /**
+     * Gets what the stages cost so far.
+     * @return Report
+     */
+    public StageReport getReport() {
+        return report;
+    }
+
+    /**
+     * Gets the process being instrumented.
+     * @return Process
+     */
+    public INeuralProcess getProcess() {
+        return process;
+    }
+
+    @Override
+    public void normalizeData() {
+        measure("normalizeData", process::normalizeData);
+    }
+
+    @Override
+    public void createTrainingData() {
+        measure("createTrainingData", process::createTrainingData);
+    }
+
+    @Override
+    public void createNetwork() {
+        measure("createNetwork", process::createNetwork);
+    }
+
+    @Override
+    public void trainNetwork() {
+        measure("trainNetwork", process::trainNetwork);
+    }
+
+    @Override
+    public void testNetwork() {
+        measure("testNetwork", process::testNetwork);
+    }
+
+    @Override
+    public void crossValidate(int folds) {
+        measure("crossValidate", () -> process.crossValidate(folds));
+    }
+
+    @Override
+    public BatchClassifier createClassifier() {
+        BatchClassifier[] classifier = new BatchClassifier[1];
+
+        measure("createClassifier", () -> classifier[0] = process.createClassifier());
+
+        return classifier[0];
+    }
+
+    @Override
+    public void saveModel(String path) throws IOException {
+        measureIO("saveModel", () -> process.saveModel(path));
+    }
+
+    @Override
+    public void loadModel(String path) throws IOException {
+        measureIO("loadModel", () -> process.loadModel(path));
+    }
+
+    /**
+     * Runs a stage that can't throw an I/O exception and records its cost.
+     * @param name Stage name
+     * @param body Stage
+     */
+    private void measure(String name, Body body) {
+        try {
+            measureIO(name, body);
+        } catch (IOException ex) {
+            // Only saveModel and loadModel throw and they don't come here
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * Runs a stage and records its cost, even if it fails.
+     * @param name Stage name
+     * @param body Stage
+     * @throws IOException
+     */
+    private void measureIO(String name, Body body) throws IOException {
+        for(MemoryPoolMXBean pool: pools)
+            if(pool.getType() == MemoryType.HEAP && pool.isValid())
+                pool.resetPeakUsage();
+
+        HashMap<Long, Long> allocated = getAllocatedBytes();
+
+        long gcCount = getGcCount();
+        long gcMillis = getGcMillis();
+
+        long cpu = getCpuTime();
+
+        Object event = jfr ? StageEvent.start() : null;
+
+        long start = System.nanoTime();
+
+        try {
+            body.run();
+        }
+        finally {
+            long wall = System.nanoTime() - start;
+
+            cpu = cpu < 0 ? -1 : getCpuTime() - cpu;
+
+            StageReport.Stage stage = new StageReport.Stage(name, wall, cpu, getAllocatedSince(allocated),
+                    getPeakHeap(), getGcCount() - gcCount, getGcMillis() - gcMillis);
+
+            if(event != null)
+                StageEvent.finish(event, stage);
+
+            report.add(stage);
+
+            Logger.getLogger(InstrumentedProcess.class.getName()).log(Level.INFO,
+                    "{0}: wall ms {1} cpu ms {2} allocated MB {3} peak heap MB {4} gcs {5} gc ms {6}",
+                    new Object[] { name, wall / 1e6, cpu / 1e6, stage.allocatedBytes / 1048576.0,
+                        stage.peakHeapBytes / 1048576.0, stage.gcCount, stage.gcMillis });
+        }
+    }
+
+    /**
+     * Gets the CPU time of the whole process, or of this thread if the JVM
+     * won't say.
+     * @return Nanoseconds or -1 if neither is available
+     */
+    private long getCpuTime() {
+        if(os instanceof com.sun.management.OperatingSystemMXBean)
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+    }
+
+    /**
+     * Gets the bytes each live thread has allocated so far.
+     * @return Bytes by thread id or null if the JVM won't say
+     */
+    private HashMap<Long, Long> getAllocatedBytes() {
+        if(!(threads instanceof com.sun.management.ThreadMXBean))
+            return null;
+
+        com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) threads;
+
+        if(!sun.isThreadAllocatedMemoryEnabled())
+            return null;
+
+        long[] ids = sun.getAllThreadIds();
+
+        long[] bytes = sun.getThreadAllocatedBytes(ids);
+
+        HashMap<Long, Long> allocated = new HashMap<>();
+
+        for(int k=0; k < ids.length; k++)
+            if(bytes[k] >= 0)
+                allocated.put(ids[k], bytes[k]);
+
+        return allocated;
+    }
+
+    /**
+     * Gets the bytes allocated since a count, by the threads alive now.
+     * @param before Bytes by thread id from getAllocatedBytes
+     * @return Bytes or -1 if the JVM won't say
+     */
+    private long getAllocatedSince(HashMap<Long, Long> before) {
+        HashMap<Long, Long> after = getAllocatedBytes();
+
+        if(before == null || after == null)
+            return -1;
+
+        long total = 0;
+
+        for(Long id: after.keySet())
+            total += after.get(id) - before.getOrDefault(id, 0L);
+
+        return total;
+    }
+
+    /**
+     * Gets the peak heap in use since the pools were reset.
+     * @return Bytes
+     */
+    private long getPeakHeap() {
+        long peak = 0;
+
+        for(MemoryPoolMXBean pool: pools)
+            if(pool.getType() == MemoryType.HEAP && pool.isValid())
+                peak += pool.getPeakUsage().getUsed();
+
+        return peak;
+    }
+
+    /**
+     * Gets the number of collections so far.
+     * @return Count
+     */
+    private long getGcCount() {
+        long count = 0;
+
+        for(GarbageCollectorMXBean gc: collectors)
+            count += Math.max(0, gc.getCollectionCount());
+
+        return count;
+    }
+
+    /**
+     * Gets the time spent collecting so far.
+     * @return Milliseconds
+     */
+    private long getGcMillis() {
+        long millis = 0;
+
+        for(GarbageCollectorMXBean gc: collectors)
+            millis += Math.max(0, gc.getCollectionTime());
+
+        return millis;
+    }
+}
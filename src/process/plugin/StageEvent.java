@@ -0,0 +1,149 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.plugin;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class makes Flight Recorder events spanning one pipeline stage, so a
+ * recording lines the stages up with the GC, allocation, and CPU samples
+ * around them. The event type is defined at run time through
+ * jdk.jfr.EventFactory, all by reflection, since the project builds for
+ * Java 8 where there's no jdk.jfr to compile against. Only
+ * InstrumentedProcess touches it, and only once isAvailable says so.
+ * @author Ron.Coleman
+ */
+class StageEvent {
+    // Makes the events, null if the JVM has no Flight Recorder
+    private static Object factory = null;
+
+    // Methods of EventFactory and Event
+    private static Method newEvent;
+    private static Method set;
+    private static Method begin;
+    private static Method end;
+    private static Method shouldCommit;
+    private static Method commit;
+
+    // Set once the event type's been defined, or found impossible to
+    private static boolean initialized = false;
+
+    /**
+     * Defines the event type, if the JVM has Flight Recorder.
+     * @return True if events can be made
+     */
+    static synchronized boolean isAvailable() {
+        if(initialized)
+            return factory != null;
+
+        initialized = true;
+
+        try {
+            Class<?> annotation = Class.forName("jdk.jfr.AnnotationElement");
+            Class<?> descriptor = Class.forName("jdk.jfr.ValueDescriptor");
+            Class<?> event = Class.forName("jdk.jfr.Event");
+
+            Constructor<?> annotate = annotation.getConstructor(Class.class, Object.class);
+            Constructor<?> field = descriptor.getConstructor(Class.class, String.class, List.class);
+
+            List<Object> type = Arrays.asList(
+                    annotate.newInstance(Class.forName("jdk.jfr.Name"), "process.Stage"),
+                    annotate.newInstance(Class.forName("jdk.jfr.Label"), "Pipeline Stage"),
+                    annotate.newInstance(Class.forName("jdk.jfr.Category"), new String[] { "Iris" }));
+
+            Class<?> label = Class.forName("jdk.jfr.Label");
+            Class<?> timespan = Class.forName("jdk.jfr.Timespan");
+            Class<?> amount = Class.forName("jdk.jfr.DataAmount");
+
+            // In the order finish sets them
+            List<Object> fields = Arrays.asList(
+                    field.newInstance(String.class, "stage", Arrays.asList(
+                            annotate.newInstance(label, "Stage"))),
+                    field.newInstance(long.class, "cpuTime", Arrays.asList(
+                            annotate.newInstance(label, "CPU Time"),
+                            annotate.newInstance(timespan, "NANOSECONDS"))),
+                    field.newInstance(long.class, "allocated", Arrays.asList(
+                            annotate.newInstance(label, "Allocated"),
+                            annotate.newInstance(amount, "BYTES"))),
+                    field.newInstance(long.class, "peakHeap", Arrays.asList(
+                            annotate.newInstance(label, "Peak Heap"),
+                            annotate.newInstance(amount, "BYTES"))));
+
+            Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory");
+
+            newEvent = eventFactory.getMethod("newEvent");
+            set = event.getMethod("set", int.class, Object.class);
+            begin = event.getMethod("begin");
+            end = event.getMethod("end");
+            shouldCommit = event.getMethod("shouldCommit");
+            commit = event.getMethod("commit");
+
+            factory = eventFactory.getMethod("create", List.class, List.class).invoke(null, type, fields);
+
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Starts an event.
+     * @return Event or null if it couldn't be made
+     */
+    static Object start() {
+        try {
+            Object event = newEvent.invoke(factory);
+
+            begin.invoke(event);
+
+            return event;
+        } catch (ReflectiveOperationException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Ends an event and records it.
+     * @param event Event from start
+     * @param stage What the stage cost
+     */
+    static void finish(Object event, StageReport.Stage stage) {
+        try {
+            end.invoke(event);
+
+            if((Boolean) shouldCommit.invoke(event)) {
+                set.invoke(event, 0, stage.name);
+                set.invoke(event, 1, stage.cpuNanos);
+                set.invoke(event, 2, stage.allocatedBytes);
+                set.invoke(event, 3, stage.peakHeapBytes);
+
+                commit.invoke(event);
+            }
+        } catch (ReflectiveOperationException ex) {
+            // Lose the event rather than the stage
+        }
+    }
+}
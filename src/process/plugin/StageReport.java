@@ -0,0 +1,190 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.plugin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This class is the record of what each pipeline stage cost: wall-clock
+ * time, CPU time, bytes allocated, peak heap, and garbage collections. It
+ * prints as a table for the log and as JSON for tools.
+ * @author Ron.Coleman
+ */
+public class StageReport {
+    /**
+     * This class is what one stage cost. Measures that aren't available on
+     * this JVM are -1.
+     */
+    public static class Stage {
+        // Stage name, e.g., trainNetwork
+        final String name;
+
+        // Wall-clock time
+        final long wallNanos;
+
+        // CPU time of the whole process, all threads
+        final long cpuNanos;
+
+        // Bytes allocated by the threads alive at the end of the stage
+        final long allocatedBytes;
+
+        // Peak heap in use, summed over the heap pools
+        final long peakHeapBytes;
+
+        // Garbage collections and the time they took
+        final long gcCount;
+        final long gcMillis;
+
+        Stage(String name, long wallNanos, long cpuNanos, long allocatedBytes, long peakHeapBytes, long gcCount, long gcMillis) {
+            this.name = name;
+            this.wallNanos = wallNanos;
+            this.cpuNanos = cpuNanos;
+            this.allocatedBytes = allocatedBytes;
+            this.peakHeapBytes = peakHeapBytes;
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+        }
+
+        /**
+         * Gets the stage name.
+         * @return Name, e.g., trainNetwork
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the wall-clock time.
+         * @return Nanoseconds
+         */
+        public long getWallNanos() {
+            return wallNanos;
+        }
+
+        /**
+         * Gets the CPU time of the whole process.
+         * @return Nanoseconds or -1
+         */
+        public long getCpuNanos() {
+            return cpuNanos;
+        }
+
+        /**
+         * Gets the bytes allocated.
+         * @return Bytes or -1
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        /**
+         * Gets the peak heap in use.
+         * @return Bytes or -1
+         */
+        public long getPeakHeapBytes() {
+            return peakHeapBytes;
+        }
+
+        /**
+         * Gets the garbage collections.
+         * @return Collections or -1
+         */
+        public long getGcCount() {
+            return gcCount;
+        }
+
+        /**
+         * Gets the time the garbage collections took.
+         * @return Milliseconds or -1
+         */
+        public long getGcMillis() {
+            return gcMillis;
+        }
+    }
+
+    // Stages in the order they ran
+    private final List<Stage> stages = new ArrayList<>();
+
+    /**
+     * Adds a stage.
+     * @param stage Stage
+     */
+    synchronized void add(Stage stage) {
+        stages.add(stage);
+    }
+
+    /**
+     * Gets the stages.
+     * @return Stages in the order they ran
+     */
+    public synchronized List<Stage> getStages() {
+        return Collections.unmodifiableList(new ArrayList<>(stages));
+    }
+
+    /**
+     * Gets the report as JSON: an object with an array of stages.
+     * @return JSON
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder("{\"stages\":[");
+
+        List<Stage> list = getStages();
+
+        for(int k=0; k < list.size(); k++) {
+            Stage stage = list.get(k);
+
+            if(k > 0)
+                sb.append(',');
+
+            sb.append("\n  {\"stage\":\"").append(stage.name).append('"')
+                    .append(",\"wall_ns\":").append(stage.wallNanos)
+                    .append(",\"cpu_ns\":").append(stage.cpuNanos)
+                    .append(",\"allocated_bytes\":").append(stage.allocatedBytes)
+                    .append(",\"peak_heap_bytes\":").append(stage.peakHeapBytes)
+                    .append(",\"gc_count\":").append(stage.gcCount)
+                    .append(",\"gc_ms\":").append(stage.gcMillis)
+                    .append('}');
+        }
+
+        return sb.append("\n]}\n").toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append(String.format(Locale.ROOT, "%-20s %10s %10s %12s %12s %6s %8s%n",
+                "stage", "wall ms", "cpu ms", "alloc MB", "peak MB", "gcs", "gc ms"));
+
+        for(Stage stage: getStages())
+            sb.append(String.format(Locale.ROOT, "%-20s %10.1f %10.1f %12.1f %12.1f %6d %8d%n",
+                    stage.name, stage.wallNanos / 1e6, stage.cpuNanos / 1e6,
+                    stage.allocatedBytes / 1048576.0, stage.peakHeapBytes / 1048576.0,
+                    stage.gcCount, stage.gcMillis));
+
+        return sb.toString();
+    }
+}
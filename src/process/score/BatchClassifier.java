@@ -0,0 +1,143 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.score;
+
+import java.util.List;
+import org.encog.neural.flat.FlatNetwork;
+import process.util.LabelEncoding;
+import process.util.Normalizer;
+
+/**
+ * This class classifies blocks of raw feature rows: it normalizes them with
+ * the training statistics, runs the network, and decodes the outputs into
+ * class indexes per the label encoding the network was trained with.
+ * All its buffers are allocated up front, so scoring allocates nothing per
+ * row. An instance belongs to one thread; make a copy for each other thread.
+ * @author Ron.Coleman
+ */
+public class BatchClassifier {
+    // Network, this instance's own copy since computing uses its buffers
+    private final FlatNetwork network;
+
+    // Normalizes raw features the way the training data was
+    private final Normalizer normalizer;
+
+    // Decodes the outputs
+    private final LabelEncoding labels;
+
+    // Class names by index
+    private final List<String> subtypes;
+
+    // Number of raw features in a row
+    private final int width;
+
+    // Normalized features of the current row
+    private final double[] input;
+
+    // Network outputs of the current row
+    private final double[] output;
+
+    /**
+     * Constructor
+     * @param network Trained network, which gets copied
+     * @param normalizer Normalizes raw features the way the training data was
+     * @param labels Decodes the outputs
+     * @param subtypes Class names by index
+     */
+    public BatchClassifier(FlatNetwork network, Normalizer normalizer, LabelEncoding labels, List<String> subtypes) {
+        this.network = network.clone();
+        this.normalizer = normalizer;
+        this.labels = labels;
+        this.subtypes = subtypes;
+        this.width = normalizer.getWidth();
+
+        assert(network.getInputCount() == width);
+
+        input = new double[width];
+        output = new double[network.getOutputCount()];
+    }
+
+    /**
+     * Makes a classifier for another thread.
+     * @return Classifier with its own network and buffers
+     */
+    public BatchClassifier copy() {
+        return new BatchClassifier(network, normalizer, labels, subtypes);
+    }
+
+    /**
+     * Classifies one row.
+     * @param features Raw features
+     * @param from Index of the row's first feature
+     * @return Class index
+     */
+    public int classify(double[] features, int from) {
+        System.arraycopy(features, from, input, 0, width);
+
+        normalizer.normalize(input);
+
+        network.compute(input, output);
+
+        return labels.decode(output);
+    }
+
+    /**
+     * Classifies a block of rows.
+     * @param features Raw features, row after row
+     * @param rows Number of rows
+     * @param classes Buffer for the class index of each row
+     */
+    public void classify(double[] features, int rows, int[] classes) {
+        assert(features.length >= rows * width && classes.length >= rows);
+
+        for(int row=0, from=0; row < rows; row++, from += width)
+            classes[row] = classify(features, from);
+    }
+
+    /**
+     * Classifies rows.
+     * @param rows Raw features of each row
+     * @param classes Buffer for the class index of each row
+     */
+    public void classify(double[][] rows, int[] classes) {
+        for(int row=0; row < rows.length; row++)
+            classes[row] = classify(rows[row], 0);
+    }
+
+    /**
+     * Gets the name of a class.
+     * @param index Class index
+     * @return Name, e.g., setosa
+     */
+    public String getSubtype(int index) {
+        return subtypes.get(index);
+    }
+
+    /**
+     * Gets the number of raw features in a row.
+     * @return Width
+     */
+    public int getWidth() {
+        return width;
+    }
+}
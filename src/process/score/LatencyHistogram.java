@@ -0,0 +1,114 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.score;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class counts latencies in exponentially sized buckets, each 5% wider
+ * than the last, so percentiles come out within 5% from a fixed few hundred
+ * counters. Recording is lock-free and safe from any thread.
+ * @author Ron.Coleman
+ */
+public class LatencyHistogram {
+    // Growth from one bucket to the next
+    private final static double GROWTH = 1.05;
+
+    // Buckets reach past a minute in microseconds
+    private final static int BUCKETS = 400;
+
+    // Counts by bucket
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Records a latency.
+     * @param nanos Latency in nanoseconds
+     */
+    public void record(long nanos) {
+        counts.incrementAndGet(bucket(nanos / 1000));
+    }
+
+    /**
+     * Gets the bucket of a latency.
+     * @param micros Latency in microseconds
+     * @return Bucket
+     */
+    private static int bucket(long micros) {
+        if(micros <= 0)
+            return 0;
+
+        return Math.min(BUCKETS - 1, (int) (Math.log(micros) / Math.log(GROWTH)) + 1);
+    }
+
+    /**
+     * Gets the upper bound of a bucket.
+     * @param bucket Bucket
+     * @return Microseconds
+     */
+    private static double bound(int bucket) {
+        return bucket == 0 ? 0 : Math.pow(GROWTH, bucket);
+    }
+
+    /**
+     * Gets the number of latencies recorded.
+     * @return Count
+     */
+    public long getCount() {
+        long count = 0;
+
+        for(int k=0; k < BUCKETS; k++)
+            count += counts.get(k);
+
+        return count;
+    }
+
+    /**
+     * Gets a percentile.
+     * @param percentile Percentile, e.g., 99
+     * @return Upper bound of the latency in milliseconds, zero if there's none
+     */
+    public double getPercentile(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+
+        long count = 0;
+
+        for(int k=0; k < BUCKETS; k++)
+            count += snapshot[k] = counts.get(k);
+
+        if(count == 0)
+            return 0;
+
+        long rank = (long) Math.ceil(percentile / 100 * count);
+
+        long seen = 0;
+
+        for(int k=0; k < BUCKETS; k++) {
+            seen += snapshot[k];
+
+            if(seen >= rank)
+                return bound(k) / 1000;
+        }
+
+        return bound(BUCKETS - 1) / 1000;
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.score;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class coalesces concurrent classification requests into batches. A
+ * worker takes the first waiting request, then keeps collecting until the
+ * batch is full or the latency window closes, copies the rows of the lot
+ * into one block, and classifies the block in one call on its own
+ * classifier and buffers.
+ * @author Ron.Coleman
+ */
+public class MicroBatcher {
+    // Requests waiting for a worker
+    private final BlockingQueue<Request> queue;
+
+    // Longest a request waits for others to join its batch
+    private final long windowNanos;
+
+    // Most rows in a batch
+    private final int maxRows;
+
+    // Worker threads
+    private final Thread[] workers;
+
+    // Number of batches classified
+    private final AtomicLong batches = new AtomicLong();
+
+    // Number of rows classified
+    private final AtomicLong rows = new AtomicLong();
+
+    // False once the batcher's shut down
+    private volatile boolean running = true;
+
+    /**
+     * Constructor
+     * @param classifier Classifier, copied for each worker
+     * @param workers Number of worker threads
+     * @param windowMicros Longest a request waits for others to join its batch
+     * @param maxRows Most rows in a batch
+     * @param capacity Most requests waiting before callers block
+     */
+    public MicroBatcher(BatchClassifier classifier, int workers, long windowMicros, int maxRows, int capacity) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.windowNanos = windowMicros * 1000;
+        this.maxRows = maxRows;
+        this.workers = new Thread[workers];
+
+        for(int k=0; k < workers; k++) {
+            BatchClassifier copy = k == 0 ? classifier : classifier.copy();
+
+            this.workers[k] = new Thread(() -> work(copy), "micro-batcher-" + k);
+            this.workers[k].setDaemon(true);
+            this.workers[k].start();
+        }
+    }
+
+    /**
+     * Classifies rows once they're batched.
+     * @param features Raw features, row after row
+     * @param count Number of rows
+     * @return Class index of each row, when it's ready
+     * @throws InterruptedException
+     */
+    public CompletableFuture<int[]> submit(double[] features, int count) throws InterruptedException {
+        Request request = new Request(features, count);
+
+        queue.put(request);
+
+        return request.result;
+    }
+
+    /**
+     * Runs a worker: batches requests and classifies them until shut down.
+     * @param classifier This worker's classifier
+     */
+    private void work(BatchClassifier classifier) {
+        ArrayList<Request> batch = new ArrayList<>();
+
+        int width = classifier.getWidth();
+
+        // Rows of a batch, back to back, and their classes, grown as need be
+        double[] block = new double[maxRows * width];
+
+        int[] classes = new int[maxRows];
+
+        while(running) {
+            try {
+                Request first = queue.poll(100, TimeUnit.MILLISECONDS);
+
+                if(first == null)
+                    continue;
+
+                batch.add(first);
+
+                int size = first.count;
+
+                long deadline = System.nanoTime() + windowNanos;
+
+                // Collect more until the batch is full or the window closes
+                while(size < maxRows) {
+                    long wait = deadline - System.nanoTime();
+
+                    Request next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+
+                    if(next == null)
+                        break;
+
+                    batch.add(next);
+
+                    size += next.count;
+                }
+
+                if(size > classes.length) {
+                    block = new double[size * width];
+                    classes = new int[size];
+                }
+
+                // Lay the rows out as one block, turning away short requests
+                int count = 0;
+
+                for(Request request: batch) {
+                    if(request.features.length < request.count * width) {
+                        request.result.completeExceptionally(new IllegalArgumentException("short row"));
+                        continue;
+                    }
+
+                    System.arraycopy(request.features, 0, block, count * width, request.count * width);
+
+                    request.at = count;
+
+                    count += request.count;
+                }
+
+                try {
+                    classifier.classify(block, count, classes);
+                }
+                catch(RuntimeException ex) {
+                    for(Request request: batch)
+                        request.result.completeExceptionally(ex);
+
+                    throw ex;
+                }
+
+                // Hand each request its slice of the classes
+                for(Request request: batch) {
+                    if(request.at >= 0)
+                        request.result.complete(Arrays.copyOfRange(classes, request.at, request.at + request.count));
+                }
+
+                batches.incrementAndGet();
+                rows.addAndGet(count);
+            }
+            catch(InterruptedException ex) {
+                break;
+            }
+            catch(RuntimeException ex) {
+                Logger.getLogger(MicroBatcher.class.getName()).log(Level.SEVERE, null, ex);
+            }
+            finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Stops the workers.
+     */
+    public void shutdown() {
+        running = false;
+
+        for(Thread worker: workers)
+            worker.interrupt();
+    }
+
+    /**
+     * Gets the number of batches classified.
+     * @return Batches
+     */
+    public long getBatches() {
+        return batches.get();
+    }
+
+    /**
+     * Gets the number of rows classified.
+     * @return Rows
+     */
+    public long getRows() {
+        return rows.get();
+    }
+
+    /**
+     * This class is a request waiting to be batched.
+     */
+    private static class Request {
+        final double[] features;
+        final int count;
+        final CompletableFuture<int[]> result = new CompletableFuture<>();
+
+        // First row of the request in the batch's block, -1 if turned away
+        int at = -1;
+
+        Request(double[] features, int count) {
+            this.features = features;
+            this.count = count;
+        }
+    }
+}
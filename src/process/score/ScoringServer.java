@@ -0,0 +1,282 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.score;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class serves a trained model over HTTP on localhost.
+ * <p>
+ * POST /classify with one row of comma-separated raw features per line
+ * answers with one class name per line. GET /metrics answers with QPS,
+ * latency percentiles, and batching counts, one "name value" per line.
+ * <p>
+ * Requests are handled on virtual threads where the JVM has them, else on
+ * a cached pool, and coalesced into batches by a MicroBatcher. By default
+ * it's configured by system properties, e.g., -Dprocess.serve.port=8080
+ * -Dprocess.serve.window=500.
+ * @author Ron.Coleman
+ */
+public class ScoringServer {
+    // HTTP server
+    private final HttpServer server;
+
+    // Runs the request handlers
+    private final ExecutorService executor;
+
+    // Batches the requests for the classifier
+    private final MicroBatcher batcher;
+
+    // Number of raw features in a row
+    private final int width;
+
+    // Names the classes
+    private final BatchClassifier classifier;
+
+    // Request latencies
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    // Number of requests answered
+    private final AtomicLong requests = new AtomicLong();
+
+    // Number of requests refused
+    private final AtomicLong errors = new AtomicLong();
+
+    // When the server started
+    private final long started = System.nanoTime();
+
+    // Requests and time at the last metrics scrape, for the recent QPS
+    private long lastRequests = 0;
+    private long lastNanos = started;
+
+    /**
+     * Constructor
+     * @param classifier Classifier, copied for each batcher worker
+     * @param port Port on localhost, zero for any free port
+     * @param workers Number of batcher workers
+     * @param windowMicros Longest a request waits for others to join its batch
+     * @param maxRows Most rows in a batch
+     * @throws IOException
+     */
+    public ScoringServer(BatchClassifier classifier, int port, int workers, long windowMicros, int maxRows) throws IOException {
+        this.classifier = classifier;
+        this.width = classifier.getWidth();
+        this.batcher = new MicroBatcher(classifier.copy(), workers, windowMicros, maxRows, 4096);
+        this.executor = createExecutor();
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+
+        server.createContext("/classify", this::classify);
+        server.createContext("/metrics", this::metrics);
+        server.setExecutor(executor);
+    }
+
+    /**
+     * Gets a server configured from system properties.
+     * @param classifier Classifier
+     * @return Server, not yet started
+     * @throws IOException
+     */
+    public static ScoringServer fromProperties(BatchClassifier classifier) throws IOException {
+        return new ScoringServer(classifier,
+                Integer.getInteger("process.serve.port", 8080),
+                Integer.getInteger("process.serve.workers", Runtime.getRuntime().availableProcessors()),
+                Long.getLong("process.serve.window", 500),
+                Integer.getInteger("process.serve.batch", 256));
+    }
+
+    /**
+     * Gets an executor that runs each request on a virtual thread, if this
+     * JVM has them, otherwise on a cached pool of platform threads.
+     * @return Executor
+     */
+    private static ExecutorService createExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch(ReflectiveOperationException ex) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Starts serving.
+     */
+    public void start() {
+        server.start();
+
+        Logger.getLogger(ScoringServer.class.getName()).log(Level.INFO, "serving on {0}", server.getAddress());
+    }
+
+    /**
+     * Stops serving.
+     */
+    public void stop() {
+        server.stop(0);
+
+        batcher.shutdown();
+
+        executor.shutdown();
+    }
+
+    /**
+     * Gets the port the server's listening on.
+     * @return Port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Handles a classification request.
+     * @param exchange Request and response
+     * @throws IOException
+     */
+    private void classify(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+
+        try {
+            if(!exchange.getRequestMethod().equals("POST")) {
+                reply(exchange, 405, "POST rows of features\n");
+                return;
+            }
+
+            double[] features = new double[16 * width];
+
+            int count = 0;
+
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+                for(String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    if(line.trim().isEmpty())
+                        continue;
+
+                    String[] fields = line.split(",");
+
+                    if(fields.length != width) {
+                        reply(exchange, 400, "expected " + width + " features: " + line + "\n");
+                        return;
+                    }
+
+                    if((count + 1) * width > features.length)
+                        features = Arrays.copyOf(features, 2 * features.length);
+
+                    for(int k=0; k < width; k++)
+                        features[count * width + k] = Double.parseDouble(fields[k].trim());
+
+                    count++;
+                }
+            }
+            catch(NumberFormatException ex) {
+                reply(exchange, 400, ex.getMessage() + "\n");
+                return;
+            }
+
+            int[] classes = batcher.submit(features, count).get();
+
+            StringBuilder sb = new StringBuilder(16 * count);
+
+            for(int row=0; row < count; row++)
+                sb.append(classifier.getSubtype(classes[row])).append('\n');
+
+            reply(exchange, 200, sb.toString());
+
+            requests.incrementAndGet();
+
+            latencies.record(System.nanoTime() - start);
+        }
+        catch(InterruptedException | ExecutionException ex) {
+            reply(exchange, 500, ex.toString() + "\n");
+        }
+    }
+
+    /**
+     * Handles a metrics request.
+     * @param exchange Request and response
+     * @throws IOException
+     */
+    private void metrics(HttpExchange exchange) throws IOException {
+        long now = System.nanoTime();
+
+        long count = requests.get();
+
+        double recent;
+
+        synchronized(this) {
+            recent = now == lastNanos ? 0 : (count - lastRequests) * 1e9 / (now - lastNanos);
+
+            lastRequests = count;
+            lastNanos = now;
+        }
+
+        long batches = batcher.getBatches();
+
+        String body = "requests " + count + "\n"
+                + "errors " + errors.get() + "\n"
+                + "qps " + count * 1e9 / (now - started) + "\n"
+                + "qps_recent " + recent + "\n"
+                + "p50_ms " + latencies.getPercentile(50) + "\n"
+                + "p99_ms " + latencies.getPercentile(99) + "\n"
+                + "p999_ms " + latencies.getPercentile(99.9) + "\n"
+                + "batches " + batches + "\n"
+                + "rows " + batcher.getRows() + "\n"
+                + "rows_per_batch " + (batches == 0 ? 0 : (double) batcher.getRows() / batches) + "\n";
+
+        reply(exchange, 200, body);
+    }
+
+    /**
+     * Sends a response.
+     * @param exchange Request and response
+     * @param status HTTP status
+     * @param body Body text
+     * @throws IOException
+     */
+    private void reply(HttpExchange exchange, int status, String body) throws IOException {
+        if(status >= 400)
+            errors.incrementAndGet();
+
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
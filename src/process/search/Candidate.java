@@ -0,0 +1,144 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.search;
+
+import java.util.Arrays;
+import org.encog.engine.network.activation.ActivationElliottSymmetric;
+import org.encog.engine.network.activation.ActivationFunction;
+import org.encog.engine.network.activation.ActivationReLU;
+import org.encog.engine.network.activation.ActivationSigmoid;
+import org.encog.engine.network.activation.ActivationTANH;
+import org.encog.neural.networks.BasicNetwork;
+import org.encog.neural.networks.layers.BasicLayer;
+
+/**
+ * This class is one point in a hyperparameter search: the hidden layer
+ * sizes, the hidden activation function, and the training error threshold.
+ * The output layer is always TANH since the ideals are over [-1, 1].
+ * @author Ron.Coleman
+ */
+public class Candidate {
+    // Hidden activation functions
+    public final static String TANH = "tanh";
+    public final static String SIGMOID = "sigmoid";
+    public final static String ELLIOTT = "elliott";
+    public final static String RELU = "relu";
+
+    // Neurons in each hidden layer
+    private final int[] hidden;
+
+    // Hidden activation function
+    private final String activation;
+
+    // Training error threshold
+    private final double threshold;
+
+    /**
+     * Constructor
+     * @param hidden Neurons in each hidden layer
+     * @param activation Hidden activation function
+     * @param threshold Training error threshold
+     */
+    public Candidate(int[] hidden, String activation, double threshold) {
+        this.hidden = hidden.clone();
+        this.activation = activation;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Creates an untrained network for this candidate.
+     * @param inputs Number of inputs
+     * @param outputs Number of outputs
+     * @param seed Seed for the initial weights
+     * @return Network
+     */
+    public BasicNetwork createNetwork(int inputs, int outputs, long seed) {
+        BasicNetwork network = new BasicNetwork();
+
+        network.addLayer(new BasicLayer(null, true, inputs));
+
+        for(int neurons: hidden)
+            network.addLayer(new BasicLayer(createActivation(activation), true, neurons));
+
+        network.addLayer(new BasicLayer(new ActivationTANH(), false, outputs));
+
+        network.getStructure().finalizeStructure();
+
+        network.reset((int) seed);
+
+        return network;
+    }
+
+    /**
+     * Creates an activation function by name.
+     * @param name Name: tanh, sigmoid, elliott, or relu
+     * @return Activation function
+     */
+    public static ActivationFunction createActivation(String name) {
+        switch(name) {
+            case TANH:
+                return new ActivationTANH();
+
+            case SIGMOID:
+                return new ActivationSigmoid();
+
+            case ELLIOTT:
+                return new ActivationElliottSymmetric();
+
+            case RELU:
+                return new ActivationReLU();
+
+            default:
+                throw new IllegalArgumentException("bad activation '" + name + "'");
+        }
+    }
+
+    /**
+     * Gets the hidden layer sizes.
+     * @return Neurons per hidden layer, a copy
+     */
+    public int[] getHidden() {
+        return hidden.clone();
+    }
+
+    /**
+     * Gets the activation of the hidden layers.
+     * @return tanh, sigmoid, elliott, or relu
+     */
+    public String getActivation() {
+        return activation;
+    }
+
+    /**
+     * Gets the training error threshold.
+     * @return Threshold
+     */
+    public double getThreshold() {
+        return threshold;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(hidden) + " " + activation + " " + threshold;
+    }
+}
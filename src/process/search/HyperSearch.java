@@ -0,0 +1,302 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.encog.neural.networks.BasicNetwork;
+import process.Main;
+import process.plugin.AbstractIris;
+import process.train.Evaluation;
+import process.train.NetworkTrainer;
+import process.train.TrainConfig;
+import process.train.TrainingProgress;
+import process.util.Constant;
+import process.util.FlatMLDataSet;
+import process.util.LabelEncoding;
+
+/**
+ * This class searches hyperparameters by training candidate networks in
+ * parallel on a fixed pool. The data gets loaded and normalized once; every
+ * candidate trains on read-only views of the same rows. Each candidate trains
+ * single-threaded, the parallelism being across candidates.
+ * <p>
+ * The candidates get ranked on a slice of the training rows held out from
+ * training, so the test rows play no part in picking the winner and their
+ * accuracy is a fair estimate of it.
+ * <p>
+ * Usage: HyperSearch, configured by the process.plugin, process.search and
+ * process.train properties.
+ * @author Ron.Coleman
+ */
+public class HyperSearch {
+    // Rows to train on
+    private final FlatMLDataSet training;
+
+    // Training rows held out to rank the candidates on
+    private final FlatMLDataSet validation;
+
+    // Rows to report the accuracy on
+    private final FlatMLDataSet test;
+
+    // Decodes the outputs into classes
+    private final LabelEncoding labels;
+
+    // How to train each candidate
+    private final TrainConfig config;
+
+    // Number of candidates trained at once
+    private final int threads;
+
+    // Seed for the initial weights
+    private final long seed;
+
+    /**
+     * Constructor
+     * @param training Rows to train on, less a slice held out for ranking
+     * @param test Rows to report the accuracy on
+     * @param labels Decodes the outputs into classes
+     * @param config How to train each candidate
+     * @param threads Number of candidates trained at once
+     * @param seed Seed for the initial weights
+     */
+    public HyperSearch(FlatMLDataSet training, FlatMLDataSet test, LabelEncoding labels, TrainConfig config, int threads, long seed) {
+        int held = (int) (training.size() * Constant.VALIDATION_FRACTION);
+
+        this.training = training.view(0, training.size() - held);
+        this.validation = training.view(training.size() - held, held);
+        this.test = test;
+        this.labels = labels;
+        this.config = config.copy().setThreads(1);
+        this.threads = threads;
+        this.seed = seed;
+    }
+
+    /**
+     * Trains and scores the candidates.
+     * @param candidates Candidates
+     * @return Leaderboard, best first
+     * @throws Exception
+     */
+    public List<Result> run(List<Candidate> candidates) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+        try {
+            CompletionService<Result> service = new ExecutorCompletionService<>(pool);
+
+            for(Candidate candidate: candidates)
+                service.submit(() -> evaluate(candidate));
+
+            List<Result> results = new ArrayList<>(candidates.size());
+
+            for(int k=0; k < candidates.size(); k++) {
+                Result result = service.take().get();
+
+                Logger.getLogger(HyperSearch.class.getName()).log(Level.INFO, "{0}/{1} {2}",
+                        new Object[] { k + 1, candidates.size(), result });
+
+                results.add(result);
+            }
+
+            Collections.sort(results, Comparator.comparingDouble(Result::getValidationError));
+
+            return results;
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Trains and scores a candidate.
+     * @param candidate Candidate
+     * @return Result
+     */
+    public Result evaluate(Candidate candidate) {
+        BasicNetwork network = candidate.createNetwork(training.getInputSize(), training.getIdealSize(), seed);
+
+        NetworkTrainer trainer = new NetworkTrainer(config, candidate.getThreshold()).setReporting(false);
+
+        long start = System.nanoTime();
+
+        TrainingProgress progress = trainer.train(network, training, validation);
+
+        long millis = (System.nanoTime() - start) / 1000000;
+
+        // Rank the weights the trainer kept on the held-out rows, then see
+        // how they do on rows no part of the search has seen
+        Evaluation evaluation = new Evaluation(test.getInputSize(), test.getIdealSize());
+
+        double validationError = evaluation.evaluate(network, validation, null).getError();
+
+        double accuracy = evaluation.evaluate(network, test, labels).getAccuracy();
+
+        return new Result(candidate, progress, validationError, accuracy, millis, trainer.getReason());
+    }
+
+    /**
+     * Prints a leaderboard.
+     * @param results Results, best first
+     * @param top Number of rows to print
+     */
+    public static void print(List<Result> results, int top) {
+        System.out.printf("%4s %-16s %-8s %9s %10s %8s %8s %8s  %s%n",
+                "rank", "hidden", "act", "threshold", "val err", "test acc", "epochs", "ms", "stopped");
+
+        for(int k=0; k < Math.min(top, results.size()); k++) {
+            Result result = results.get(k);
+
+            Candidate candidate = result.getCandidate();
+
+            System.out.printf("%4d %-16s %-8s %9s %10.6f %8.4f %8d %8d  %s%n",
+                    k + 1, Arrays.toString(candidate.getHidden()), candidate.getActivation(),
+                    candidate.getThreshold(), result.getValidationError(), result.getAccuracy(),
+                    result.getEpochs(), result.getMillis(), result.getReason());
+        }
+    }
+
+    /**
+     * @param args the command line arguments
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        // Load and normalize the data once for all the candidates
+        AbstractIris process = (AbstractIris) Main.loadProcess();
+
+        process.normalizeData();
+
+        process.createTrainingData();
+
+        SearchSpace space = SearchSpace.fromProperties();
+
+        long seed = Long.getLong("process.search.seed", 0);
+
+        int samples = Integer.getInteger("process.search.samples", 0);
+
+        List<Candidate> candidates = System.getProperty("process.search.mode", "grid").equals("random") ?
+                space.random(samples > 0 ? samples : space.size(), new Random(seed)) : space.grid();
+
+        int threads = Integer.getInteger("process.search.threads", Runtime.getRuntime().availableProcessors());
+
+        HyperSearch search = new HyperSearch(process.getTrainingSet(), process.getTestSet(),
+                process.getLabels(), TrainConfig.fromProperties(), threads, seed);
+
+        List<Result> results = search.run(candidates);
+
+        print(results, Integer.getInteger("process.search.top", 10));
+    }
+
+    /**
+     * This class is how a candidate did.
+     */
+    public static class Result {
+        private final Candidate candidate;
+        private final double validationError;
+        private final double accuracy;
+        private final long epochs;
+        private final long millis;
+        private final String reason;
+
+        /**
+         * Constructor
+         * @param candidate Candidate
+         * @param progress Where training stood when it stopped
+         * @param validationError Error on the held-out training rows
+         * @param accuracy Accuracy on the test rows
+         * @param millis Training time in milliseconds
+         * @param reason Why training stopped
+         */
+        public Result(Candidate candidate, TrainingProgress progress, double validationError, double accuracy, long millis, String reason) {
+            this.candidate = candidate;
+            this.validationError = validationError;
+            this.accuracy = accuracy;
+            this.epochs = progress.getEpoch();
+            this.millis = millis;
+            this.reason = reason;
+        }
+
+        /**
+         * Gets the candidate.
+         * @return Candidate
+         */
+        public Candidate getCandidate() {
+            return candidate;
+        }
+
+        /**
+         * Gets the error on the held-out training rows, which ranks the candidates.
+         * @return Error
+         */
+        public double getValidationError() {
+            return validationError;
+        }
+
+        /**
+         * Gets the accuracy on the test rows.
+         * @return Accuracy
+         */
+        public double getAccuracy() {
+            return accuracy;
+        }
+
+        /**
+         * Gets the epochs trained.
+         * @return Epochs
+         */
+        public long getEpochs() {
+            return epochs;
+        }
+
+        /**
+         * Gets the training time.
+         * @return Milliseconds
+         */
+        public long getMillis() {
+            return millis;
+        }
+
+        /**
+         * Gets why training stopped.
+         * @return Reason
+         */
+        public String getReason() {
+            return reason;
+        }
+
+        @Override
+        public String toString() {
+            return candidate + " error " + validationError + " test accuracy " + accuracy
+                    + " epochs " + epochs + " ms " + millis + " (" + reason + ")";
+        }
+    }
+}
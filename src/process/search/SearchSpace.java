@@ -0,0 +1,146 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This class is the set of hyperparameters to search: hidden layer shapes,
+ * hidden activation functions, and training error thresholds. It can be
+ * walked as a full grid or sampled at random. By default it comes from
+ * system properties, e.g., -Dprocess.search.hidden=4;8;8,4
+ * -Dprocess.search.activations=tanh,elliott -Dprocess.search.thresholds=0.01.
+ * @author Ron.Coleman
+ */
+public class SearchSpace {
+    // Hidden layer shapes
+    private final List<int[]> hidden = new ArrayList<>();
+
+    // Hidden activation functions
+    private final List<String> activations = new ArrayList<>();
+
+    // Training error thresholds
+    private final List<Double> thresholds = new ArrayList<>();
+
+    /**
+     * Gets the search space from system properties.
+     * @return Search space
+     */
+    public static SearchSpace fromProperties() {
+        SearchSpace space = new SearchSpace();
+
+        for(String shape: System.getProperty("process.search.hidden", "2;4;8;16;8,4").split(";")) {
+            String[] sizes = shape.split(",");
+
+            int[] layers = new int[sizes.length];
+
+            for(int k=0; k < sizes.length; k++)
+                layers[k] = Integer.parseInt(sizes[k].trim());
+
+            space.addHidden(layers);
+        }
+
+        for(String activation: System.getProperty("process.search.activations", "tanh,elliott").split(","))
+            space.addActivation(activation.trim());
+
+        for(String threshold: System.getProperty("process.search.thresholds", "0.01,0.02").split(","))
+            space.addThreshold(Double.parseDouble(threshold.trim()));
+
+        return space;
+    }
+
+    /**
+     * Adds a choice of hidden layers.
+     * @param layers Neurons per hidden layer
+     * @return This space
+     */
+    public SearchSpace addHidden(int... layers) {
+        hidden.add(layers.clone());
+        return this;
+    }
+
+    /**
+     * Adds a choice of hidden activation.
+     * @param activation tanh, sigmoid, elliott, or relu
+     * @return This space
+     */
+    public SearchSpace addActivation(String activation) {
+        activations.add(activation);
+        return this;
+    }
+
+    /**
+     * Adds a choice of training error threshold.
+     * @param threshold Threshold
+     * @return This space
+     */
+    public SearchSpace addThreshold(double threshold) {
+        thresholds.add(threshold);
+        return this;
+    }
+
+    /**
+     * Gets the number of points in the grid.
+     * @return Size
+     */
+    public int size() {
+        return hidden.size() * activations.size() * thresholds.size();
+    }
+
+    /**
+     * Gets every combination.
+     * @return Candidates
+     */
+    public List<Candidate> grid() {
+        List<Candidate> candidates = new ArrayList<>(size());
+
+        for(int[] layers: hidden)
+            for(String activation: activations)
+                for(double threshold: thresholds)
+                    candidates.add(new Candidate(layers, activation, threshold));
+
+        return candidates;
+    }
+
+    /**
+     * Gets combinations drawn at random, each parameter independently.
+     * @param count Number of candidates
+     * @param ran Random number generator
+     * @return Candidates
+     */
+    public List<Candidate> random(int count, Random ran) {
+        List<Candidate> candidates = new ArrayList<>(count);
+
+        for(int k=0; k < count; k++) {
+            int[] layers = hidden.get(ran.nextInt(hidden.size()));
+            String activation = activations.get(ran.nextInt(activations.size()));
+            double threshold = thresholds.get(ran.nextInt(thresholds.size()));
+
+            candidates.add(new Candidate(layers, activation, threshold));
+        }
+
+        return candidates;
+    }
+}
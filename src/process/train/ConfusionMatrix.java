@@ -0,0 +1,202 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.train;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class counts how the rows of each class got classified: a row per
+ * actual class and a column per predicted class. From the counts come the
+ * accuracy and each class's precision and recall. An instance belongs to
+ * one thread; counts from other threads get merged in afterwards.
+ * @author Ron.Coleman
+ */
+public class ConfusionMatrix {
+    // Number of classes
+    private final int classes;
+
+    // Count of each actual, predicted pair, row-major by actual class
+    private final long[] counts;
+
+    /**
+     * Constructor
+     * @param classes Number of classes
+     */
+    public ConfusionMatrix(int classes) {
+        this.classes = classes;
+        this.counts = new long[classes * classes];
+    }
+
+    /**
+     * Counts a row.
+     * @param actual Class it is
+     * @param predicted Class it was classified as
+     */
+    public void add(int actual, int predicted) {
+        counts[actual * classes + predicted]++;
+    }
+
+    /**
+     * Adds another matrix's counts to this one's.
+     * @param that Matrix over the same classes
+     * @return This matrix
+     */
+    public ConfusionMatrix merge(ConfusionMatrix that) {
+        assert(that.classes == classes);
+
+        for(int k=0; k < counts.length; k++)
+            counts[k] += that.counts[k];
+
+        return this;
+    }
+
+    /**
+     * Clears the counts.
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+    }
+
+    /**
+     * Gets the number of classes.
+     * @return Classes
+     */
+    public int getClasses() {
+        return classes;
+    }
+
+    /**
+     * Gets the number of rows of a class classified as a class.
+     * @param actual Class the rows are
+     * @param predicted Class they were classified as
+     * @return Count
+     */
+    public long getCount(int actual, int predicted) {
+        return counts[actual * classes + predicted];
+    }
+
+    /**
+     * Gets the number of rows counted.
+     * @return Rows
+     */
+    public long getTotal() {
+        long total = 0;
+
+        for(long count: counts)
+            total += count;
+
+        return total;
+    }
+
+    /**
+     * Gets the fraction of rows classified correctly.
+     * @return Accuracy or NaN if there are no rows
+     */
+    public double getAccuracy() {
+        long hits = 0;
+
+        for(int k=0; k < classes; k++)
+            hits += getCount(k, k);
+
+        long total = getTotal();
+
+        return total == 0 ? Double.NaN : (double) hits / total;
+    }
+
+    /**
+     * Gets the fraction of the rows classified as a class that are that class.
+     * @param code Class
+     * @return Precision or NaN if no rows were classified as the class
+     */
+    public double getPrecision(int code) {
+        long predicted = 0;
+
+        for(int actual=0; actual < classes; actual++)
+            predicted += getCount(actual, code);
+
+        return predicted == 0 ? Double.NaN : (double) getCount(code, code) / predicted;
+    }
+
+    /**
+     * Gets the fraction of the rows of a class classified as that class.
+     * @param code Class
+     * @return Recall or NaN if there are no rows of the class
+     */
+    public double getRecall(int code) {
+        long actual = 0;
+
+        for(int predicted=0; predicted < classes; predicted++)
+            actual += getCount(code, predicted);
+
+        return actual == 0 ? Double.NaN : (double) getCount(code, code) / actual;
+    }
+
+    /**
+     * Formats the matrix with a row per class, its precision and recall, and
+     * the accuracy at the bottom.
+     * @param names Name of each class, in code order
+     * @return Table
+     */
+    public String toString(List<String> names) {
+        int width = 9;
+
+        for(String name: names)
+            width = Math.max(width, name.length() + 1);
+
+        String cell = "%" + width + "s";
+
+        StringBuilder sb = new StringBuilder();
+
+        sb.append(String.format(cell, "actual"));
+
+        for(String name: names)
+            sb.append(String.format(cell, name));
+
+        sb.append(String.format(cell + cell + "%n", "precision", "recall"));
+
+        for(int actual=0; actual < classes; actual++) {
+            sb.append(String.format(cell, names.get(actual)));
+
+            for(int predicted=0; predicted < classes; predicted++)
+                sb.append(String.format(cell, getCount(actual, predicted)));
+
+            sb.append(String.format(cell + cell + "%n",
+                    String.format("%.3f", getPrecision(actual)), String.format("%.3f", getRecall(actual))));
+        }
+
+        sb.append(String.format("accuracy %.4f of %d", getAccuracy(), getTotal()));
+
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        String[] names = new String[classes];
+
+        for(int k=0; k < classes; k++)
+            names[k] = "" + k;
+
+        return toString(Arrays.asList(names));
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.train;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.encog.neural.networks.BasicNetwork;
+import process.util.ColumnStats;
+import process.util.FlatMLDataSet;
+import process.util.LabelEncoding;
+
+/**
+ * This class estimates how well a network generalizes by k-fold
+ * cross-validation. The folds are views over the shared rows, so nothing is
+ * copied, and they train in parallel, each on one thread from its own clone
+ * of the same untrained network.
+ * @author Ron.Coleman
+ */
+public class CrossValidation {
+    // All the rows, already shuffled
+    private final FlatMLDataSet data;
+
+    // Number of folds
+    private final int folds;
+
+    // How to train each fold
+    private final TrainConfig config;
+
+    // Training error threshold
+    private final double threshold;
+
+    // Decodes the outputs into classes
+    private final LabelEncoding labels;
+
+    /**
+     * Constructor
+     * @param data All the rows, already shuffled
+     * @param folds Number of folds, at least two
+     * @param config How to train each fold
+     * @param threshold Training error threshold
+     * @param labels Decodes the outputs into classes
+     */
+    public CrossValidation(FlatMLDataSet data, int folds, TrainConfig config, double threshold, LabelEncoding labels) {
+        if(folds < 2 || folds > data.size())
+            throw new IllegalArgumentException("bad fold count " + folds);
+
+        this.data = data;
+        this.folds = folds;
+        this.config = config.copy().setThreads(1);
+        this.threshold = threshold;
+        this.labels = labels;
+    }
+
+    /**
+     * Gets the rows held out by a fold.
+     * @param fold Fold
+     * @return View of the held-out rows
+     */
+    public FlatMLDataSet getTestFold(int fold) {
+        int from = (int) ((long) fold * data.size() / folds);
+        int to = (int) ((long) (fold + 1) * data.size() / folds);
+
+        return data.view(from, to - from);
+    }
+
+    /**
+     * Gets the rows a fold trains on: everything it doesn't hold out.
+     * @param fold Fold
+     * @return View of the training rows
+     */
+    public FlatMLDataSet getTrainingFold(int fold) {
+        int from = (int) ((long) fold * data.size() / folds);
+        int to = (int) ((long) (fold + 1) * data.size() / folds);
+
+        int[] rows = new int[data.size() - (to - from)];
+
+        int n = 0;
+
+        for(int row=0; row < from; row++)
+            rows[n++] = row;
+
+        for(int row=to; row < data.size(); row++)
+            rows[n++] = row;
+
+        return data.select(rows);
+    }
+
+    /**
+     * Trains and scores every fold.
+     * @param network Untrained network, which is left untouched
+     * @param threads Number of folds trained at once
+     * @return Results
+     * @throws Exception
+     */
+    public Result run(BasicNetwork network, int threads) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, folds));
+
+        try {
+            List<Future<Evaluation>> futures = new ArrayList<>(folds);
+
+            for(int fold=0; fold < folds; fold++) {
+                final FlatMLDataSet training = getTrainingFold(fold);
+                final FlatMLDataSet test = getTestFold(fold);
+
+                futures.add(pool.submit(() -> {
+                    BasicNetwork clone = (BasicNetwork) network.clone();
+
+                    // No validation rows: picking weights on the held-out fold would bias its score
+                    new NetworkTrainer(config, threshold).setReporting(false).train(clone, training, null);
+
+                    return new Evaluation(test.getInputSize(), test.getIdealSize()).evaluate(clone, test, labels);
+                }));
+            }
+
+            Result result = new Result(folds);
+
+            for(int fold=0; fold < folds; fold++) {
+                Evaluation evaluation = futures.get(fold).get();
+
+                result.errors[fold] = evaluation.getError();
+                result.accuracies[fold] = evaluation.getAccuracy();
+            }
+
+            return result;
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * This class is the error and accuracy of each fold.
+     */
+    public static class Result {
+        private final double[] errors;
+        private final double[] accuracies;
+
+        Result(int folds) {
+            errors = new double[folds];
+            accuracies = new double[folds];
+        }
+
+        /**
+         * Gets the test error of each fold.
+         * @return Errors by fold, a copy
+         */
+        public double[] getErrors() {
+            return errors.clone();
+        }
+
+        /**
+         * Gets the test accuracy of each fold.
+         * @return Accuracies by fold, a copy
+         */
+        public double[] getAccuracies() {
+            return accuracies.clone();
+        }
+
+        /**
+         * Gets the mean error across folds.
+         * @return Mean
+         */
+        public double getMeanError() {
+            return stats(errors).getMean();
+        }
+
+        /**
+         * Gets the sample variance of the error across folds.
+         * @return Variance
+         */
+        public double getErrorVariance() {
+            return variance(errors);
+        }
+
+        /**
+         * Gets the mean accuracy across folds.
+         * @return Mean
+         */
+        public double getMeanAccuracy() {
+            return stats(accuracies).getMean();
+        }
+
+        /**
+         * Gets the sample variance of the accuracy across folds.
+         * @return Variance
+         */
+        public double getAccuracyVariance() {
+            return variance(accuracies);
+        }
+
+        private static ColumnStats stats(double[] xs) {
+            ColumnStats stats = new ColumnStats();
+
+            stats.add(xs, 0, xs.length);
+
+            return stats;
+        }
+
+        private static double variance(double[] xs) {
+            return xs.length < 2 ? 0 : stats(xs).getM2() / (xs.length - 1);
+        }
+
+        @Override
+        public String toString() {
+            return errors.length + " folds: error " + getMeanError() + " +/- " + Math.sqrt(getErrorVariance())
+                    + " (variance " + getErrorVariance() + "), accuracy " + getMeanAccuracy()
+                    + " +/- " + Math.sqrt(getAccuracyVariance()) + " (variance " + getAccuracyVariance() + ")";
+        }
+    }
+}
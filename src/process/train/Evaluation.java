@@ -0,0 +1,108 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.train;
+
+import org.encog.mathutil.error.ErrorCalculation;
+import org.encog.neural.networks.BasicNetwork;
+import process.util.FlatMLDataSet;
+import process.util.LabelEncoding;
+
+/**
+ * This class scores a network over some rows: the mean squared error, the
+ * way Encog computes it, and the fraction of rows classified correctly.
+ * An instance reuses its buffers, so it belongs to one thread.
+ * @author Ron.Coleman
+ */
+public class Evaluation {
+    // Buffers, allocated once
+    private final double[] input;
+    private final double[] output;
+    private final double[] ideal;
+
+    // Error accumulator
+    private final ErrorCalculation calculation = new ErrorCalculation();
+
+    // Mean squared error of the latest evaluation
+    private double error = Double.NaN;
+
+    // Fraction classified correctly by the latest evaluation
+    private double accuracy = Double.NaN;
+
+    /**
+     * Constructor
+     * @param inputSize Number of inputs in a row
+     * @param idealSize Number of ideals in a row
+     */
+    public Evaluation(int inputSize, int idealSize) {
+        input = new double[inputSize];
+        output = new double[idealSize];
+        ideal = new double[idealSize];
+    }
+
+    /**
+     * Evaluates a network.
+     * @param network Network
+     * @param rows Rows to score
+     * @param labels Decodes the outputs into classes or null to skip accuracy
+     * @return This evaluation
+     */
+    public Evaluation evaluate(BasicNetwork network, FlatMLDataSet rows, LabelEncoding labels) {
+        calculation.reset();
+
+        int hits = 0;
+
+        for(int row=0; row < rows.size(); row++) {
+            rows.getInput(row, input);
+            rows.getIdeal(row, ideal);
+
+            network.compute(input, output);
+
+            calculation.updateError(output, ideal, 1.0);
+
+            if(labels != null && labels.decode(output) == labels.decode(ideal))
+                hits++;
+        }
+
+        error = calculation.calculate();
+
+        accuracy = labels == null || rows.size() == 0 ? Double.NaN : (double) hits / rows.size();
+
+        return this;
+    }
+
+    /**
+     * Gets the mean squared error.
+     * @return Error
+     */
+    public double getError() {
+        return error;
+    }
+
+    /**
+     * Gets the fraction of rows classified correctly.
+     * @return Accuracy or NaN if it wasn't evaluated
+     */
+    public double getAccuracy() {
+        return accuracy;
+    }
+}
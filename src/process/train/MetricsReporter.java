@@ -0,0 +1,262 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.train;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This class samples training metrics on a background thread at a fixed
+ * period and exports them to the console, a CSV file, and/or JMX. The
+ * training thread only records into the ring buffer; all formatting and I/O
+ * happens here. By default it comes from system properties, e.g.,
+ * -Dprocess.metrics=console,csv -Dprocess.metrics.period=500.
+ * @author Ron.Coleman
+ */
+public class MetricsReporter implements TrainingMetricsMXBean {
+    // Sinks
+    public final static String NONE = "none";
+    public final static String CONSOLE = "console";
+    public final static String CSV = "csv";
+    public final static String JMX = "jmx";
+
+    // JMX name of the training metrics
+    public final static String OBJECT_NAME = "process.train:type=TrainingMetrics";
+
+    // Metrics to sample
+    private final TrainingMetrics metrics;
+
+    // Sampling period in milliseconds
+    private final long period;
+
+    // Export to the console
+    private final boolean console;
+
+    // CSV file to export to or null
+    private final String csvPath;
+
+    // Export to JMX
+    private final boolean jmx;
+
+    // CSV writer while running
+    private PrintWriter csv = null;
+
+    // Sampler thread while running
+    private ScheduledExecutorService scheduler = null;
+
+    // Sample being filled, only touched by the sampler
+    private final TrainingMetrics.Sample sample = new TrainingMetrics.Sample();
+
+    // Latest sample, for JMX
+    private volatile long epoch;
+    private volatile double error;
+    private volatile double epochMillis;
+    private volatile double rowsPerSecond;
+
+    /**
+     * Constructor
+     * @param metrics Metrics to sample
+     * @param sinks Comma-separated sinks: none, console, csv, jmx
+     * @param period Sampling period in milliseconds
+     * @param csvPath CSV file for the csv sink
+     */
+    public MetricsReporter(TrainingMetrics metrics, String sinks, long period, String csvPath) {
+        this.metrics = metrics;
+        this.period = period;
+
+        boolean console = false, jmx = false, csv = false;
+
+        for(String sink: sinks.split(",")) {
+            switch(sink.trim()) {
+                case CONSOLE:
+                    console = true;
+                    break;
+
+                case CSV:
+                    csv = true;
+                    break;
+
+                case JMX:
+                    jmx = true;
+                    break;
+
+                case NONE:
+                case "":
+                    break;
+
+                default:
+                    throw new IllegalArgumentException("bad metrics sink '" + sink + "'");
+            }
+        }
+
+        this.console = console;
+        this.jmx = jmx;
+        this.csvPath = csv ? csvPath : null;
+    }
+
+    /**
+     * Gets a reporter configured from system properties.
+     * @param metrics Metrics to sample
+     * @return Reporter
+     */
+    public static MetricsReporter fromProperties(TrainingMetrics metrics) {
+        return new MetricsReporter(metrics,
+                System.getProperty("process.metrics", CONSOLE),
+                Long.getLong("process.metrics.period", 1000),
+                System.getProperty("process.metrics.file", "metrics.csv"));
+    }
+
+    /**
+     * Tests if the reporter exports anything.
+     * @return True if there's at least one sink
+     */
+    public boolean isEnabled() {
+        return console || jmx || csvPath != null;
+    }
+
+    /**
+     * Starts sampling. Does nothing without a sink.
+     */
+    public void start() {
+        if(!isEnabled() || scheduler != null)
+            return;
+
+        try {
+            if(csvPath != null) {
+                csv = new PrintWriter(new FileWriter(csvPath));
+
+                csv.println("epoch,error,epoch_ms,rows_per_sec,dropped");
+            }
+
+            if(jmx) {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+                ObjectName name = new ObjectName(OBJECT_NAME);
+
+                if(server.isRegistered(name))
+                    server.unregisterMBean(name);
+
+                server.registerMBean(this, name);
+            }
+        }
+        catch(Exception ex) {
+            Logger.getLogger(MetricsReporter.class.getName()).log(Level.SEVERE, null, ex);
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-reporter");
+
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        scheduler.scheduleAtFixedRate(this::report, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops sampling after a last report of whatever's left.
+     */
+    public void stop() {
+        if(scheduler == null)
+            return;
+
+        scheduler.shutdown();
+
+        try {
+            scheduler.awaitTermination(period, TimeUnit.MILLISECONDS);
+        }
+        catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        scheduler = null;
+
+        report();
+
+        if(csv != null) {
+            csv.close();
+            csv = null;
+        }
+
+        if(jmx) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+            }
+            catch(Exception ex) {
+                Logger.getLogger(MetricsReporter.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+
+    /**
+     * Exports the epochs since the last report.
+     */
+    private synchronized void report() {
+        if(!metrics.sample(sample.sequence, sample))
+            return;
+
+        epoch = sample.epoch;
+        error = sample.error;
+        epochMillis = sample.epochMillis;
+        rowsPerSecond = sample.rowsPerSecond;
+
+        if(console)
+            System.out.printf("Epoch #%d Error:%s %.3f ms/epoch %.0f rows/sec%n",
+                    epoch, error, epochMillis, rowsPerSecond);
+
+        if(csv != null) {
+            csv.println(epoch + "," + error + "," + epochMillis + "," + rowsPerSecond + "," + sample.dropped);
+            csv.flush();
+        }
+    }
+
+    @Override
+    public long getEpoch() {
+        return epoch;
+    }
+
+    @Override
+    public double getError() {
+        return error;
+    }
+
+    @Override
+    public double getEpochMillis() {
+        return epochMillis;
+    }
+
+    @Override
+    public double getRowsPerSecond() {
+        return rowsPerSecond;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.train;
+
+import org.encog.neural.networks.BasicNetwork;
+import org.encog.neural.networks.training.propagation.Propagation;
+import process.util.FlatMLDataSet;
+
+/**
+ * This class runs the training loop: epochs until a stopping policy says
+ * enough, recording metrics as it goes. With validation rows, it scores the
+ * network on them and, when training stops, restores the weights that scored
+ * best.
+ * @author Ron.Coleman
+ */
+public class NetworkTrainer {
+    // How to train
+    private final TrainConfig config;
+
+    // Training error threshold
+    private final double threshold;
+
+    // When to stop, set up fresh for each run
+    private StoppingPolicy policy;
+
+    // Why the latest run stopped
+    private String reason = "";
+
+    // Report metrics per the process.metrics properties
+    private boolean reporting = true;
+
+    /**
+     * Constructor
+     * @param config Training configuration
+     * @param threshold Training error threshold
+     */
+    public NetworkTrainer(TrainConfig config, double threshold) {
+        this.config = config;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Sets the stopping policy, replacing the one from the configuration.
+     * @param policy Policy
+     * @return This trainer
+     */
+    public NetworkTrainer setStoppingPolicy(StoppingPolicy policy) {
+        this.policy = policy;
+        return this;
+    }
+
+    /**
+     * Turns metrics reporting on or off, e.g., off for many small runs.
+     * @param reporting True to report per the process.metrics properties
+     * @return This trainer
+     */
+    public NetworkTrainer setReporting(boolean reporting) {
+        this.reporting = reporting;
+        return this;
+    }
+
+    /**
+     * Trains a network.
+     * @param network Network to train
+     * @param training Training rows
+     * @param validation Held-out rows or null
+     * @return Where training stood when it stopped
+     */
+    public TrainingProgress train(BasicNetwork network, FlatMLDataSet training, FlatMLDataSet validation) {
+        final Propagation train = config.createTrainer(network, training);
+
+        StoppingPolicy stopping = policy != null ? policy : config.createStoppingPolicy(threshold);
+
+        stopping.reset();
+
+        boolean validating = validation != null && validation.size() > 0 && config.getValidationPeriod() > 0;
+
+        // Validation buffers, allocated once
+        double[] best = validating ? new double[network.getFlat().getWeights().length] : null;
+
+        Evaluation evaluation = new Evaluation(training.getInputSize(), training.getIdealSize());
+
+        // Epochs go in a ring buffer a background reporter samples, so the
+        // loop itself does no I/O
+        final TrainingMetrics metrics = new TrainingMetrics(training.getRecordCount());
+
+        final MetricsReporter reporter = reporting ?
+                MetricsReporter.fromProperties(metrics) : new MetricsReporter(metrics, MetricsReporter.NONE, 0, null);
+
+        final TrainingProgress progress = new TrainingProgress();
+
+        reporter.start();
+
+        long begin = System.nanoTime();
+
+        try {
+            do {
+                long start = System.nanoTime();
+
+                train.iteration();
+
+                long end = System.nanoTime();
+
+                progress.epoch++;
+                progress.trainingError = train.getError();
+                progress.elapsedNanos = end - begin;
+                progress.validated = validating && progress.epoch % config.getValidationPeriod() == 0;
+
+                metrics.record(progress.epoch, progress.trainingError, end - start);
+
+                if(progress.validated) {
+                    progress.validationError = evaluation.evaluate(network, validation, null).getError();
+
+                    if(progress.validationError < progress.bestValidationError) {
+                        progress.bestValidationError = progress.validationError;
+                        progress.bestEpoch = progress.epoch;
+
+                        System.arraycopy(network.getFlat().getWeights(), 0, best, 0, best.length);
+                    }
+                }
+            } while (!stopping.shouldStop(progress));
+        }
+        finally {
+            train.finishTraining();
+
+            reporter.stop();
+        }
+
+        reason = stopping.getReason();
+
+        // Keep the best network seen, not the last
+        if(best != null && progress.bestEpoch > 0 && progress.bestEpoch != progress.epoch)
+            System.arraycopy(best, 0, network.getFlat().getWeights(), 0, best.length);
+
+        return progress;
+    }
+
+    /**
+     * Gets why the latest run stopped.
+     * @return Reason
+     */
+    public String getReason() {
+        return reason;
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.train;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import org.encog.neural.flat.FlatNetwork;
+import org.encog.neural.networks.BasicNetwork;
+import process.util.FlatMLDataSet;
+import process.util.LabelEncoding;
+
+/**
+ * This class scores a network over some rows on all the cores: the mean
+ * squared error and a confusion matrix of the decoded classes. The rows are
+ * split into a slice per thread. Each slice has its own copy of the network,
+ * since a network keeps its layer outputs in the network, and its own
+ * buffers and counts, which get summed once the slices are done, so no
+ * thread waits on another. The slices are kept for the next evaluation,
+ * so scoring allocates nothing per row.
+ * @author Ron.Coleman
+ */
+public class ParallelEvaluation {
+    // Threads to score on, e.g., -Dprocess.evaluate.threads=4
+    public static int THREADS = Integer.getInteger("process.evaluate.threads", ForkJoinPool.commonPool().getParallelism() + 1);
+
+    // Fewest rows worth a thread of their own
+    public static int MIN_SLICE = 1024;
+
+    // Network to score
+    private final BasicNetwork network;
+
+    // Decodes the outputs and ideals into classes
+    private final LabelEncoding labels;
+
+    // One per thread, made on first use
+    private final Slice[] slices;
+
+    // Counts of all the slices, from the latest evaluation
+    private final ConfusionMatrix matrix;
+
+    // Mean squared error of the latest evaluation
+    private double error = Double.NaN;
+
+    /**
+     * Constructor
+     * @param network Network
+     * @param labels Decodes the outputs and ideals into classes
+     */
+    public ParallelEvaluation(BasicNetwork network, LabelEncoding labels) {
+        this.network = network;
+        this.labels = labels;
+        this.slices = new Slice[Math.max(1, THREADS)];
+        this.matrix = new ConfusionMatrix(labels.getClasses());
+    }
+
+    /**
+     * Evaluates the network as it stands now.
+     * @param rows Rows to score
+     * @return This evaluation
+     */
+    public ParallelEvaluation evaluate(FlatMLDataSet rows) {
+        int n = rows.size();
+
+        int count = Math.max(1, Math.min(slices.length, n / MIN_SLICE));
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(count);
+
+        for(int k=0; k < count; k++) {
+            if(slices[k] == null)
+                slices[k] = new Slice();
+
+            Slice slice = slices[k];
+
+            slice.refresh();
+
+            int from = (int) ((long) n * k / count);
+            int to = (int) ((long) n * (k + 1) / count);
+
+            // The caller takes the first slice itself
+            if(k > 0)
+                tasks.add(ForkJoinPool.commonPool().submit(() -> slice.score(rows, from, to)));
+        }
+
+        slices[0].score(rows, 0, (int) ((long) n / count));
+
+        for(ForkJoinTask<?> task: tasks)
+            task.join();
+
+        // Merge, now that no one is writing
+        matrix.reset();
+
+        double sse = 0;
+
+        for(int k=0; k < count; k++) {
+            matrix.merge(slices[k].matrix);
+
+            sse += slices[k].sse;
+        }
+
+        error = n == 0 ? Double.NaN : sse / ((double) n * rows.getIdealSize());
+
+        return this;
+    }
+
+    /**
+     * Gets the network this scores.
+     * @return Network
+     */
+    public BasicNetwork getNetwork() {
+        return network;
+    }
+
+    /**
+     * Gets the mean squared error.
+     * @return Error
+     */
+    public double getError() {
+        return error;
+    }
+
+    /**
+     * Gets the fraction of rows classified correctly.
+     * @return Accuracy
+     */
+    public double getAccuracy() {
+        return matrix.getAccuracy();
+    }
+
+    /**
+     * Gets the confusion matrix.
+     * @return Counts by actual and predicted class
+     */
+    public ConfusionMatrix getMatrix() {
+        return matrix;
+    }
+
+    /**
+     * This class scores a run of rows on one thread.
+     */
+    private class Slice {
+        // Private copy of the network
+        private final FlatNetwork flat = network.getFlat().clone();
+
+        // Buffers
+        private final double[] input = new double[flat.getInputCount()];
+        private final double[] output = new double[flat.getOutputCount()];
+        private final double[] ideal = new double[flat.getOutputCount()];
+
+        // Counts of this slice
+        private final ConfusionMatrix matrix = new ConfusionMatrix(labels.getClasses());
+
+        // Sum of the squared errors of this slice
+        private double sse = 0;
+
+        /**
+         * Copies in the network's weights, in case it trained some more.
+         */
+        void refresh() {
+            double[] weights = network.getFlat().getWeights();
+
+            System.arraycopy(weights, 0, flat.getWeights(), 0, weights.length);
+        }
+
+        /**
+         * Scores rows.
+         * @param rows Rows
+         * @param from First row
+         * @param to Last row, exclusive
+         */
+        void score(FlatMLDataSet rows, int from, int to) {
+            matrix.reset();
+
+            sse = 0;
+
+            for(int row=from; row < to; row++) {
+                rows.getInput(row, input);
+                rows.getIdeal(row, ideal);
+
+                flat.compute(input, output);
+
+                for(int k=0; k < output.length; k++) {
+                    double delta = ideal[k] - output[k];
+
+                    sse += delta * delta;
+                }
+
+                matrix.add(labels.decode(ideal), labels.decode(output));
+            }
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.train;
+
+/**
+ * This class has the stock stopping policies: an error threshold, an epoch
+ * cap, a wall-clock budget, patience on validation error, plateau on
+ * training error, and any combination of them.
+ * @author Ron.Coleman
+ */
+public class StoppingPolicies {
+    /**
+     * Stops once the training error drops below a threshold.
+     * @param threshold Error threshold
+     * @return Policy
+     */
+    public static StoppingPolicy threshold(double threshold) {
+        return new StoppingPolicy() {
+            @Override
+            public boolean shouldStop(TrainingProgress progress) {
+                return progress.trainingError <= threshold;
+            }
+
+            @Override
+            public String getReason() {
+                return "error below " + threshold;
+            }
+        };
+    }
+
+    /**
+     * Stops after a number of epochs.
+     * @param maxEpochs Epoch cap
+     * @return Policy
+     */
+    public static StoppingPolicy maxEpochs(long maxEpochs) {
+        return new StoppingPolicy() {
+            @Override
+            public boolean shouldStop(TrainingProgress progress) {
+                return progress.epoch >= maxEpochs;
+            }
+
+            @Override
+            public String getReason() {
+                return "epoch cap " + maxEpochs;
+            }
+        };
+    }
+
+    /**
+     * Stops once training has run for a while.
+     * @param millis Budget in milliseconds
+     * @return Policy
+     */
+    public static StoppingPolicy timeBudget(long millis) {
+        return new StoppingPolicy() {
+            @Override
+            public boolean shouldStop(TrainingProgress progress) {
+                return progress.elapsedNanos >= millis * 1000000;
+            }
+
+            @Override
+            public String getReason() {
+                return "time budget " + millis + " ms";
+            }
+        };
+    }
+
+    /**
+     * Stops when the validation error hasn't improved for a number of
+     * validations in a row.
+     * @param patience Validations without improvement
+     * @return Policy
+     */
+    public static StoppingPolicy patience(int patience) {
+        return new StoppingPolicy() {
+            // Validations since the best one
+            private int misses = 0;
+
+            @Override
+            public boolean shouldStop(TrainingProgress progress) {
+                if(!progress.validated)
+                    return false;
+
+                if(progress.bestEpoch == progress.epoch)
+                    misses = 0;
+                else
+                    misses++;
+
+                return misses >= patience;
+            }
+
+            @Override
+            public String getReason() {
+                return "no validation improvement in " + patience;
+            }
+
+            @Override
+            public void reset() {
+                misses = 0;
+            }
+        };
+    }
+
+    /**
+     * Stops when the training error hasn't dropped by a relative amount over
+     * a window of epochs.
+     * @param window Epochs to look back
+     * @param delta Smallest relative improvement that counts, e.g., 0.001
+     * @return Policy
+     */
+    public static StoppingPolicy plateau(int window, double delta) {
+        return new StoppingPolicy() {
+            // Training error at the start of the window
+            private double reference = Double.POSITIVE_INFINITY;
+
+            // Epoch the window started
+            private long start = 0;
+
+            @Override
+            public boolean shouldStop(TrainingProgress progress) {
+                if(progress.epoch - start < window)
+                    return false;
+
+                boolean flat = reference - progress.trainingError < delta * reference;
+
+                reference = progress.trainingError;
+                start = progress.epoch;
+
+                return flat;
+            }
+
+            @Override
+            public String getReason() {
+                return "plateau over " + window + " epochs";
+            }
+
+            @Override
+            public void reset() {
+                reference = Double.POSITIVE_INFINITY;
+                start = 0;
+            }
+        };
+    }
+
+    /**
+     * Stops when any of the policies does.
+     * @param policies Policies
+     * @return Policy
+     */
+    public static StoppingPolicy any(StoppingPolicy... policies) {
+        return new StoppingPolicy() {
+            // The policy that stopped training
+            private StoppingPolicy stopper = null;
+
+            @Override
+            public boolean shouldStop(TrainingProgress progress) {
+                // Every policy sees every epoch so their state stays current
+                boolean stop = false;
+
+                for(StoppingPolicy policy: policies) {
+                    if(policy.shouldStop(progress) && stopper == null) {
+                        stopper = policy;
+                        stop = true;
+                    }
+                }
+
+                return stop || stopper != null;
+            }
+
+            @Override
+            public String getReason() {
+                return stopper == null ? "" : stopper.getReason();
+            }
+
+            @Override
+            public void reset() {
+                stopper = null;
+
+                for(StoppingPolicy policy: policies)
+                    policy.reset();
+            }
+        };
+    }
+}
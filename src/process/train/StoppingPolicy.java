@@ -0,0 +1,50 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.train;
+
+/**
+ * This interface decides when a training run is done. Policies keep whatever
+ * state they need between epochs; reset them before reusing one for another
+ * run.
+ * @author Ron.Coleman
+ */
+public interface StoppingPolicy {
+    /**
+     * Tests if training should stop.
+     * @param progress Where training stands after the latest epoch
+     * @return True to stop
+     */
+    public boolean shouldStop(TrainingProgress progress);
+
+    /**
+     * Gets why the policy stopped training.
+     * @return Reason
+     */
+    public String getReason();
+
+    /**
+     * Forgets any state from an earlier run.
+     */
+    default public void reset() {
+    }
+}
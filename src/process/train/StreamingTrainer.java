@@ -0,0 +1,300 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.train;
+
+import java.io.IOException;
+import org.encog.engine.network.activation.ActivationFunction;
+import org.encog.neural.flat.FlatNetwork;
+import org.encog.neural.networks.BasicNetwork;
+import process.util.BatchReader;
+import process.util.MiniBatch;
+import process.util.PrefetchingBatchReader;
+
+/**
+ * This class trains a network by mini-batch stochastic gradient descent on
+ * rows streamed from disk, for data too big to load. A background thread
+ * reads batches ahead through a shuffle window. Each batch updates the
+ * weights with the configured learning rate schedule and momentum, so
+ * memory depends on the batch size and the window, not on the data.
+ * <p>
+ * Gradients are backpropagated straight through the flat network's arrays,
+ * as Encog's own workers do, so the loop allocates nothing.
+ * @author Ron.Coleman
+ */
+public class StreamingTrainer {
+    // Rows in a batch when the configuration leaves it at zero
+    public static int DEFAULT_BATCH = 128;
+
+    // Batches read ahead, e.g., -Dprocess.stream.prefetch=4
+    public static int PREFETCH = Integer.getInteger("process.stream.prefetch", 4);
+
+    // Rows in the shuffle window, zero to train in file order
+    public static int WINDOW = Integer.getInteger("process.stream.window", 64 * 1024);
+
+    // How to train
+    private final TrainConfig config;
+
+    // Training error threshold
+    private final double threshold;
+
+    // Why the latest run stopped
+    private String reason = "";
+
+    /**
+     * Constructor
+     * @param config Training configuration: batch size, learning rate,
+     * schedule, momentum, and limits
+     * @param threshold Training error threshold
+     */
+    public StreamingTrainer(TrainConfig config, double threshold) {
+        this.config = config;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Trains a network, a pass over the rows per epoch, until the stopping
+     * policy says enough. The training error is the mean squared error of
+     * the epoch's batches as they were trained.
+     * @param network Network to train
+     * @param reader Normalized rows
+     * @return Where training stood when it stopped
+     * @throws IOException
+     */
+    public TrainingProgress train(BasicNetwork network, BatchReader reader) throws IOException {
+        FlatNetwork flat = network.getFlat();
+
+        assert(flat.getInputCount() == reader.getInputSize() && flat.getOutputCount() == reader.getIdealSize());
+
+        int batchSize = config.getBatchSize() > 0 ? config.getBatchSize() : DEFAULT_BATCH;
+
+        StoppingPolicy stopping = config.createStoppingPolicy(threshold);
+
+        stopping.reset();
+
+        Backprop backprop = new Backprop(flat);
+
+        TrainingProgress progress = new TrainingProgress();
+
+        PrefetchingBatchReader prefetch = new PrefetchingBatchReader(reader, batchSize, PREFETCH, WINDOW, 0);
+
+        // Epochs go in a ring buffer a background reporter samples, as for
+        // NetworkTrainer, with the rows counted as each pass goes
+        TrainingMetrics metrics = new TrainingMetrics(0);
+
+        MetricsReporter reporter = MetricsReporter.fromProperties(metrics);
+
+        reporter.start();
+
+        long begin = System.nanoTime();
+
+        try {
+            do {
+                long start = System.nanoTime();
+
+                double rate = config.getLearningRate(progress.epoch);
+
+                double sse = 0;
+
+                long rows = 0;
+
+                for(MiniBatch batch = prefetch.next(); batch != null; batch = prefetch.next()) {
+                    sse += backprop.gradients(batch);
+
+                    backprop.update(rate / batch.getRows(), config.getMomentum());
+
+                    rows += batch.getRows();
+                }
+
+                if(rows == 0)
+                    throw new IOException("no rows");
+
+                long end = System.nanoTime();
+
+                progress.epoch++;
+                progress.trainingError = sse / (rows * flat.getOutputCount());
+                progress.elapsedNanos = end - begin;
+
+                metrics.record(progress.epoch, progress.trainingError, end - start, rows);
+            } while (!stopping.shouldStop(progress));
+        }
+        finally {
+            prefetch.stop();
+
+            reporter.stop();
+        }
+
+        reason = stopping.getReason();
+
+        return progress;
+    }
+
+    /**
+     * Gets why the latest run stopped.
+     * @return Reason
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * This class accumulates the gradients of a batch and applies them. The
+     * layers of a flat network run from the output layer, zero, back to the
+     * input layer.
+     */
+    static class Backprop {
+        private final FlatNetwork flat;
+
+        private final double[] weights;
+
+        private final double[] layerOutput;
+
+        private final double[] layerSums;
+
+        private final int[] layerIndex;
+
+        private final int[] layerCounts;
+
+        private final int[] layerFeedCounts;
+
+        private final int[] weightIndex;
+
+        private final ActivationFunction[] activations;
+
+        // Gradient of each weight, summed over the batch
+        private final double[] gradients;
+
+        // Last change to each weight, for momentum
+        private final double[] velocity;
+
+        // Error term of each neuron
+        private final double[] deltas;
+
+        // Inputs and outputs of a row
+        private final double[] input;
+        private final double[] actual;
+
+        Backprop(FlatNetwork flat) {
+            this.flat = flat;
+
+            weights = flat.getWeights();
+            layerOutput = flat.getLayerOutput();
+            layerSums = flat.getLayerSums();
+            layerIndex = flat.getLayerIndex();
+            layerCounts = flat.getLayerCounts();
+            layerFeedCounts = flat.getLayerFeedCounts();
+            weightIndex = flat.getWeightIndex();
+            activations = flat.getActivationFunctions();
+
+            gradients = new double[weights.length];
+            velocity = new double[weights.length];
+            deltas = new double[layerOutput.length];
+
+            input = new double[flat.getInputCount()];
+            actual = new double[flat.getOutputCount()];
+        }
+
+        /**
+         * Accumulates the gradients of a batch.
+         * @param batch Rows
+         * @return Sum of the squared errors
+         */
+        double gradients(MiniBatch batch) {
+            double[] data = batch.getData();
+
+            int stride = batch.getStride();
+
+            int inputSize = input.length;
+
+            double sse = 0;
+
+            for(int row=0; row < batch.getRows(); row++) {
+                int at = row * stride;
+
+                System.arraycopy(data, at, input, 0, inputSize);
+
+                flat.compute(input, actual);
+
+                // Output layer: the error times the slope of the activation
+                for(int k=0; k < actual.length; k++) {
+                    double error = data[at + inputSize + k] - actual[k];
+
+                    sse += error * error;
+
+                    deltas[k] = error * activations[0].derivativeFunction(layerSums[k], layerOutput[k]);
+                }
+
+                for(int level = flat.getBeginTraining(); level < flat.getEndTraining(); level++)
+                    backpropagate(level);
+            }
+
+            return sse;
+        }
+
+        /**
+         * Accumulates the gradients of the weights into a layer and passes
+         * the error terms back to the layer feeding it.
+         * @param level Layer, from the output layer
+         */
+        private void backpropagate(int level) {
+            int from = layerIndex[level + 1];
+            int to = layerIndex[level];
+            int fromCount = layerCounts[level + 1];
+            int toCount = layerFeedCounts[level];
+            int index = weightIndex[level];
+
+            ActivationFunction activation = activations[level + 1];
+
+            for(int y=0; y < fromCount; y++) {
+                double output = layerOutput[from + y];
+
+                double sum = 0;
+
+                int wi = index + y;
+
+                for(int x=0; x < toCount; x++, wi += fromCount) {
+                    gradients[wi] += output * deltas[to + x];
+
+                    sum += weights[wi] * deltas[to + x];
+                }
+
+                deltas[from + y] = sum * activation.derivativeFunction(layerSums[from + y], layerOutput[from + y]);
+            }
+        }
+
+        /**
+         * Steps the weights along the gradients with momentum and clears the
+         * gradients for the next batch.
+         * @param rate Learning rate per row
+         * @param momentum Momentum
+         */
+        void update(double rate, double momentum) {
+            for(int k=0; k < weights.length; k++) {
+                velocity[k] = momentum * velocity[k] + rate * gradients[k];
+
+                weights[k] += velocity[k];
+
+                gradients[k] = 0;
+            }
+        }
+    }
+}
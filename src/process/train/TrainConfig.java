@@ -0,0 +1,515 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.train;
+
+import java.util.ArrayList;
+import org.encog.ml.data.MLDataSet;
+import org.encog.neural.networks.BasicNetwork;
+import org.encog.neural.networks.training.propagation.Propagation;
+import org.encog.neural.networks.training.propagation.back.Backpropagation;
+import org.encog.neural.networks.training.propagation.manhattan.ManhattanPropagation;
+import org.encog.neural.networks.training.propagation.quick.QuickPropagation;
+import org.encog.neural.networks.training.propagation.resilient.ResilientPropagation;
+import org.encog.neural.networks.training.propagation.scg.ScaledConjugateGradient;
+
+/**
+ * This class configures how a network gets trained: the algorithm, how
+ * many worker threads split the gradient computation, and the batch size.
+ * By default it comes from system properties, e.g.,
+ * -Dprocess.train.threads=32 -Dprocess.train.algorithm=rprop. It also sets
+ * the limits on a run: epochs, wall-clock budget, and early stopping.
+ * @author Ron.Coleman
+ */
+public class TrainConfig {
+    // Training algorithms
+    public final static String RPROP = "rprop";
+    public final static String BACKPROP = "backprop";
+    public final static String QUICKPROP = "quickprop";
+    public final static String MANHATTAN = "manhattan";
+    public final static String SCG = "scg";
+
+    // Learning rate schedules
+    public final static String CONSTANT = "constant";
+    public final static String STEP = "step";
+    public final static String EXPONENTIAL = "exponential";
+
+    // Training algorithm
+    private String algorithm = RPROP;
+
+    // Worker threads, zero to let Encog use one per core
+    private int threads = 0;
+
+    // Rows per weight update, zero for the whole training set, or for
+    // streaming training the default mini-batch
+    private int batchSize = 0;
+
+    // Learning rate for backprop, quickprop, and manhattan
+    private double learningRate = 0.01;
+
+    // Momentum for backprop
+    private double momentum = 0.0;
+
+    // How the learning rate falls over the epochs of streaming training
+    private String schedule = CONSTANT;
+
+    // Factor the learning rate falls by every decay period
+    private double decay = 0.5;
+
+    // Epochs in a decay period
+    private int decayEvery = 10;
+
+    // Epoch cap, zero for none
+    private long maxEpochs = 1000000;
+
+    // Wall-clock budget in milliseconds, zero for none
+    private long budgetMillis = 0;
+
+    // Epochs between validations on the held-out rows, zero for every epoch
+    // if there's patience and none otherwise
+    private int validateEvery = 0;
+
+    // Validations without improvement before stopping, zero for no limit
+    private int patience = 0;
+
+    // Epochs over which the training error must improve, zero for no limit
+    private int plateauWindow = 0;
+
+    // Smallest relative improvement over the plateau window
+    private double plateauDelta = 0.001;
+
+    /**
+     * Gets the configuration from system properties, using the defaults
+     * for any that aren't set.
+     * @return Configuration
+     */
+    public static TrainConfig fromProperties() {
+        TrainConfig config = new TrainConfig();
+
+        config.algorithm = System.getProperty("process.train.algorithm", config.algorithm);
+        config.threads = Integer.getInteger("process.train.threads", config.threads);
+        config.batchSize = Integer.getInteger("process.train.batch", config.batchSize);
+        config.learningRate = Double.parseDouble(System.getProperty("process.train.rate", "" + config.learningRate));
+        config.momentum = Double.parseDouble(System.getProperty("process.train.momentum", "" + config.momentum));
+        config.schedule = System.getProperty("process.train.schedule", config.schedule);
+        config.decay = Double.parseDouble(System.getProperty("process.train.decay", "" + config.decay));
+        config.decayEvery = Integer.getInteger("process.train.decay.every", config.decayEvery);
+        config.maxEpochs = Long.getLong("process.train.epochs", config.maxEpochs);
+        config.budgetMillis = Long.getLong("process.train.budget", config.budgetMillis);
+        config.validateEvery = Integer.getInteger("process.train.validate", config.validateEvery);
+        config.patience = Integer.getInteger("process.train.patience", config.patience);
+        config.plateauWindow = Integer.getInteger("process.train.plateau", config.plateauWindow);
+        config.plateauDelta = Double.parseDouble(System.getProperty("process.train.plateau.delta", "" + config.plateauDelta));
+
+        return config;
+    }
+
+    /**
+     * Copies this configuration.
+     * @return Copy
+     */
+    public TrainConfig copy() {
+        TrainConfig config = new TrainConfig();
+
+        config.algorithm = algorithm;
+        config.threads = threads;
+        config.batchSize = batchSize;
+        config.learningRate = learningRate;
+        config.momentum = momentum;
+        config.schedule = schedule;
+        config.decay = decay;
+        config.decayEvery = decayEvery;
+        config.maxEpochs = maxEpochs;
+        config.budgetMillis = budgetMillis;
+        config.validateEvery = validateEvery;
+        config.patience = patience;
+        config.plateauWindow = plateauWindow;
+        config.plateauDelta = plateauDelta;
+
+        return config;
+    }
+
+    /**
+     * Creates a trainer per this configuration.
+     * @param network Network to train
+     * @param training Training set
+     * @return Trainer
+     */
+    public Propagation createTrainer(BasicNetwork network, MLDataSet training) {
+        Propagation train;
+
+        switch(algorithm) {
+            case RPROP:
+                train = new ResilientPropagation(network, training);
+                break;
+
+            case BACKPROP:
+                train = new Backpropagation(network, training, learningRate, momentum);
+                break;
+
+            case QUICKPROP:
+                train = new QuickPropagation(network, training, learningRate);
+                break;
+
+            case MANHATTAN:
+                train = new ManhattanPropagation(network, training, learningRate);
+                break;
+
+            case SCG:
+                train = new ScaledConjugateGradient(network, training);
+                break;
+
+            default:
+                throw new IllegalArgumentException("bad algorithm '" + algorithm + "'");
+        }
+
+        // Split the gradient computation across the workers
+        train.setThreadCount(threads);
+
+        train.setBatchSize(batchSize);
+
+        return train;
+    }
+
+    /**
+     * Gets the learning rate for an epoch per the schedule: constant, step,
+     * which falls by the decay factor every decay period, or exponential,
+     * which falls by the same factor per period but smoothly.
+     * @param epoch Epoch, from zero
+     * @return Learning rate
+     */
+    public double getLearningRate(long epoch) {
+        switch(schedule) {
+            case CONSTANT:
+                return learningRate;
+
+            case STEP:
+                return learningRate * Math.pow(decay, epoch / Math.max(1, decayEvery));
+
+            case EXPONENTIAL:
+                return learningRate * Math.pow(decay, (double) epoch / Math.max(1, decayEvery));
+
+            default:
+                throw new IllegalArgumentException("bad schedule '" + schedule + "'");
+        }
+    }
+
+    /**
+     * Creates a stopping policy per this configuration: the error threshold
+     * plus whichever limits are set.
+     * @param threshold Training error threshold
+     * @return Policy
+     */
+    public StoppingPolicy createStoppingPolicy(double threshold) {
+        ArrayList<StoppingPolicy> policies = new ArrayList<>();
+
+        policies.add(StoppingPolicies.threshold(threshold));
+
+        if(maxEpochs > 0)
+            policies.add(StoppingPolicies.maxEpochs(maxEpochs));
+
+        if(budgetMillis > 0)
+            policies.add(StoppingPolicies.timeBudget(budgetMillis));
+
+        if(patience > 0)
+            policies.add(StoppingPolicies.patience(patience));
+
+        if(plateauWindow > 0)
+            policies.add(StoppingPolicies.plateau(plateauWindow, plateauDelta));
+
+        return StoppingPolicies.any(policies.toArray(new StoppingPolicy[policies.size()]));
+    }
+
+    /**
+     * Gets the training algorithm.
+     * @return rprop, backprop, quickprop, manhattan, or scg
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Sets the training algorithm.
+     * @param algorithm rprop, backprop, quickprop, manhattan, or scg
+     * @return This configuration
+     */
+    public TrainConfig setAlgorithm(String algorithm) {
+        this.algorithm = algorithm;
+        return this;
+    }
+
+    /**
+     * Gets the number of worker threads.
+     * @return Threads, zero for one per core
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the number of worker threads.
+     * @param threads Threads, zero for one per core
+     * @return This configuration
+     */
+    public TrainConfig setThreads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Gets the rows per weight update.
+     * @return Rows, zero for the whole training set
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets the rows per weight update.
+     * @param batchSize Rows, zero for the whole training set
+     * @return This configuration
+     */
+    public TrainConfig setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Gets the initial learning rate.
+     * @return Learning rate
+     */
+    public double getLearningRate() {
+        return learningRate;
+    }
+
+    /**
+     * Sets the initial learning rate.
+     * @param learningRate Learning rate
+     * @return This configuration
+     */
+    public TrainConfig setLearningRate(double learningRate) {
+        this.learningRate = learningRate;
+        return this;
+    }
+
+    /**
+     * Gets the momentum for backprop.
+     * @return Momentum
+     */
+    public double getMomentum() {
+        return momentum;
+    }
+
+    /**
+     * Sets the momentum for backprop.
+     * @param momentum Momentum
+     * @return This configuration
+     */
+    public TrainConfig setMomentum(double momentum) {
+        this.momentum = momentum;
+        return this;
+    }
+
+    /**
+     * Gets the learning rate schedule.
+     * @return constant, step, or exponential
+     */
+    public String getSchedule() {
+        return schedule;
+    }
+
+    /**
+     * Sets the learning rate schedule.
+     * @param schedule constant, step, or exponential
+     * @return This configuration
+     */
+    public TrainConfig setSchedule(String schedule) {
+        this.schedule = schedule;
+        return this;
+    }
+
+    /**
+     * Gets the factor the learning rate falls by every decay period.
+     * @return Decay factor
+     */
+    public double getDecay() {
+        return decay;
+    }
+
+    /**
+     * Sets the factor the learning rate falls by every decay period.
+     * @param decay Decay factor
+     * @return This configuration
+     */
+    public TrainConfig setDecay(double decay) {
+        this.decay = decay;
+        return this;
+    }
+
+    /**
+     * Gets the epochs in a decay period.
+     * @return Epochs
+     */
+    public int getDecayEvery() {
+        return decayEvery;
+    }
+
+    /**
+     * Sets the epochs in a decay period.
+     * @param decayEvery Epochs
+     * @return This configuration
+     */
+    public TrainConfig setDecayEvery(int decayEvery) {
+        this.decayEvery = decayEvery;
+        return this;
+    }
+
+    /**
+     * Gets the epoch cap.
+     * @return Epochs, zero for none
+     */
+    public long getMaxEpochs() {
+        return maxEpochs;
+    }
+
+    /**
+     * Sets the epoch cap.
+     * @param maxEpochs Epochs, zero for none
+     * @return This configuration
+     */
+    public TrainConfig setMaxEpochs(long maxEpochs) {
+        this.maxEpochs = maxEpochs;
+        return this;
+    }
+
+    /**
+     * Gets the wall-clock budget.
+     * @return Milliseconds, zero for none
+     */
+    public long getBudgetMillis() {
+        return budgetMillis;
+    }
+
+    /**
+     * Sets the wall-clock budget.
+     * @param budgetMillis Milliseconds, zero for none
+     * @return This configuration
+     */
+    public TrainConfig setBudgetMillis(long budgetMillis) {
+        this.budgetMillis = budgetMillis;
+        return this;
+    }
+
+    /**
+     * Gets the epochs between validations as set.
+     * @return Epochs, zero for the default
+     * @see #getValidationPeriod()
+     */
+    public int getValidateEvery() {
+        return validateEvery;
+    }
+
+    /**
+     * Sets the epochs between validations.
+     * @param validateEvery Epochs, zero for every epoch if there's patience and none otherwise
+     * @return This configuration
+     */
+    public TrainConfig setValidateEvery(int validateEvery) {
+        this.validateEvery = validateEvery;
+        return this;
+    }
+
+    /**
+     * Gets the epochs between validations in effect: as set, or every epoch
+     * if there's patience to run out and otherwise none.
+     * @return Epochs or zero not to validate
+     */
+    public int getValidationPeriod() {
+        if(validateEvery > 0)
+            return validateEvery;
+
+        return patience > 0 ? 1 : 0;
+    }
+
+    /**
+     * Gets the validations without improvement before stopping.
+     * @return Validations, zero for no limit
+     */
+    public int getPatience() {
+        return patience;
+    }
+
+    /**
+     * Sets the validations without improvement before stopping.
+     * @param patience Validations, zero for no limit
+     * @return This configuration
+     */
+    public TrainConfig setPatience(int patience) {
+        this.patience = patience;
+        return this;
+    }
+
+    /**
+     * Gets the epochs over which the training error must improve.
+     * @return Epochs, zero for no limit
+     */
+    public int getPlateauWindow() {
+        return plateauWindow;
+    }
+
+    /**
+     * Sets the epochs over which the training error must improve.
+     * @param plateauWindow Epochs, zero for no limit
+     * @return This configuration
+     */
+    public TrainConfig setPlateauWindow(int plateauWindow) {
+        this.plateauWindow = plateauWindow;
+        return this;
+    }
+
+    /**
+     * Gets the smallest relative improvement over the plateau window.
+     * @return Relative improvement
+     */
+    public double getPlateauDelta() {
+        return plateauDelta;
+    }
+
+    /**
+     * Sets the smallest relative improvement over the plateau window.
+     * @param plateauDelta Relative improvement
+     * @return This configuration
+     */
+    public TrainConfig setPlateauDelta(double plateauDelta) {
+        this.plateauDelta = plateauDelta;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return algorithm + " threads=" + threads + " batch=" + batchSize
+                + " rate=" + learningRate + " momentum=" + momentum
+                + " schedule=" + schedule + "/" + decay + "/" + decayEvery
+                + " epochs=" + maxEpochs + " budget=" + budgetMillis + " validate=" + validateEvery
+                + " patience=" + patience + " plateau=" + plateauWindow + "/" + plateauDelta;
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.train;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class records per-epoch training metrics in a fixed ring buffer. The
+ * training thread is the one writer; it fills a slot and then publishes it,
+ * without locks or allocation, so recording costs next to nothing. Readers,
+ * like a reporter on another thread, sample the most recent epochs. If the
+ * writer laps a reader, the reader loses the oldest records, not the writer.
+ * @author Ron.Coleman
+ */
+public class TrainingMetrics {
+    // Default number of epochs kept, a power of two
+    public final static int DEFAULT_CAPACITY = 1024;
+
+    // Slots minus one, for masking the sequence into the ring
+    private final int mask;
+
+    // Epoch numbers
+    private final long[] epochs;
+
+    // Training errors
+    private final double[] errors;
+
+    // Epoch durations in nanoseconds
+    private final long[] durations;
+
+    // Rows trained in each epoch
+    private final long[] counts;
+
+    // Number of rows in an epoch, unless the epoch says otherwise
+    private final long rows;
+
+    // Number of records published so far
+    private final AtomicLong published = new AtomicLong();
+
+    /**
+     * Constructor
+     * @param rows Number of rows in an epoch
+     */
+    public TrainingMetrics(long rows) {
+        this(rows, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor
+     * @param rows Number of rows in an epoch
+     * @param capacity Number of epochs kept, rounded up to a power of two
+     */
+    public TrainingMetrics(long rows, int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+
+        this.rows = rows;
+        this.mask = size - 1;
+
+        epochs = new long[size];
+        errors = new double[size];
+        durations = new long[size];
+        counts = new long[size];
+    }
+
+    /**
+     * Records an epoch. Only the training thread may call this.
+     * @param epoch Epoch number
+     * @param error Training error after the epoch
+     * @param nanos Duration of the epoch in nanoseconds
+     */
+    public void record(long epoch, double error, long nanos) {
+        record(epoch, error, nanos, rows);
+    }
+
+    /**
+     * Records an epoch of a given number of rows, e.g., for streaming where
+     * the rows aren't known up front. Only the training thread may call this.
+     * @param epoch Epoch number
+     * @param error Training error after the epoch
+     * @param nanos Duration of the epoch in nanoseconds
+     * @param rows Number of rows trained in the epoch
+     */
+    public void record(long epoch, double error, long nanos, long rows) {
+        long seq = published.get();
+
+        int slot = (int) seq & mask;
+
+        epochs[slot] = epoch;
+        errors[slot] = error;
+        durations[slot] = nanos;
+        counts[slot] = rows;
+
+        // Ordered store: the slot is visible before the new sequence is
+        published.lazySet(seq + 1);
+    }
+
+    /**
+     * Gets the number of records published so far.
+     * @return Sequence
+     */
+    public long getPublished() {
+        return published.get();
+    }
+
+    /**
+     * Gets the number of epochs kept.
+     * @return Capacity
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Summarizes the records published since an earlier sample.
+     * @param from Sequence the earlier sample ended at, zero for the start
+     * @param sample Sample to fill
+     * @return False if there's nothing new
+     */
+    public boolean sample(long from, Sample sample) {
+        long to = published.get();
+
+        if(to <= from)
+            return false;
+
+        // Records the writer has lapped are gone
+        long first = Math.max(from, to - mask);
+
+        long nanos = 0;
+        long trained = 0;
+        long epoch = 0;
+        double error = 0;
+
+        for(long seq=first; seq < to; seq++) {
+            int slot = (int) seq & mask;
+
+            nanos += durations[slot];
+            trained += counts[slot];
+
+            if(seq == to - 1) {
+                epoch = epochs[slot];
+                error = errors[slot];
+            }
+        }
+
+        // The writer may have lapped us while we read: drop the sample
+        if(published.get() - first > mask)
+            return false;
+
+        long count = to - first;
+
+        sample.sequence = to;
+        sample.epoch = epoch;
+        sample.error = error;
+        sample.epochMillis = nanos / 1e6 / count;
+        sample.rowsPerSecond = nanos > 0 ? trained * 1e9 / nanos : 0;
+        sample.dropped = first - from;
+
+        return true;
+    }
+
+    /**
+     * This class is a summary of the epochs between two samples.
+     */
+    public static class Sample {
+        // Sequence this sample ends at
+        public long sequence;
+
+        // Latest epoch
+        public long epoch;
+
+        // Training error after the latest epoch
+        public double error;
+
+        // Mean epoch duration in milliseconds
+        public double epochMillis;
+
+        // Rows trained per second
+        public double rowsPerSecond;
+
+        // Records overwritten before they were sampled
+        public long dropped;
+    }
+}
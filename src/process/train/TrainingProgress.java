@@ -0,0 +1,114 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.train;
+
+/**
+ * This class is where a training run stands after an epoch, for stopping
+ * policies to judge. The training loop updates one instance in place.
+ * @author Ron.Coleman
+ */
+public class TrainingProgress {
+    // Epochs done
+    long epoch = 0;
+
+    // Training error after the latest epoch
+    double trainingError = Double.NaN;
+
+    // Latest validation error or NaN if there's no validation
+    double validationError = Double.NaN;
+
+    // True if the latest epoch was validated
+    boolean validated = false;
+
+    // Time since training started in nanoseconds
+    long elapsedNanos = 0;
+
+    // Lowest validation error so far
+    double bestValidationError = Double.POSITIVE_INFINITY;
+
+    // Epoch of the lowest validation error
+    long bestEpoch = 0;
+
+    /**
+     * Gets the number of epochs done.
+     * @return Epochs
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Gets the training error after the latest epoch.
+     * @return Error
+     */
+    public double getTrainingError() {
+        return trainingError;
+    }
+
+    /**
+     * Gets the latest validation error.
+     * @return Error or NaN if nothing's been validated
+     */
+    public double getValidationError() {
+        return validationError;
+    }
+
+    /**
+     * Tests if the latest epoch was validated.
+     * @return True if the validation error is from this epoch
+     */
+    public boolean isValidated() {
+        return validated;
+    }
+
+    /**
+     * Gets the time since training started.
+     * @return Nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Gets the lowest validation error so far.
+     * @return Error or +infinity if nothing's been validated
+     */
+    public double getBestValidationError() {
+        return bestValidationError;
+    }
+
+    /**
+     * Gets the epoch with the lowest validation error.
+     * @return Epoch or zero if nothing's been validated
+     */
+    public long getBestEpoch() {
+        return bestEpoch;
+    }
+
+    @Override
+    public String toString() {
+        return "epoch " + epoch + " error " + trainingError + " validation " + validationError
+                + " best " + bestValidationError + " at " + bestEpoch
+                + " elapsed ms " + elapsedNanos / 1000000;
+    }
+}
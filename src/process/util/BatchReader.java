@@ -0,0 +1,59 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * This interface streams normalized rows, a batch at a time, in passes over
+ * data which needn't fit in memory.
+ * @author Ron.Coleman
+ */
+public interface BatchReader extends Closeable {
+    /**
+     * Gets the number of inputs in a row.
+     * @return Input size
+     */
+    public int getInputSize();
+
+    /**
+     * Gets the number of ideals in a row.
+     * @return Ideal size
+     */
+    public int getIdealSize();
+
+    /**
+     * Fills a batch with the next rows of this pass.
+     * @param batch Batch to fill, up to its capacity
+     * @return Rows read, zero once the pass is over
+     * @throws IOException
+     */
+    public int read(MiniBatch batch) throws IOException;
+
+    /**
+     * Starts another pass over the rows.
+     * @throws IOException
+     */
+    public void rewind() throws IOException;
+}
@@ -0,0 +1,312 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.util;
+
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * This class accumulates the min, max, mean, and variance of a column in one
+ * streaming pass, so the column never has to be in memory all at once.
+ * Partial results, say from chunks parsed in parallel, merge into one.
+ * @author Ron.Coleman
+ */
+public class ColumnStats {
+    // Number of values
+    private long count = 0;
+
+    // Running mean
+    private double mean = 0;
+
+    // Running sum of squared differences from the mean
+    private double m2 = 0;
+
+    // Smallest value
+    private double min = Double.POSITIVE_INFINITY;
+
+    // Largest value
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Constructor
+     */
+    public ColumnStats() {
+    }
+
+    /**
+     * Constructor for statistics saved earlier.
+     * @param count Number of values
+     * @param mean Mean
+     * @param m2 Sum of squared differences from the mean
+     * @param min Smallest value
+     * @param max Largest value
+     */
+    public ColumnStats(long count, double mean, double m2, double min, double max) {
+        this.count = count;
+        this.mean = mean;
+        this.m2 = m2;
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * Adds a value.
+     * @param x Value
+     */
+    public void add(double x) {
+        if(x < min)
+            min = x;
+
+        if(x > max)
+            max = x;
+
+        count++;
+
+        double delta = x - mean;
+
+        mean += delta / count;
+
+        m2 += delta * (x - mean);
+    }
+
+    /**
+     * Adds a run of values.
+     * @param xs Values
+     * @param from Index of the first value
+     * @param to Index just past the last value
+     */
+    public void add(double[] xs, int from, int to) {
+        for(int k=from; k < to; k++)
+            add(xs[k]);
+    }
+
+    /**
+     * Merges in statistics of other values.
+     * @param other Statistics to merge
+     */
+    public void merge(ColumnStats other) {
+        if(other.count == 0)
+            return;
+
+        if(count == 0) {
+            count = other.count;
+            mean = other.mean;
+            m2 = other.m2;
+            min = other.min;
+            max = other.max;
+
+            return;
+        }
+
+        long total = count + other.count;
+
+        double delta = other.mean - mean;
+
+        mean += delta * other.count / total;
+
+        m2 += other.m2 + delta * delta * ((double) count * other.count / total);
+
+        count = total;
+
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Gets the statistics of every decimal column of a CSV file by streaming
+     * it, chunk by chunk, on a pool. The rows are never all in memory.
+     * Assumes first row is the header row.
+     * @param path Path to the file.
+     * @param types Types of data in each column: D decimal, N nominal, - skip
+     * @param pool Pool to parse the chunks
+     * @param dictionaries Where to gather the nominals of each nominal
+     * column, in the order they're first seen in the file, or null not to
+     * @return Statistics by column, null where the column isn't decimal
+     * @throws Exception
+     */
+    public static ColumnStats[] scan(String path, char[] types, ForkJoinPool pool, MappedCsvLoader.Dictionary[] dictionaries) throws Exception {
+        MappedCsvLoader loader = new MappedCsvLoader(path, types);
+
+        try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+            FileChannel channel = file.getChannel();
+
+            long[] bounds = loader.split(channel, MappedCsvLoader.CHUNK_SIZE);
+
+            List<ForkJoinTask<Chunk>> tasks = new ArrayList<>(bounds.length - 1);
+
+            for(int k=0; k < bounds.length - 1; k++) {
+                final long start = bounds[k];
+                final long end = bounds[k+1];
+
+                // Each chunk's rows are dropped as soon as they're summarized
+                tasks.add(pool.submit(() -> {
+                    MappedCsvLoader.Block block = loader.parse(channel, start, end);
+
+                    return new Chunk(block, types);
+                }));
+            }
+
+            ColumnStats[] stats = new ColumnStats[types.length];
+
+            for(int col=0; col < types.length; col++) {
+                if(types[col] == Constant.TYPE_DECIMAL)
+                    stats[col] = new ColumnStats();
+            }
+
+            long lines = 0;
+
+            // Merge in file order so the result doesn't depend on scheduling
+            // and the nominals keep their first-seen order
+            for(ForkJoinTask<Chunk> task: tasks) {
+                Chunk chunk = task.get();
+
+                if(chunk.fault != null)
+                    throw new Exception(MappedCsvLoader.describeFault(chunk.fault, lines));
+
+                lines += chunk.lines;
+
+                for(int col=0; col < types.length; col++) {
+                    if(stats[col] != null)
+                        stats[col].merge(chunk.stats[col]);
+
+                    else if(dictionaries != null && dictionaries[col] != null) {
+                        MappedCsvLoader.Dictionary nominals = chunk.dictionaries[col];
+
+                        for(int code=0; code < nominals.size(); code++)
+                            dictionaries[col].code(nominals.key(code));
+                    }
+                }
+            }
+
+            return stats;
+        }
+    }
+
+    /**
+     * This class is what's left of a chunk once it's summarized.
+     */
+    private static class Chunk {
+        // Statistics by column
+        final ColumnStats[] stats;
+
+        // Nominals by column, in the order the chunk saw them
+        final MappedCsvLoader.Dictionary[] dictionaries;
+
+        // Lines in the chunk, blank ones included
+        final int lines;
+
+        // The block, kept only if it has a bad row
+        final MappedCsvLoader.Block fault;
+
+        Chunk(MappedCsvLoader.Block block, char[] types) throws Exception {
+            this.fault = block.faultLine >= 0 ? block : null;
+            this.stats = fault == null ? of(block, types) : null;
+            this.dictionaries = block.dictionaries;
+            this.lines = block.lines;
+        }
+    }
+
+    /**
+     * Gets the statistics of the decimal columns of a parsed block.
+     * @param block Block
+     * @param types Types of data in each column
+     * @return Statistics by column, null where the column isn't decimal
+     * @throws Exception
+     */
+    static ColumnStats[] of(MappedCsvLoader.Block block, char[] types) throws Exception {
+        if(block.faultLine >= 0)
+            throw new Exception(MappedCsvLoader.describeFault(block, 0));
+
+        ColumnStats[] stats = new ColumnStats[types.length];
+
+        for(int col=0; col < types.length; col++) {
+            if(types[col] == Constant.TYPE_DECIMAL) {
+                stats[col] = new ColumnStats();
+
+                stats[col].add(block.decimals[col], 0, block.rows);
+            }
+        }
+
+        return stats;
+    }
+
+    /**
+     * Gets the number of values.
+     * @return Count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the smallest value.
+     * @return Minimum or +infinity if there are no values
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * Gets the largest value.
+     * @return Maximum or -infinity if there are no values
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * Gets the mean.
+     * @return Mean
+     */
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * Gets the sum of squared differences from the mean.
+     * @return M2
+     */
+    public double getM2() {
+        return m2;
+    }
+
+    /**
+     * Gets the population variance.
+     * @return Variance
+     */
+    public double getVariance() {
+        return count == 0 ? 0 : m2 / count;
+    }
+
+    /**
+     * Gets the population standard deviation.
+     * @return Standard deviation
+     */
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+}
@@ -29,14 +29,18 @@ package process.util;
 public class Constant { 
     //// THESE DATA MAY NEED TO CHANGE FOR DIFFERENT DATA SETS ////
     
-    // Header column title in iris.csv we're classifying
-    public static String CLASSIFYING = "iris"; 
+    // Header column title in iris.csv we're classifying by default
+    public final static String CLASSIFYING = "iris";
     
     //// THESE DATA PROBABLY WONT CHANGE FOR DIFFERENT DATA SETS ////  
     
     // Amount of training data to use as a fraction
     public final static double TRAIN_FRACTION = 0.80;
     
+    // Fraction of the training rows held out to pick the best weights, when
+    // training validates
+    public final static double VALIDATION_FRACTION = 0.20;
+    
     // Training error threshold
     public final static double TRAIN_THRESHOLD = 0.01;
     
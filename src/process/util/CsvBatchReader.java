@@ -0,0 +1,276 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.util;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This class streams the rows of a CSV file a block of bytes at a time,
+ * parsing each block into columns the way MappedCsvLoader does. It makes
+ * one pass up front for the column statistics and the classes, streaming
+ * the file in parallel chunks, then a pass per epoch, holding no more than
+ * a block of the file at a time.
+ * @author Ron.Coleman
+ */
+public class CsvBatchReader extends NormalizedBatchReader {
+    // Bytes read at a time, e.g., -Dprocess.stream.block=1048576
+    public static int BLOCK_SIZE = Integer.getInteger("process.stream.block", 1024 * 1024);
+
+    // Parses the blocks
+    private final MappedCsvLoader loader;
+
+    // CSV file
+    private final RandomAccessFile file;
+
+    // File offset of the first data row
+    private final long dataStart;
+
+    // Bytes of the file, whole rows then the start of a partial one
+    private ByteBuffer buf = ByteBuffer.allocate(BLOCK_SIZE);
+
+    // Bytes of a partial row carried over to the next block
+    private int carry = 0;
+
+    // File offset of the next read
+    private long pos;
+
+    // End of the file reached
+    private boolean eof = false;
+
+    // Lines parsed this pass, blank ones included, to report bad rows by line
+    private long parsed = 0;
+
+    // Columns of the current block
+    private MappedCsvLoader.Block block = null;
+
+    // Subtype code of each block code of the class column
+    private int[] recode = null;
+
+    // Next row of the current block
+    private int next = 0;
+
+    /**
+     * Constructor
+     * @param path CSV path
+     * @param types Types of data in each column: D decimal, N nominal, - skip
+     * @param classifying Title of the class column
+     * @param normalization Normalization: range or zscore
+     * @param labels Label encoding: equilateral, oneofn, or binary
+     * @throws Exception
+     */
+    public CsvBatchReader(String path, char[] types, String classifying, String normalization, String labels) throws Exception {
+        loader = new MappedCsvLoader(path, types);
+
+        file = new RandomAccessFile(path, "r");
+
+        try {
+            dataStart = loader.readHeader(file.getChannel());
+
+            pos = dataStart;
+
+            survey(path, types, classifying, normalization, labels);
+        }
+        catch(Exception ex) {
+            file.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Makes a pass over the file, in parallel chunks, for the statistics of
+     * the decimal columns and the classes, in first-seen order.
+     * @param path CSV path
+     * @param types Types of data in each column
+     * @param classifying Title of the class column
+     * @param normalization Normalization: range or zscore
+     * @param labels Label encoding: equilateral, oneofn, or binary
+     * @throws Exception
+     */
+    private void survey(String path, char[] types, String classifying, String normalization, String labels) throws Exception {
+        MappedCsvLoader.Dictionary[] dictionaries = new MappedCsvLoader.Dictionary[types.length];
+
+        for(int col=0; col < types.length; col++) {
+            if(types[col] == Constant.TYPE_NOMINAL)
+                dictionaries[col] = new MappedCsvLoader.Dictionary();
+        }
+
+        ColumnStats[] stats = ColumnStats.scan(path, types, ForkJoinPool.commonPool(), dictionaries);
+
+        String[] titles = loader.getHeaders();
+
+        int col = Arrays.asList(titles).indexOf(classifying);
+
+        define(titles, types, stats, col < 0 ? null : names(dictionaries[col]), classifying, normalization, labels);
+    }
+
+    /**
+     * Gets the nominals of a dictionary.
+     * @param dictionary Dictionary
+     * @return Nominals by code or null if there's no dictionary
+     */
+    private static String[] names(MappedCsvLoader.Dictionary dictionary) {
+        if(dictionary == null)
+            return null;
+
+        String[] names = new String[dictionary.size()];
+
+        for(int code=0; code < names.length; code++)
+            names[code] = dictionary.value(code);
+
+        return names;
+    }
+
+    /**
+     * Parses the next block of rows.
+     * @return Columns of the block or null at the end of the file
+     * @throws IOException
+     */
+    private MappedCsvLoader.Block nextBlock() throws IOException {
+        FileChannel channel = file.getChannel();
+
+        while(true) {
+            buf.limit(buf.capacity());
+            buf.position(carry);
+
+            // Fill the buffer after the partial row carried over
+            while(!eof && buf.hasRemaining()) {
+                int n = channel.read(buf, pos);
+
+                if(n < 0)
+                    eof = true;
+                else
+                    pos += n;
+            }
+
+            int length = buf.position();
+
+            if(length == 0)
+                return null;
+
+            int cut = length;
+
+            if(!eof) {
+                // Cut after the last new line
+                while(cut > 0 && buf.get(cut - 1) != '\n')
+                    cut--;
+
+                // A row longer than the buffer: grow it and keep reading
+                if(cut == 0) {
+                    ByteBuffer bigger = ByteBuffer.allocate(2 * buf.capacity());
+
+                    buf.flip();
+                    bigger.put(buf);
+
+                    buf = bigger;
+                    carry = length;
+
+                    continue;
+                }
+            }
+
+            ByteBuffer rows = buf.duplicate();
+
+            rows.position(0);
+            rows.limit(cut);
+
+            MappedCsvLoader.Block parsedBlock = loader.parse(rows);
+
+            // Move the partial row to the front for the next block
+            carry = length - cut;
+
+            for(int k=0; k < carry; k++)
+                buf.put(k, buf.get(cut + k));
+
+            if(parsedBlock.faultLine >= 0)
+                throw new IOException(MappedCsvLoader.describeFault(parsedBlock, parsed));
+
+            parsed += parsedBlock.lines;
+
+            if(parsedBlock.rows > 0)
+                return parsedBlock;
+        }
+    }
+
+    @Override
+    public int read(MiniBatch batch) throws IOException {
+        double[] data = batch.getData();
+
+        int stride = batch.getStride();
+
+        int inputSize = inputColumns.length;
+
+        int n = 0;
+
+        while(n < batch.getCapacity()) {
+            if(block == null || next == block.rows) {
+                block = nextBlock();
+
+                next = 0;
+
+                if(block == null)
+                    break;
+
+                // Block codes follow the block's own first-seen order
+                try {
+                    recode = recode(names(block.dictionaries[classColumn]));
+                } catch (Exception ex) {
+                    throw new IOException(ex.getMessage() + " near line " + (parsed + 1));
+                }
+            }
+
+            int at = n * stride;
+
+            for(int k=0; k < inputSize; k++)
+                data[at + k] = normalizer.normalize(k, block.decimals[inputColumns[k]][next]);
+
+            labels.encode(recode[block.codes[classColumn][next]], data, at + inputSize);
+
+            next++;
+            n++;
+        }
+
+        batch.setRows(n);
+
+        return n;
+    }
+
+    @Override
+    public void rewind() {
+        pos = dataStart;
+        eof = false;
+        carry = 0;
+        parsed = 0;
+        block = null;
+        next = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.util;
+
+import java.util.HashMap;
+
+/**
+ * This class holds the data in typed columns: decimals as doubles, nominals
+ * as integer codes into a dictionary, and nothing for skipped columns.
+ * The arrays it hands out are its own so don't modify them.
+ * @author Ron.Coleman
+ */
+public class DataTable {
+    // Column titles
+    private final String[] titles;
+
+    // Column types, D, N, or -
+    private final char[] types;
+
+    // Number of rows
+    private final int rowCount;
+
+    // Decimal columns, null where the column isn't decimal
+    private final double[][] decimals;
+
+    // Nominal codes, null where the column isn't nominal
+    private final int[][] codes;
+
+    // Nominals by code, null where the column isn't nominal
+    private final String[][] dictionaries;
+
+    // Statistics of each decimal column, null until they're needed
+    private volatile ColumnStats[] stats = null;
+
+    // Column index by title
+    private final HashMap<String, Integer> columns = new HashMap<>();
+
+    /**
+     * Constructor
+     * @param titles Column titles
+     * @param types Column types
+     * @param rowCount Number of rows
+     * @param decimals Decimal columns, null where the column isn't decimal
+     * @param codes Nominal codes, null where the column isn't nominal
+     * @param dictionaries Nominals by code, null where the column isn't nominal
+     */
+    public DataTable(String[] titles, char[] types, int rowCount, double[][] decimals, int[][] codes, String[][] dictionaries) {
+        assert(titles.length == types.length);
+
+        this.titles = titles;
+        this.types = types;
+        this.rowCount = rowCount;
+        this.decimals = decimals;
+        this.codes = codes;
+        this.dictionaries = dictionaries;
+
+        for(int col=0; col < titles.length; col++)
+            columns.put(titles[col], col);
+    }
+
+    /**
+     * Constructor for data whose column statistics are already known.
+     * @param titles Column titles
+     * @param types Column types
+     * @param rowCount Number of rows
+     * @param decimals Decimal columns, null where the column isn't decimal
+     * @param codes Nominal codes, null where the column isn't nominal
+     * @param dictionaries Nominals by code, null where the column isn't nominal
+     * @param stats Statistics by column, null where the column isn't decimal
+     */
+    public DataTable(String[] titles, char[] types, int rowCount, double[][] decimals, int[][] codes, String[][] dictionaries,
+            ColumnStats[] stats) {
+        this(titles, types, rowCount, decimals, codes, dictionaries);
+
+        this.stats = stats;
+    }
+
+    /**
+     * Gets the number of rows.
+     * @return Row count
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Gets the number of columns, including skipped ones.
+     * @return Column count
+     */
+    public int getColumnCount() {
+        return titles.length;
+    }
+
+    /**
+     * Gets the index of a column.
+     * @param title Column title
+     * @return Column index or -1 if there's no such column
+     */
+    public int getColumn(String title) {
+        Integer col = columns.get(title);
+
+        return col == null ? -1 : col;
+    }
+
+    /**
+     * Gets the title of a column.
+     * @param col Column index
+     * @return Title
+     */
+    public String getTitle(int col) {
+        return titles[col];
+    }
+
+    /**
+     * Gets the type of a column.
+     * @param col Column index
+     * @return Type, D, N, or -
+     */
+    public char getType(int col) {
+        return types[col];
+    }
+
+    /**
+     * Gets a decimal column.
+     * @param col Column index
+     * @return Decimals, one per row
+     */
+    public double[] getDecimals(int col) {
+        assert(types[col] == Constant.TYPE_DECIMAL);
+
+        return decimals[col];
+    }
+
+    /**
+     * Gets a decimal column.
+     * @param title Column title
+     * @return Decimals, one per row
+     */
+    public double[] getDecimals(String title) {
+        return getDecimals(getColumn(title));
+    }
+
+    /**
+     * Gets the smallest decimal in a column.
+     * @param col Column index
+     * @return Minimum
+     */
+    public double getMin(int col) {
+        return getStats(col).getMin();
+    }
+
+    /**
+     * Gets the largest decimal in a column.
+     * @param col Column index
+     * @return Maximum
+     */
+    public double getMax(int col) {
+        return getStats(col).getMax();
+    }
+
+    /**
+     * Gets the statistics of a decimal column.
+     * @param col Column index
+     * @return Min, max, mean, and variance
+     */
+    public ColumnStats getStats(int col) {
+        assert(types[col] == Constant.TYPE_DECIMAL);
+
+        if(stats == null)
+            findStats();
+
+        return stats[col];
+    }
+
+    /**
+     * Finds the statistics of every decimal column in one scan of each column.
+     */
+    private synchronized void findStats() {
+        if(stats != null)
+            return;
+
+        ColumnStats[] found = new ColumnStats[types.length];
+
+        for(int col=0; col < types.length; col++) {
+            if(types[col] != Constant.TYPE_DECIMAL)
+                continue;
+
+            found[col] = new ColumnStats();
+
+            found[col].add(decimals[col], 0, rowCount);
+        }
+
+        stats = found;
+    }
+
+    /**
+     * Gets the codes of a nominal column.
+     * @param col Column index
+     * @return Codes, one per row
+     */
+    public int[] getCodes(int col) {
+        assert(types[col] == Constant.TYPE_NOMINAL);
+
+        return codes[col];
+    }
+
+    /**
+     * Gets the codes of a nominal column.
+     * @param title Column title
+     * @return Codes, one per row
+     */
+    public int[] getCodes(String title) {
+        return getCodes(getColumn(title));
+    }
+
+    /**
+     * Gets the distinct nominals of a column.
+     * @param col Column index
+     * @return Nominals indexed by code
+     */
+    public String[] getDictionary(int col) {
+        assert(types[col] == Constant.TYPE_NOMINAL);
+
+        return dictionaries[col];
+    }
+
+    /**
+     * Gets the distinct nominals of a column.
+     * @param title Column title
+     * @return Nominals indexed by code
+     */
+    public String[] getDictionary(String title) {
+        return getDictionary(getColumn(title));
+    }
+
+    /**
+     * Gets a nominal.
+     * @param col Column index
+     * @param row Row index
+     * @return Nominal
+     */
+    public String getNominal(int col, int row) {
+        return dictionaries[col][codes[col][row]];
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class is a loaded data set: the table, the shuffled row order, and
+ * the nominal column we're classifying along with its subtypes. It never
+ * changes once it's made, so any number of plugins on any number of threads
+ * can share one. The arrays it hands out are its own so don't modify them.
+ * @author Ron.Coleman
+ */
+public class Dataset {
+    // All the data in typed columns, in file order
+    private final DataTable table;
+
+    // Shuffled row order: the k-th shuffled row is table row order[k]
+    private final int[] order;
+
+    // Title of the column we're classifying
+    private final String classifying;
+
+    // Index of the column we're classifying
+    private final int classColumn;
+
+    // Stable codes of the subtypes of the column we're classifying
+    private final NominalDictionary dictionary;
+
+    // Nominal subtypes of the column we're classifying, in code order
+    private final List<String> subtypes;
+
+    // Subtype code of each row, in file order
+    private final int[] classCodes;
+
+    /**
+     * Constructor
+     * @param table Data in file order
+     * @param order Shuffled row order
+     * @param classifying Title of the nominal column to classify
+     */
+    public Dataset(DataTable table, int[] order, String classifying) {
+        assert(order.length == table.getRowCount());
+
+        this.table = table;
+        this.order = order;
+        this.classifying = classifying;
+        this.classColumn = table.getColumn(classifying);
+
+        if(classColumn < 0 || table.getType(classColumn) != Constant.TYPE_NOMINAL)
+            throw new IllegalArgumentException("no nominal column '" + classifying + "'");
+
+        this.dictionary = NominalDictionary.of(table, classColumn);
+        this.subtypes = Collections.unmodifiableList(Arrays.asList(dictionary.getNames()));
+        this.classCodes = dictionary.encode(table, classColumn);
+    }
+
+    /**
+     * Gets the data in file order.
+     * @return Table
+     */
+    public DataTable getTable() {
+        return table;
+    }
+
+    /**
+     * Gets the number of rows.
+     * @return Row count
+     */
+    public int getRowCount() {
+        return table.getRowCount();
+    }
+
+    /**
+     * Gets the shuffled row order.
+     * @return Table row for each shuffled row
+     */
+    public int[] getOrder() {
+        return order;
+    }
+
+    /**
+     * Gets the title of the column we're classifying.
+     * @return Title
+     */
+    public String getClassifying() {
+        return classifying;
+    }
+
+    /**
+     * Gets the index of the column we're classifying.
+     * @return Column
+     */
+    public int getClassColumn() {
+        return classColumn;
+    }
+
+    /**
+     * Gets the dictionary of the column we're classifying.
+     * @return Dictionary
+     */
+    public NominalDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Gets the subtype code of each row of the column we're classifying.
+     * @return Codes in file order
+     */
+    public int[] getClassCodes() {
+        return classCodes;
+    }
+
+    /**
+     * Gets the nominal subtypes of the column we're classifying.
+     * @return Subtypes in code order, e.g., setosa, versicolor, and virginica
+     */
+    public List<String> getSubtypes() {
+        return subtypes;
+    }
+}
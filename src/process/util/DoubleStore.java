@@ -0,0 +1,239 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class is a fixed-size run of doubles, on the heap or off it. Off-heap
+ * stores keep training data out of the garbage collector's way: they live in
+ * direct buffers or in a memory-mapped file the OS pages in and out.
+ * Concurrent reads are safe; writes are for filling the store up front.
+ * @author Ron.Coleman
+ */
+public abstract class DoubleStore {
+    // Storage kinds
+    public final static String HEAP = "heap";
+    public final static String DIRECT = "direct";
+    public final static String MAPPED = "mapped";
+
+    // Doubles in one off-heap segment: 2^27 doubles, 1 GB
+    private final static int SEGMENT_BITS = 27;
+
+    /**
+     * Allocates a store.
+     * @param kind Storage kind: heap, direct, or mapped
+     * @param size Number of doubles
+     * @param path File to map for a mapped store or null for a temp file
+     * @return Zeroed store
+     * @throws IOException
+     */
+    public static DoubleStore allocate(String kind, long size, String path) throws IOException {
+        switch(kind) {
+            case HEAP:
+                if(size > Integer.MAX_VALUE - 8)
+                    throw new IOException("too large for the heap: " + size);
+
+                return new Heap(new double[(int) size]);
+
+            case DIRECT:
+                return new Buffers(size, null);
+
+            case MAPPED:
+                File file = path == null ? File.createTempFile("iris", ".dat") : new File(path);
+
+                if(path == null)
+                    file.deleteOnExit();
+
+                return new Buffers(size, file);
+
+            default:
+                throw new IOException("bad storage '" + kind + "'");
+        }
+    }
+
+    /**
+     * Gets the number of doubles.
+     * @return Size
+     */
+    public abstract long size();
+
+    /**
+     * Gets a double.
+     * @param index Index
+     * @return Value
+     */
+    public abstract double get(long index);
+
+    /**
+     * Sets a double.
+     * @param index Index
+     * @param value Value
+     */
+    public abstract void set(long index, double value);
+
+    /**
+     * Copies doubles out of the store.
+     * @param index Index of the first double
+     * @param dst Destination
+     * @param offset Index in the destination
+     * @param length Number of doubles
+     */
+    public abstract void get(long index, double[] dst, int offset, int length);
+
+    /**
+     * Copies doubles into the store.
+     * @param index Index of the first double
+     * @param src Source
+     * @param offset Index in the source
+     * @param length Number of doubles
+     */
+    public abstract void put(long index, double[] src, int offset, int length);
+
+    /**
+     * This class stores the doubles in an array.
+     */
+    public static class Heap extends DoubleStore {
+        private final double[] data;
+
+        /**
+         * Constructor
+         * @param data Backing array
+         */
+        public Heap(double[] data) {
+            this.data = data;
+        }
+
+        /**
+         * Gets the backing array.
+         * @return Array
+         */
+        public double[] getData() {
+            return data;
+        }
+
+        @Override
+        public long size() {
+            return data.length;
+        }
+
+        @Override
+        public double get(long index) {
+            return data[(int) index];
+        }
+
+        @Override
+        public void set(long index, double value) {
+            data[(int) index] = value;
+        }
+
+        @Override
+        public void get(long index, double[] dst, int offset, int length) {
+            System.arraycopy(data, (int) index, dst, offset, length);
+        }
+
+        @Override
+        public void put(long index, double[] src, int offset, int length) {
+            System.arraycopy(src, offset, data, (int) index, length);
+        }
+    }
+
+    /**
+     * This class stores the doubles off the heap in segments, either direct
+     * buffers or regions of a memory-mapped file. Reads use absolute gets so
+     * threads can share the store without positioning buffers.
+     */
+    public static class Buffers extends DoubleStore {
+        private final DoubleBuffer[] segments;
+
+        private final long size;
+
+        /**
+         * Constructor
+         * @param size Number of doubles
+         * @param file File to map or null for direct buffers
+         * @throws IOException
+         */
+        public Buffers(long size, File file) throws IOException {
+            this.size = size;
+
+            int count = (int) ((size + (1L << SEGMENT_BITS) - 1) >>> SEGMENT_BITS);
+
+            segments = new DoubleBuffer[count];
+
+            RandomAccessFile raf = file == null ? null : new RandomAccessFile(file, "rw");
+
+            try {
+                for(int k=0; k < count; k++) {
+                    long first = (long) k << SEGMENT_BITS;
+
+                    int length = (int) Math.min(1L << SEGMENT_BITS, size - first);
+
+                    ByteBuffer buf = raf == null ?
+                            ByteBuffer.allocateDirect(8 * length) :
+                            raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 8 * first, 8L * length);
+
+                    segments[k] = buf.order(ByteOrder.nativeOrder()).asDoubleBuffer();
+                }
+            }
+            finally {
+                // The mappings stay good after the file's closed
+                if(raf != null)
+                    raf.close();
+            }
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public double get(long index) {
+            return segments[(int) (index >>> SEGMENT_BITS)].get((int) index & ((1 << SEGMENT_BITS) - 1));
+        }
+
+        @Override
+        public void set(long index, double value) {
+            segments[(int) (index >>> SEGMENT_BITS)].put((int) index & ((1 << SEGMENT_BITS) - 1), value);
+        }
+
+        @Override
+        public void get(long index, double[] dst, int offset, int length) {
+            for(int k=0; k < length; k++)
+                dst[offset + k] = get(index + k);
+        }
+
+        @Override
+        public void put(long index, double[] src, int offset, int length) {
+            for(int k=0; k < length; k++)
+                set(index + k, src[offset + k]);
+        }
+    }
+}
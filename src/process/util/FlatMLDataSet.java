@@ -0,0 +1,304 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import org.encog.ml.data.MLData;
+import org.encog.ml.data.MLDataPair;
+import org.encog.ml.data.MLDataSet;
+import org.encog.ml.data.basic.BasicMLDataPair;
+
+/**
+ * This class is a data set backed by one flat store of rows, each row being
+ * the inputs followed by the ideals. Views over a run of rows, or over rows
+ * picked by index, share the store, so splitting the data into training and
+ * test sets or into folds copies nothing.
+ * The store may be on or off the heap. Data sets are read-only as far as
+ * Encog is concerned.
+ * @author Ron.Coleman
+ */
+public class FlatMLDataSet implements MLDataSet {
+    // All the rows, inputs then ideals
+    private final DoubleStore store;
+
+    // Number of inputs in a row
+    private final int inputSize;
+
+    // Number of ideals in a row
+    private final int idealSize;
+
+    // Distance between rows
+    private final int stride;
+
+    // First row of this view
+    private final int start;
+
+    // Number of rows in this view
+    private final int count;
+
+    // Store row of each row in this view or null if they're a run from start
+    private final int[] index;
+
+    /**
+     * Constructor for rows on the heap.
+     * @param rows Number of rows
+     * @param inputSize Number of inputs in a row
+     * @param idealSize Number of ideals in a row
+     * @throws IllegalArgumentException if the rows won't fit in an array
+     * @see #allocate(String, int, int, int) for rows off the heap
+     */
+    public FlatMLDataSet(int rows, int inputSize, int idealSize) {
+        this(new DoubleStore.Heap(new double[heapSize(rows, inputSize + idealSize)]), inputSize, idealSize, 0, rows);
+    }
+
+    /**
+     * Constructor
+     * @param store Rows, inputs then ideals
+     * @param inputSize Number of inputs in a row
+     * @param idealSize Number of ideals in a row
+     * @param start First row of the view
+     * @param count Number of rows in the view
+     */
+    public FlatMLDataSet(DoubleStore store, int inputSize, int idealSize, int start, int count) {
+        this(store, inputSize, idealSize, start, count, null);
+    }
+
+    /**
+     * Constructor
+     * @param store Rows, inputs then ideals
+     * @param inputSize Number of inputs in a row
+     * @param idealSize Number of ideals in a row
+     * @param start First row of the view, or zero with an index
+     * @param count Number of rows in the view
+     * @param index Store row of each row in the view or null for a run
+     */
+    private FlatMLDataSet(DoubleStore store, int inputSize, int idealSize, int start, int count, int[] index) {
+        assert(index != null || (long) (start + count) * (inputSize + idealSize) <= store.size());
+
+        this.store = store;
+        this.inputSize = inputSize;
+        this.idealSize = idealSize;
+        this.stride = inputSize + idealSize;
+        this.start = start;
+        this.count = count;
+        this.index = index;
+    }
+
+    /**
+     * Gets the number of doubles in rows on the heap.
+     * @param rows Number of rows
+     * @param stride Doubles in a row
+     * @return Size
+     * @throws IllegalArgumentException if the rows won't fit in an array
+     */
+    private static int heapSize(int rows, int stride) {
+        long size = (long) rows * stride;
+
+        if(size > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("too large for the heap: " + size + " doubles, use direct or mapped storage");
+
+        return (int) size;
+    }
+
+    /**
+     * Allocates a data set.
+     * @param storage Storage kind: heap, direct, or mapped
+     * @param rows Number of rows
+     * @param inputSize Number of inputs in a row
+     * @param idealSize Number of ideals in a row
+     * @return Zeroed data set
+     * @throws IOException
+     * @see DoubleStore
+     */
+    public static FlatMLDataSet allocate(String storage, int rows, int inputSize, int idealSize) throws IOException {
+        DoubleStore store = DoubleStore.allocate(storage, (long) rows * (inputSize + idealSize), null);
+
+        return new FlatMLDataSet(store, inputSize, idealSize, 0, rows);
+    }
+
+    /**
+     * Gets a view of a run of rows.
+     * @param from First row, relative to this view
+     * @param rows Number of rows
+     * @return View sharing this data
+     */
+    public FlatMLDataSet view(int from, int rows) {
+        assert(from >= 0 && from + rows <= count);
+
+        if(index != null)
+            return new FlatMLDataSet(store, inputSize, idealSize, 0, rows, Arrays.copyOfRange(index, from, from + rows));
+
+        return new FlatMLDataSet(store, inputSize, idealSize, start + from, rows);
+    }
+
+    /**
+     * Gets a view of any rows, in any order, e.g., all but one fold.
+     * @param rows Rows, relative to this view
+     * @return View sharing this data
+     */
+    public FlatMLDataSet select(int[] rows) {
+        int[] selected = new int[rows.length];
+
+        for(int k=0; k < rows.length; k++) {
+            assert(rows[k] >= 0 && rows[k] < count);
+
+            selected[k] = index == null ? start + rows[k] : index[rows[k]];
+        }
+
+        return new FlatMLDataSet(store, inputSize, idealSize, 0, rows.length, selected);
+    }
+
+    /**
+     * Gets the backing store, which is shared by every view.
+     * @return Rows, inputs then ideals
+     */
+    public DoubleStore getStore() {
+        return store;
+    }
+
+    /**
+     * Gets where a row starts in the backing store.
+     * @param row Row, relative to this view
+     * @return Index of the row's first input
+     */
+    public long offset(int row) {
+        return (long) (index == null ? start + row : index[row]) * stride;
+    }
+
+    /**
+     * Gets the distance between rows in the backing store.
+     * @return Stride
+     */
+    public int getStride() {
+        return stride;
+    }
+
+    /**
+     * Copies the inputs of a row.
+     * @param row Row, relative to this view
+     * @param inputs Buffer for the inputs
+     */
+    public void getInput(int row, double[] inputs) {
+        store.get(offset(row), inputs, 0, inputSize);
+    }
+
+    /**
+     * Copies the ideals of a row.
+     * @param row Row, relative to this view
+     * @param ideals Buffer for the ideals
+     */
+    public void getIdeal(int row, double[] ideals) {
+        store.get(offset(row) + inputSize, ideals, 0, idealSize);
+    }
+
+    @Override
+    public int getIdealSize() {
+        return idealSize;
+    }
+
+    @Override
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    @Override
+    public boolean isSupervised() {
+        return idealSize > 0;
+    }
+
+    @Override
+    public long getRecordCount() {
+        return count;
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public void getRecord(long index, MLDataPair pair) {
+        long at = offset((int) index);
+
+        store.get(at, pair.getInputArray(), 0, inputSize);
+
+        if(idealSize > 0)
+            store.get(at + inputSize, pair.getIdealArray(), 0, idealSize);
+    }
+
+    @Override
+    public MLDataPair get(int index) {
+        MLDataPair pair = BasicMLDataPair.createPair(inputSize, idealSize);
+
+        getRecord(index, pair);
+
+        return pair;
+    }
+
+    @Override
+    public MLDataSet openAdditional() {
+        return new FlatMLDataSet(store, inputSize, idealSize, start, count, index);
+    }
+
+    @Override
+    public void add(MLData data) {
+        throw new UnsupportedOperationException("read-only data set");
+    }
+
+    @Override
+    public void add(MLData input, MLData ideal) {
+        throw new UnsupportedOperationException("read-only data set");
+    }
+
+    @Override
+    public void add(MLDataPair pair) {
+        throw new UnsupportedOperationException("read-only data set");
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public Iterator<MLDataPair> iterator() {
+        return new Iterator<MLDataPair>() {
+            private int row = 0;
+
+            @Override
+            public boolean hasNext() {
+                return row < count;
+            }
+
+            @Override
+            public MLDataPair next() {
+                if(row >= count)
+                    throw new NoSuchElementException();
+
+                return get(row++);
+            }
+        };
+    }
+}
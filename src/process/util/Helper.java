@@ -27,9 +27,10 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * This class implements convenience methods and data structures.
@@ -39,29 +40,25 @@ public class Helper {
     // Toggle this for helper-specific debuggins
     public static boolean DEBUGGING = true;
     
-    // All the data, decimal and nominal
-    public static HashMap<String, ArrayList> rawData = new HashMap<>();
+    // CSV loader: "text" reads line by line, "mapped" memory-maps the file,
+    // "parallel" memory-maps the file and parses it on all the cores, and
+    // "pipelined" reads the file on one thread while others parse it
+    public static String LOADER = System.getProperty("process.loader", "text");
     
-    // All the respective hearders
-    public static ArrayList<String> headers = new ArrayList<>();
-    
-    //
-    static HashMap<String,ArrayList<Integer>> oneofn = new HashMap<>();
-    
-    static public int rowCount = -1;
-    
-    // Universe of types
-    static char[] universe = null;
+    // Whether to keep a binary snapshot of the parsed data next to the CSV
+    public static boolean SNAPSHOT = Boolean.getBoolean("process.snapshot");
 
     /**
      * Loads the data from a CSV file.
      * Assumes first row is the header row.
      * @param path File path
      * @param types Types of data, D, N, or -
+     * @param classifying Title of the nominal column to classify
+     * @return Data set
      * @throws Exception 
      */
-    public static void loadCsv(String path, char[] types) throws Exception {
-        Helper.loadCsv(path, types, new Random(0));
+    public static Dataset loadCsv(String path, char[] types, String classifying) throws Exception {
+        return Helper.loadCsv(path, types, classifying, new Random(0));
     }
     
     /**
@@ -69,232 +66,294 @@ public class Helper {
      * Assumes first row is the header row.
      * @param path Path to the file.
      * @param types Types of data in each column: D decimal, N nominal, - skip
+     * @param classifying Title of the nominal column to classify
      * @param ran Random number generator to shuffle the rows
+     * @return Data set
      * @throws FileNotFoundException
      * @throws IOException
      * @throws Exception 
      */
-    public static void loadCsv(String path, char[] types, Random ran)
+    public static Dataset loadCsv(String path, char[] types, String classifying, Random ran)
             throws FileNotFoundException, IOException, Exception {
-        // Clear the old data
-        universe = types;
+        DataTable table = SNAPSHOT ? loadSnapshot(path, types) : parse(path, types);
+        
+        // Shuffle the row indexes rather than the rows, the order gets applied
+        // when the inputs and ideals are laid out
+        return new Dataset(table, shuffle(table.getRowCount(), ran), classifying);
+    }
+    
+    /**
+     * Parses the data from a CSV file with the configured loader.
+     * @param path Path to the file.
+     * @param types Types of data in each column: D decimal, N nominal, - skip
+     * @return Data in file order
+     * @throws Exception 
+     */
+    private static DataTable parse(String path, char[] types) throws Exception {
+        if(LOADER.equals("pipelined"))
+            return new PipelinedCsvLoader(path, types).loadTable();
+        
+        else if(LOADER.equals("mapped") || LOADER.equals("parallel"))
+            return loadMapped(path, types);
+        else
+            return loadText(path, types);
+    }
+    
+    /**
+     * Loads the data from the binary snapshot of a CSV file, provided the
+     * snapshot is still good, otherwise parses the CSV and snapshots it.
+     * @param path Path to the file.
+     * @param types Types of data in each column: D decimal, N nominal, - skip
+     * @return Data in file order
+     * @throws Exception 
+     */
+    private static DataTable loadSnapshot(String path, char[] types) throws Exception {
+        String snapshotPath = path + Snapshot.EXTENSION;
         
-        rawData.clear();
+        long checksum = Snapshot.checksum(path);
         
-        headers.clear();
+        DataTable table = Snapshot.read(snapshotPath, types, checksum);
         
-        oneofn.clear();
+        if (table == null) {
+            table = parse(path, types);
+            
+            Snapshot.write(snapshotPath, table, checksum);
+        }
+        else if (DEBUGGING)
+            System.out.println("loaded snapshot "+snapshotPath);
         
-        // Preload the data--note this works well enough only for small
-        // datasets.
-        ArrayList<String> lines = preload(path, ran);
-
+        return table;
+    }
+    
+    /**
+     * Loads the data from a CSV file a line at a time.
+     * Assumes first row is the header row.
+     * @param path Path to the file.
+     * @param types Types of data in each column: D decimal, N nominal, - skip
+     * @return Data in file order
+     * @throws FileNotFoundException
+     * @throws IOException
+     * @throws Exception 
+     */
+    private static DataTable loadText(String path, char[] types)
+            throws FileNotFoundException, IOException, Exception {
+        String[] titles = null;
+        
+        double[][] decimals = new double[types.length][];
+        
+        int[][] codes = new int[types.length][];
+        
+        // Nominal codes in the order the nominals are first seen
+        ArrayList<LinkedHashMap<String, Integer>> dictionaries = new ArrayList<>();
+        
+        int count = 0;
+        
+        int capacity = 1024;
 
-        // Process each row in turn, assuming the first row is the header.
-        for(int row=0; row < lines.size(); row++) {
-            if(DEBUGGING)
-                System.out.println(row+": "+lines.get(row));
+        try (BufferedReader br = new BufferedReader(new FileReader(path))) {
+            // Process each row in turn, assuming the first row is the header.
+            int row = 0;
             
-            String[] fields = lines.get(row).split(",");
+            for (String line = br.readLine(); line != null; line = br.readLine(), row++) {
+                if(DEBUGGING)
+                    System.out.println(row+": "+line);
 
-            // Handle empty rows
-            if (fields.length == 0) {
-                continue;
-            }
+                String[] fields = line.split(",");
 
-            // Validate fields and ontology length match
-            if (fields.length != types.length) {
-                throw new Exception("fields mismatch row " + row);
-            }
+                // Skip blank rows, as the other loaders do
+                if (row > 0 && line.isEmpty()) {
+                    continue;
+                }
 
-            // Assumes row zero is a header row
-            if (row == 0) {
-                for (int col = 0; col < fields.length; col++) {
-                    String title = fields[col];
+                // Validate fields and ontology length match
+                if (fields.length != types.length) {
+                    throw new Exception("fields mismatch line " + (row + 1));
+                }
+
+                // Assumes row zero is a header row
+                if (row == 0) {
+                    titles = fields;
 
-                    headers.add(title);
+                    for (int col = 0; col < fields.length; col++) {
+                        if (types[col] == Constant.TYPE_DECIMAL)
+                            decimals[col] = new double[capacity];
 
-                    rawData.put(title, new ArrayList<>());
+                        else if (types[col] == Constant.TYPE_NOMINAL)
+                            codes[col] = new int[capacity];
+
+                        dictionaries.add(types[col] == Constant.TYPE_NOMINAL ? new LinkedHashMap<>() : null);
+                    }
+                    
+                    continue;
                 }
-            } else {
+                
+                // Make room for the row
+                if (count == capacity) {
+                    capacity *= 2;
+                    
+                    for (int col = 0; col < types.length; col++) {
+                        if (decimals[col] != null)
+                            decimals[col] = Arrays.copyOf(decimals[col], capacity);
+
+                        if (codes[col] != null)
+                            codes[col] = Arrays.copyOf(codes[col], capacity);
+                    }
+                }
+                
                 // Go through each field and convert it according to its type
                 for (int col = 0; col < fields.length; col++) {
-                    String title = headers.get(col);
-                    
                     switch (types[col]) {
                         // This column is decimal data
                         case Constant.TYPE_DECIMAL:                            
-                            double d = Double.parseDouble(fields[col]);
-
-                            ArrayList colDoubles = rawData.get(title);
-
-                            colDoubles.add(d);
+                            try {
+                                decimals[col][count] = Double.parseDouble(fields[col]);
+                            } catch (NumberFormatException ex) {
+                                throw new Exception("bad decimal '" + fields[col] + "' line " + (row + 1));
+                            }
                             break;
-                            
+
                         // This column is nominal data
                         case Constant.TYPE_NOMINAL:
-                            String s = fields[col];
+                            LinkedHashMap<String, Integer> dictionary = dictionaries.get(col);
+
+                            Integer code = dictionary.get(fields[col]);
 
-                            ArrayList colNominals = rawData.get(title);
+                            if (code == null) {
+                                code = dictionary.size();
 
-                            colNominals.add(s);
+                                dictionary.put(fields[col], code);
+                            }
+
+                            codes[col][count] = code;
                             break;
-                            
+
                         // Skip this column
                         case Constant.TYPE_SKIP:
                             break;
-                            
+
                         default:
-                            throw new Exception("bad type '"+ types[col] +"' row "+row);
+                            throw new Exception("bad type '"+ types[col] +"' line "+(row + 1));
                     }
                 }
+                
+                count++;
             }
-
         }
-    }
-    
-    /**
-     * Gets the subtypes for
-     * @return Subtypes in the nominal ontology
-     */
-    public static ArrayList<String> getNominalSubtypes() {
-        if(oneofn.isEmpty())
-            oneofn = encodeOneOfN();
         
-        Object[] keys = oneofn.keySet().toArray();
-
-        ArrayList<String> subtypes = new ArrayList<>();
-        for(Object key: keys) {
-            subtypes.add((String)key);
+        if (titles == null)
+            throw new Exception("missing header row");
+        
+        String[][] nominals = new String[types.length][];
+        
+        for (int col = 0; col < types.length; col++) {
+            if (decimals[col] != null)
+                decimals[col] = Arrays.copyOf(decimals[col], count);
+            
+            if (codes[col] != null) {
+                codes[col] = Arrays.copyOf(codes[col], count);
+                
+                nominals[col] = dictionaries.get(col).keySet().toArray(new String[0]);
+            }
         }
         
-        return subtypes;
+        return new DataTable(titles, types, count, decimals, codes, nominals);
     }
     
     /**
-     * Gets the number of subtypes for the nominal.
-     * @return Number of subtypes
+     * Loads the data from a memory-mapped CSV file, in parallel if the
+     * loader is "parallel".
+     * Assumes first row is the header row.
+     * @param path Path to the file.
+     * @param types Types of data in each column: D decimal, N nominal, - skip
+     * @return Data in file order
+     * @throws Exception 
      */
-    public static int getNominalSubtypeCount() {
-        if(!oneofn.isEmpty())
-            oneofn = encodeOneOfN();
+    private static DataTable loadMapped(String path, char[] types) throws Exception {
+        MappedCsvLoader loader = new MappedCsvLoader(path, types);
         
-        return getNominalSubtypes().size();
-    }
-    
-    /**
-     * Gets an encoded hash map of nominal types and their 1-of-n values as 1 or -1.
-     * Assumes there's exactly one nominal type.
-     * @return Hash map of nominal and its 1-of-n encoding
-     */
-    public static HashMap<String, ArrayList<Integer>> encodeOneOfN() {
-        if(!oneofn.isEmpty())
-            return oneofn;
+        MappedCsvLoader.Block block = LOADER.equals("parallel") ?
+                loader.load(ForkJoinPool.commonPool()) : loader.load();
         
-        // Locate the nominal, if there is one.
-        int index = -1;
-
-        for (int k = 0; k < universe.length; k++) {
-            if (universe[k] == Constant.TYPE_NOMINAL) {
-                index = k;
-                break;
-            }
-        }
-
-        if(index == -1)
-            return null;
-
-        // This is the hash map we return
-        oneofn = new HashMap<>();
-
-        // Use this title to retrieve the nominal column
-        String title = Helper.headers.get(index);
-
-        ArrayList<String> nominals = Helper.rawData.get(title);
-
-        // Count the number of unique nominal values
-        HashMap<String, Integer> counter = new HashMap<>();
-
-        for (String nominal : nominals) {
-            int count = counter.getOrDefault(nominal, 0);
-
-            counter.put(nominal, count + 1);
-        }
-
-        int numberNominals = counter.size();
+        String[] titles = loader.getHeaders();
+        
+        String[][] nominals = new String[types.length][];
         
-        // Encode each nominal
-        for(int j = 0; j < numberNominals; j++) {
-            ArrayList<Integer> variable = new ArrayList<>();
+        for (int col = 0; col < titles.length; col++) {
+            if (types[col] == Constant.TYPE_NOMINAL) {
+                MappedCsvLoader.Dictionary dictionary = block.dictionaries[col];
 
-            for (int k = 0; k < numberNominals; k++) {
-                if (k == j) {
-                    variable.add(1);
-                } else {
-                    variable.add(-1);
-                }
+                nominals[col] = new String[dictionary.size()];
+
+                for (int code = 0; code < dictionary.size(); code++)
+                    nominals[col][code] = dictionary.value(code);
             }
-            
-            // Store the encoding in the hash map
-            Object[] keys = counter.keySet().toArray();
-            
-            oneofn.put((String) keys[j], variable);
         }
         
-        return oneofn;
+        return new DataTable(titles, types, block.rows, block.decimals, block.codes, nominals);
     }
     
     /**
-     * Pre-loads the data into memory buffer and if necessary, randomizes it.
-     * @param path Path to the file
-     * @param randomized Whether or not to randomize the buffer
-     * @return Buffer of lines
-     * @throws FileNotFoundException
-     * @throws IOException 
+     * Gets a row order shuffled exactly as Collections.shuffle shuffles a
+     * list of that many rows with the same random number generator.
+     * @param n Number of rows
+     * @param ran Random number generator
+     * @return Row indexes in shuffled order
      */
-    private static ArrayList<String> preload(String path, Random ran) throws FileNotFoundException, IOException {
-        // All line are store here
-        ArrayList<String> lines = new ArrayList<>();
+    static int[] shuffle(int n, Random ran) {
+        int[] order = new int[n];
         
-        // Open the file
-        BufferedReader br = new BufferedReader(new FileReader(path));
+        for (int k = 0; k < n; k++)
+            order[k] = k;
         
-        int row = 0;
-        
-        String firstLine = null;
-        
-        do {
-            // Gets a line and adds it to the buffer of lines
-            String line = br.readLine();
-            
-            // If we get to the end, return the buffer
-            if(line == null) {
-                rowCount = lines.size();
-                
-                Collections.shuffle(lines, ran);
-                
-                lines.add(0, firstLine);
-              
-                return lines;
-            }
+        for (int k = n; k > 1; k--) {
+            int j = ran.nextInt(k);
             
-            if(row == 0)
-                firstLine = line;
-            else
-                lines.add(line);
-            
-            row++;
-        } while(true);
+            int tmp = order[k - 1];
+            order[k - 1] = order[j];
+            order[j] = tmp;
+        }
+        
+        return order;
+    }
+    
+    /**
+     * Gets the subtypes of a nominal column, in code order.
+     * @param table Data
+     * @param col Nominal column
+     * @return Subtypes in the nominal ontology
+     */
+    public static ArrayList<String> getNominalSubtypes(DataTable table, int col) {
+        return new ArrayList<>(Arrays.asList(NominalDictionary.of(table, col).getNames()));
     }
     
     /**
-     * Gets the title for a column.
-     * @param col
-     * @return Title
+     * Gets the number of subtypes of a nominal column.
+     * @param table Data
+     * @param col Nominal column
+     * @return Number of subtypes
      */
-    public static String getTitle(int col) {
-        assert(col >= 0 && col < headers.size());
+    public static int getNominalSubtypeCount(DataTable table, int col) {
+        return table.getDictionary(col).length;
+    }
+    
+    /**
+     * Gets the nominal types of a column, in code order, and their 1-of-n
+     * values as 1 or -1.
+     * @param table Data
+     * @param col Nominal column
+     * @return Map of nominal to its 1-of-n encoding
+     * @see NominalDictionary#getOneOfN()
+     */
+    public static LinkedHashMap<String, double[]> encodeOneOfN(DataTable table, int col) {
+        NominalDictionary dictionary = NominalDictionary.of(table, col);
+        
+        int n = dictionary.size();
         
-        return headers.get(col);
+        LinkedHashMap<String, double[]> oneofn = new LinkedHashMap<>();
+        
+        for (int code = 0; code < n; code++)
+            oneofn.put(dictionary.getName(code), Arrays.copyOfRange(dictionary.getOneOfN(), code * n, (code + 1) * n));
+        
+        return oneofn;
     }
 }
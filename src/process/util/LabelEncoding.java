@@ -0,0 +1,210 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.util;
+
+import org.encog.mathutil.Equilateral;
+
+/**
+ * This class encodes class codes as network ideals and decodes network
+ * outputs back into class codes. Every class's encoding is computed once
+ * into a flat table, so laying out the ideals is a copy per row.
+ * <ul>
+ * <li>equilateral: n-1 values per class, the vertexes of a simplex over
+ * [-1, 1], so every class is the same distance from every other
+ * <li>oneofn: n values per class, 1 for the class and -1 for the rest
+ * <li>binary: the class code in ceil(log2 n) bits as 1 or -1, which keeps
+ * wide label spaces narrow
+ * </ul>
+ * @author Ron.Coleman
+ */
+public class LabelEncoding {
+    // Encodings
+    public final static String EQUILATERAL = "equilateral";
+    public final static String ONE_OF_N = "oneofn";
+    public final static String BINARY = "binary";
+
+    // Encoding
+    private final String kind;
+
+    // Number of classes
+    private final int classes;
+
+    // Values per class
+    private final int width;
+
+    // Encodings, width per class
+    private final double[] table;
+
+    /**
+     * Constructor
+     * @param kind Encoding: equilateral, oneofn, or binary
+     * @param classes Number of classes
+     */
+    public LabelEncoding(String kind, int classes) {
+        this.kind = kind;
+        this.classes = classes;
+
+        switch(kind) {
+            case EQUILATERAL:
+                if(classes < Equilateral.MIN_EQ)
+                    throw new IllegalArgumentException("equilateral needs " + Equilateral.MIN_EQ + " classes not " + classes);
+
+                width = classes - 1;
+                table = new double[classes * width];
+
+                Equilateral eq = new Equilateral(classes, -1, 1);
+
+                for(int code=0; code < classes; code++)
+                    System.arraycopy(eq.encode(code), 0, table, code * width, width);
+
+                break;
+
+            case ONE_OF_N:
+                width = classes;
+                table = new double[classes * width];
+
+                for(int code=0; code < classes; code++)
+                    for(int k=0; k < width; k++)
+                        table[code * width + k] = k == code ? 1 : -1;
+
+                break;
+
+            case BINARY:
+                width = Math.max(1, 32 - Integer.numberOfLeadingZeros(classes - 1));
+                table = new double[classes * width];
+
+                for(int code=0; code < classes; code++)
+                    for(int bit=0; bit < width; bit++)
+                        table[code * width + bit] = (code >>> bit & 1) != 0 ? 1 : -1;
+
+                break;
+
+            default:
+                throw new IllegalArgumentException("bad label encoding '" + kind + "'");
+        }
+    }
+
+    /**
+     * Copies a class's encoding.
+     * @param code Class code
+     * @param dst Destination
+     * @param offset Index in the destination
+     */
+    public void encode(int code, double[] dst, int offset) {
+        System.arraycopy(table, code * width, dst, offset, width);
+    }
+
+    /**
+     * Decodes network outputs into the class they're closest to.
+     * @param outputs Outputs, width of them
+     * @return Class code
+     */
+    public int decode(double[] outputs) {
+        switch(kind) {
+            case ONE_OF_N:
+                // Nearest one-of-n encoding is the biggest output
+                int best = 0;
+
+                for(int k=1; k < width; k++) {
+                    if(outputs[k] > outputs[best])
+                        best = k;
+                }
+
+                return best;
+
+            case BINARY:
+                int code = 0;
+
+                for(int bit=0; bit < width; bit++) {
+                    if(outputs[bit] > 0)
+                        code |= 1 << bit;
+                }
+
+                // Bits past the last class fall back to the nearest class
+                return code < classes ? code : nearest(outputs);
+
+            default:
+                return nearest(outputs);
+        }
+    }
+
+    /**
+     * Gets the class whose encoding is nearest some outputs.
+     * @param outputs Outputs
+     * @return Class code
+     */
+    private int nearest(double[] outputs) {
+        int best = 0;
+
+        double min = Double.POSITIVE_INFINITY;
+
+        for(int code=0, at=0; code < classes; code++) {
+            double dist = 0;
+
+            for(int k=0; k < width; k++, at++) {
+                double delta = outputs[k] - table[at];
+
+                dist += delta * delta;
+            }
+
+            if(dist < min) {
+                min = dist;
+                best = code;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Gets the encoding.
+     * @return Kind: equilateral, oneofn, or binary
+     */
+    public String getKind() {
+        return kind;
+    }
+
+    /**
+     * Gets the number of classes.
+     * @return Classes
+     */
+    public int getClasses() {
+        return classes;
+    }
+
+    /**
+     * Gets the number of values per class, i.e., ideals per row.
+     * @return Width
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the encodings.
+     * @return Table, width per class, which is this encoding's own so don't modify it
+     */
+    public double[] getTable() {
+        return table;
+    }
+}
@@ -0,0 +1,697 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.util;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * This class loads a CSV file by memory-mapping it and parsing the fields
+ * straight out of the byte buffer into primitive columns. No line or field
+ * strings are made except for the header and the distinct nominals.
+ * @author Ron.Coleman
+ */
+public class MappedCsvLoader {
+    // Largest slice of the file we map and parse at a time
+    public static int CHUNK_SIZE = 64 * 1024 * 1024;
+
+    // Smallest slice of the file worth handing to another thread
+    public static int MIN_CHUNK_SIZE = 1024 * 1024;
+
+    // Bytes we read at a time looking for the end of a line
+    private final static int PROBE_SIZE = 8 * 1024;
+
+    // Most digits we parse by hand and still get exactly what parseDouble gets
+    private final static int MAX_DIGITS = 15;
+
+    // Powers of ten which are exact as doubles
+    private final static double[] POWERS = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // File path
+    protected final String path;
+
+    // Types of data in each column: D decimal, N nominal, - skip
+    protected final char[] types;
+
+    // Column titles from the header row
+    private String[] headers = null;
+
+    /**
+     * Constructor
+     * @param path Path to the file.
+     * @param types Types of data in each column: D decimal, N nominal, - skip
+     * @throws Exception
+     */
+    public MappedCsvLoader(String path, char[] types) throws Exception {
+        for(int col=0; col < types.length; col++) {
+            char type = types[col];
+
+            if(type != Constant.TYPE_DECIMAL && type != Constant.TYPE_NOMINAL && type != Constant.TYPE_SKIP)
+                throw new Exception("bad type '"+ type +"' col "+col);
+        }
+
+        this.path = path;
+        this.types = types;
+    }
+
+    /**
+     * Loads the data rows in file order, i.e., unshuffled.
+     * Assumes first row is the header row.
+     * @return Columns of all the rows
+     * @throws FileNotFoundException
+     * @throws IOException
+     * @throws Exception
+     */
+    public Block load() throws FileNotFoundException, IOException, Exception {
+        try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+            FileChannel channel = file.getChannel();
+
+            long[] bounds = split(channel, CHUNK_SIZE);
+
+            Block[] blocks = new Block[bounds.length - 1];
+
+            for(int k=0; k < blocks.length; k++)
+                blocks[k] = parse(channel, bounds[k], bounds[k+1]);
+
+            return merge(blocks);
+        }
+    }
+
+    /**
+     * Loads the data rows in file order, i.e., unshuffled, parsing the chunks
+     * in parallel. The rows, codes, and errors are the same as load() gives.
+     * Assumes first row is the header row.
+     * @param pool Pool to parse the chunks
+     * @return Columns of all the rows
+     * @throws FileNotFoundException
+     * @throws IOException
+     * @throws Exception
+     */
+    public Block load(ForkJoinPool pool) throws FileNotFoundException, IOException, Exception {
+        try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+            FileChannel channel = file.getChannel();
+
+            // Cut the file so every worker gets a few chunks to balance the load
+            long share = channel.size() / (4L * pool.getParallelism()) + 1;
+
+            int chunkSize = (int) Math.max(MIN_CHUNK_SIZE, Math.min(CHUNK_SIZE, share));
+
+            long[] bounds = split(channel, chunkSize);
+
+            List<ForkJoinTask<Block>> tasks = new ArrayList<>(bounds.length - 1);
+
+            for(int k=0; k < bounds.length - 1; k++) {
+                final long start = bounds[k];
+                final long end = bounds[k+1];
+
+                tasks.add(pool.submit(() -> parse(channel, start, end)));
+            }
+
+            // Gather the chunks back in file order
+            Block[] blocks = new Block[tasks.size()];
+
+            for(int k=0; k < blocks.length; k++)
+                blocks[k] = tasks.get(k).get();
+
+            return merge(blocks);
+        }
+    }
+
+    /**
+     * Gets the column titles.
+     * @return Titles or null if nothing has been loaded
+     */
+    public String[] getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Reads the header row and divides the rest of the file into chunks.
+     * @param channel File channel
+     * @param chunkSize Approximate size of a chunk in bytes
+     * @return File offsets of the chunks which always fall on line boundaries
+     * @throws IOException
+     * @throws Exception
+     */
+    protected long[] split(FileChannel channel, int chunkSize) throws IOException, Exception {
+        long size = channel.size();
+
+        long dataStart = readHeader(channel);
+
+        // Cut the data rows into chunks we can map
+        long[] bounds = new long[16];
+
+        int count = 0;
+
+        bounds[count++] = dataStart;
+
+        for(long start=dataStart; start < size; ) {
+            long end = start + chunkSize;
+
+            end = end >= size ? size : nextLine(channel, end);
+
+            if(count == bounds.length)
+                bounds = Arrays.copyOf(bounds, count * 2);
+
+            bounds[count++] = end;
+
+            start = end;
+        }
+
+        return Arrays.copyOf(bounds, count);
+    }
+
+    /**
+     * Reads the header row.
+     * @param channel File channel
+     * @return File offset of the first data row
+     * @throws IOException
+     * @throws Exception
+     */
+    protected long readHeader(FileChannel channel) throws IOException, Exception {
+        long dataStart = nextLine(channel, 0);
+
+        if(dataStart == 0)
+            throw new Exception("missing header row");
+
+        // Decode the header which is the only line we turn into a string
+        ByteBuffer header = ByteBuffer.allocate((int) dataStart);
+
+        channel.read(header, 0);
+
+        String firstLine = new String(header.array(), 0, (int) dataStart, StandardCharsets.UTF_8).trim();
+
+        headers = firstLine.split(",");
+
+        if(headers.length != types.length)
+            throw new Exception("fields mismatch line 1");
+
+        return dataStart;
+    }
+
+    /**
+     * Finds the start of the next line.
+     * @param channel File channel
+     * @param from File offset to start looking
+     * @return File offset just past the next new line or the file size
+     * @throws IOException
+     */
+    protected long nextLine(FileChannel channel, long from) throws IOException {
+        ByteBuffer probe = ByteBuffer.allocate(PROBE_SIZE);
+
+        long pos = from;
+
+        do {
+            probe.clear();
+
+            int n = channel.read(probe, pos);
+
+            if(n <= 0)
+                return channel.size();
+
+            for(int k=0; k < n; k++) {
+                if(probe.get(k) == '\n')
+                    return pos + k + 1;
+            }
+
+            pos += n;
+        } while(true);
+    }
+
+    /**
+     * Parses a chunk of the file into columns.
+     * @param channel File channel
+     * @param start File offset of the first row
+     * @param end File offset just past the last row
+     * @return Columns of the chunk
+     * @throws IOException
+     */
+    protected Block parse(FileChannel channel, long start, long end) throws IOException {
+        MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+
+        return parse(buf);
+    }
+
+    /**
+     * Parses whole rows in a buffer into columns.
+     * @param buf Rows from index zero up to the limit
+     * @return Columns of the rows
+     */
+    protected Block parse(ByteBuffer buf) {
+        int limit = buf.limit();
+
+        // Guess at the row count from the header width, the block will grow if need be
+        Block block = new Block(types, Math.max(16, limit / (4 * types.length)));
+
+        int pos = 0;
+
+        while(pos < limit) {
+            int row = block.rows;
+
+            block.ensure(row + 1);
+
+            // Go through each field and convert it according to its type
+            int col = 0;
+
+            int fieldStart = pos;
+
+            do {
+                int p = fieldStart;
+
+                byte c = 0;
+
+                while(p < limit && (c = buf.get(p)) != ',' && c != '\n')
+                    p++;
+
+                boolean lastField = p == limit || c == '\n';
+
+                int fieldEnd = p;
+
+                if(lastField && fieldEnd > fieldStart && buf.get(fieldEnd-1) == '\r')
+                    fieldEnd--;
+
+                pos = p + 1;
+
+                // Skip blank rows, as the text loader does
+                if(lastField && col == 0 && fieldEnd == fieldStart) {
+                    col = -1;
+                    break;
+                }
+
+                // Validate fields and ontology length match
+                if(col >= types.length || (lastField && col != types.length - 1)) {
+                    block.fault(block.lines, "fields mismatch");
+                    return block;
+                }
+
+                switch(types[col]) {
+                    // This column is decimal data
+                    case Constant.TYPE_DECIMAL:
+                        try {
+                            block.decimals[col][row] = parseDecimal(buf, fieldStart, fieldEnd);
+                        } catch(NumberFormatException ex) {
+                            block.fault(block.lines, "bad decimal '" + decode(buf, fieldStart, fieldEnd) + "'");
+                            return block;
+                        }
+                        break;
+
+                    // This column is nominal data
+                    case Constant.TYPE_NOMINAL:
+                        block.codes[col][row] = block.dictionaries[col].code(buf, fieldStart, fieldEnd);
+                        break;
+
+                    // Skip this column
+                    case Constant.TYPE_SKIP:
+                        break;
+                }
+
+                if(lastField)
+                    break;
+
+                col++;
+
+                fieldStart = pos;
+            } while(true);
+
+            block.lines++;
+
+            if(col < 0)
+                continue;
+
+            block.rows++;
+        }
+
+        return block;
+    }
+
+    /**
+     * Merges the chunks, in order, into one block.
+     * @param blocks Blocks in file order
+     * @return Block with all the rows
+     * @throws Exception
+     */
+    protected Block merge(Block[] blocks) throws Exception {
+        int total = 0;
+
+        long lines = 0;
+
+        for(Block block: blocks) {
+            if(block.faultLine >= 0)
+                throw new Exception(describeFault(block, lines));
+
+            total += block.rows;
+            lines += block.lines;
+        }
+
+        Block merged = new Block(types, total);
+
+        for(Block block: blocks) {
+            int row = merged.rows;
+
+            for(int col=0; col < types.length; col++) {
+                if(types[col] == Constant.TYPE_DECIMAL)
+                    System.arraycopy(block.decimals[col], 0, merged.decimals[col], row, block.rows);
+
+                else if(types[col] == Constant.TYPE_NOMINAL) {
+                    // Recode the chunk nominals so codes follow first-seen file order
+                    Dictionary local = block.dictionaries[col];
+
+                    int[] recode = new int[local.size()];
+
+                    for(int code=0; code < recode.length; code++)
+                        recode[code] = merged.dictionaries[col].code(local.key(code));
+
+                    int[] codes = block.codes[col];
+
+                    int[] mergedCodes = merged.codes[col];
+
+                    for(int k=0; k < block.rows; k++)
+                        mergedCodes[row + k] = recode[codes[k]];
+                }
+            }
+
+            merged.rows += block.rows;
+        }
+
+        return merged;
+    }
+
+    /**
+     * Describes what's wrong with a block and where in the file.
+     * @param block Block with a bad row
+     * @param before Lines in the file between the header and the block
+     * @return Fault and line number, the header being line one
+     */
+    static String describeFault(Block block, long before) {
+        return block.fault + " line " + (before + block.faultLine + 2);
+    }
+
+    /**
+     * Parses a decimal from bytes. Plain decimals are done by hand and give
+     * exactly what Double.parseDouble gives; anything else is left to it.
+     * @param buf Buffer
+     * @param start Index of the first byte
+     * @param end Index just past the last byte
+     * @return Decimal value
+     * @throws NumberFormatException
+     */
+    protected static double parseDecimal(ByteBuffer buf, int start, int end) throws NumberFormatException {
+        int p = start;
+
+        boolean negative = false;
+
+        if(p < end && (buf.get(p) == '-' || buf.get(p) == '+')) {
+            negative = buf.get(p) == '-';
+            p++;
+        }
+
+        long mantissa = 0;
+
+        int digits = 0;
+
+        int scale = -1;
+
+        for(; p < end; p++) {
+            byte c = buf.get(p);
+
+            if(c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+
+                digits++;
+
+                if(scale >= 0)
+                    scale++;
+            }
+            else if(c == '.' && scale < 0)
+                scale = 0;
+
+            else
+                break;
+        }
+
+        // Leave exponents, blanks, NaN, etc. and long mantissas to the JDK
+        if(p != end || digits == 0 || digits > MAX_DIGITS)
+            return Double.parseDouble(decode(buf, start, end));
+
+        // Both operands are exact so the division rounds just as parseDouble does
+        double value = scale > 0 ? mantissa / POWERS[scale] : mantissa;
+
+        return negative ? -value : value;
+    }
+
+    /**
+     * Decodes bytes as a string.
+     * @param buf Buffer
+     * @param start Index of the first byte
+     * @param end Index just past the last byte
+     * @return String
+     */
+    protected static String decode(ByteBuffer buf, int start, int end) {
+        byte[] bytes = new byte[end - start];
+
+        for(int k=0; k < bytes.length; k++)
+            bytes[k] = buf.get(start + k);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * This class holds the columns for a run of rows.
+     */
+    public static class Block {
+        // Number of rows
+        public int rows = 0;
+
+        // Decimal columns, null where the column isn't decimal
+        public final double[][] decimals;
+
+        // Nominal codes, null where the column isn't nominal
+        public final int[][] codes;
+
+        // Nominal values by code, null where the column isn't nominal
+        public final Dictionary[] dictionaries;
+
+        // Number of lines parsed, blank ones included
+        int lines = 0;
+
+        // Line in the block, from zero, of the first bad row, if any
+        int faultLine = -1;
+
+        // What's wrong with the bad row
+        String fault = null;
+
+        /**
+         * Constructor
+         * @param types Types of data in each column
+         * @param capacity Number of rows to allocate up front
+         */
+        Block(char[] types, int capacity) {
+            decimals = new double[types.length][];
+            codes = new int[types.length][];
+            dictionaries = new Dictionary[types.length];
+
+            for(int col=0; col < types.length; col++) {
+                if(types[col] == Constant.TYPE_DECIMAL)
+                    decimals[col] = new double[capacity];
+
+                else if(types[col] == Constant.TYPE_NOMINAL) {
+                    codes[col] = new int[capacity];
+                    dictionaries[col] = new Dictionary();
+                }
+            }
+        }
+
+        /**
+         * Makes sure there is room for the rows.
+         * @param capacity Number of rows
+         */
+        void ensure(int capacity) {
+            for(int col=0; col < decimals.length; col++) {
+                if(decimals[col] != null && decimals[col].length < capacity)
+                    decimals[col] = Arrays.copyOf(decimals[col], 2 * capacity);
+
+                if(codes[col] != null && codes[col].length < capacity)
+                    codes[col] = Arrays.copyOf(codes[col], 2 * capacity);
+            }
+        }
+
+        /**
+         * Records a bad row which stops the parse.
+         * @param line Line in the block, from zero
+         * @param fault What's wrong
+         */
+        void fault(int line, String fault) {
+            this.faultLine = line;
+            this.fault = fault;
+        }
+    }
+
+    /**
+     * This class maps the distinct nominals, as bytes, to codes 0, 1, 2...
+     * in the order they're first seen.
+     */
+    public static class Dictionary {
+        // Codes plus one by hash slot, zero if the slot's empty
+        private int[] slots = new int[16];
+
+        // Hash of each nominal by code
+        private int[] hashes = new int[8];
+
+        // Bytes of each nominal by code
+        private byte[][] keys = new byte[8][];
+
+        // Each nominal by code
+        private String[] values = new String[8];
+
+        // Number of nominals
+        private int size = 0;
+
+        /**
+         * Gets the code for nominal bytes, adding the nominal if it's new.
+         * @param buf Buffer
+         * @param start Index of the first byte
+         * @param end Index just past the last byte
+         * @return Code
+         */
+        public int code(ByteBuffer buf, int start, int end) {
+            int hash = 1;
+
+            for(int k=start; k < end; k++)
+                hash = 31 * hash + buf.get(k);
+
+            int mask = slots.length - 1;
+
+            for(int slot = hash & mask; ; slot = (slot + 1) & mask) {
+                int code = slots[slot] - 1;
+
+                if(code < 0) {
+                    byte[] key = new byte[end - start];
+
+                    for(int k=0; k < key.length; k++)
+                        key[k] = buf.get(start + k);
+
+                    return add(slot, hash, key);
+                }
+
+                if(hashes[code] == hash && matches(keys[code], buf, start, end))
+                    return code;
+            }
+        }
+
+        /**
+         * Gets the code for nominal bytes, adding the nominal if it's new.
+         * @param key Bytes
+         * @return Code
+         */
+        public int code(byte[] key) {
+            return code(ByteBuffer.wrap(key), 0, key.length);
+        }
+
+        /**
+         * Gets the nominal for a code.
+         * @param code Code
+         * @return Nominal
+         */
+        public String value(int code) {
+            assert(code >= 0 && code < size);
+
+            return values[code];
+        }
+
+        /**
+         * Gets the bytes of the nominal for a code.
+         * @param code Code
+         * @return Bytes
+         */
+        public byte[] key(int code) {
+            return keys[code];
+        }
+
+        /**
+         * Gets the number of distinct nominals.
+         * @return Size
+         */
+        public int size() {
+            return size;
+        }
+
+        private int add(int slot, int hash, byte[] key) {
+            int code = size++;
+
+            if(code == keys.length) {
+                hashes = Arrays.copyOf(hashes, 2 * code);
+                keys = Arrays.copyOf(keys, 2 * code);
+                values = Arrays.copyOf(values, 2 * code);
+            }
+
+            hashes[code] = hash;
+            keys[code] = key;
+            values[code] = new String(key, StandardCharsets.UTF_8);
+
+            slots[slot] = code + 1;
+
+            // Keep the table at most half full
+            if(2 * size > slots.length) {
+                slots = new int[2 * slots.length];
+
+                int mask = slots.length - 1;
+
+                for(int k=0; k < size; k++) {
+                    int s = hashes[k] & mask;
+
+                    while(slots[s] != 0)
+                        s = (s + 1) & mask;
+
+                    slots[s] = k + 1;
+                }
+            }
+
+            return code;
+        }
+
+        private static boolean matches(byte[] key, ByteBuffer buf, int start, int end) {
+            if(key.length != end - start)
+                return false;
+
+            for(int k=0; k < key.length; k++) {
+                if(key[k] != buf.get(start + k))
+                    return false;
+            }
+
+            return true;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.util;
+
+/**
+ * This class is a reusable buffer of rows for streaming training, laid out
+ * like a FlatMLDataSet: each row is the inputs followed by the ideals.
+ * @author Ron.Coleman
+ */
+public class MiniBatch {
+    // Rows, inputs then ideals
+    private final double[] data;
+
+    // Number of inputs in a row
+    private final int inputSize;
+
+    // Number of ideals in a row
+    private final int idealSize;
+
+    // Distance between rows
+    private final int stride;
+
+    // Most rows the batch holds
+    private final int capacity;
+
+    // Rows in the batch now
+    private int rows = 0;
+
+    /**
+     * Constructor
+     * @param capacity Most rows the batch holds
+     * @param inputSize Number of inputs in a row
+     * @param idealSize Number of ideals in a row
+     */
+    public MiniBatch(int capacity, int inputSize, int idealSize) {
+        this.capacity = capacity;
+        this.inputSize = inputSize;
+        this.idealSize = idealSize;
+        this.stride = inputSize + idealSize;
+        this.data = new double[capacity * stride];
+    }
+
+    /**
+     * Gets the rows, of which only the first getRows() are good.
+     * @return Rows, inputs then ideals
+     */
+    public double[] getData() {
+        return data;
+    }
+
+    /**
+     * Gets the number of inputs in a row.
+     * @return Inputs
+     */
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    /**
+     * Gets the number of ideals in a row.
+     * @return Ideals
+     */
+    public int getIdealSize() {
+        return idealSize;
+    }
+
+    /**
+     * Gets the distance between rows.
+     * @return Stride
+     */
+    public int getStride() {
+        return stride;
+    }
+
+    /**
+     * Gets the most rows the batch holds.
+     * @return Capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the rows in the batch now.
+     * @return Rows
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Sets the rows in the batch now, once they're written.
+     * @param rows Rows, no more than the capacity
+     */
+    public void setRows(int rows) {
+        assert(rows >= 0 && rows <= capacity);
+
+        this.rows = rows;
+    }
+}
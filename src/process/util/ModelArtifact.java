@@ -0,0 +1,415 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.util;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.encog.engine.network.activation.ActivationFunction;
+import org.encog.neural.networks.BasicNetwork;
+import org.encog.neural.networks.layers.BasicLayer;
+import process.score.BatchClassifier;
+
+/**
+ * This class is a trained model and everything needed to score with it: the
+ * network, the normalization of its inputs, and the subtypes in the order
+ * their encodings were trained with. It saves to and loads from a compact
+ * binary file, so a scoring service can start without training and a
+ * training run can pick up where another left off.
+ * <p>
+ * Layout, little endian: magic, version, the classifying title, the layers
+ * (neuron count, bias flag, activation class and parameters), the weights,
+ * the normalization mode, range, and each input's title and statistics,
+ * then the label encoding and the subtypes. Strings are length-prefixed
+ * UTF-8.
+ * @author Ron.Coleman
+ */
+public class ModelArtifact {
+    // File name extension for a model
+    public final static String EXTENSION = ".model";
+
+    // Format version, bump it whenever the layout changes
+    public final static int VERSION = 2;
+
+    // Marks a model file: "IRIM"
+    private final static int MAGIC = 0x4952494D;
+
+    // Trained network
+    private final BasicNetwork network;
+
+    // Normalizes the inputs
+    private final Normalizer normalizer;
+
+    // Titles of the input columns, in input order
+    private final List<String> inputs;
+
+    // Title of the column classified
+    private final String classifying;
+
+    // Subtypes by code
+    private final List<String> subtypes;
+
+    // Label encoding: equilateral, oneofn, or binary
+    private final String labels;
+
+    /**
+     * Constructor
+     * @param network Trained network
+     * @param normalizer Normalizes the inputs
+     * @param inputs Titles of the input columns, in input order
+     * @param classifying Title of the column classified
+     * @param subtypes Subtypes by code
+     * @param labels Label encoding: equilateral, oneofn, or binary
+     */
+    public ModelArtifact(BasicNetwork network, Normalizer normalizer, List<String> inputs, String classifying, List<String> subtypes, String labels) {
+        assert(network.getInputCount() == normalizer.getWidth() && inputs.size() == normalizer.getWidth());
+
+        this.network = network;
+        this.normalizer = normalizer;
+        this.inputs = Collections.unmodifiableList(new ArrayList<>(inputs));
+        this.classifying = classifying;
+        this.subtypes = Collections.unmodifiableList(new ArrayList<>(subtypes));
+        this.labels = labels;
+    }
+
+    /**
+     * Saves the model.
+     * @param path File path
+     * @throws IOException
+     */
+    public void save(String path) throws IOException {
+        int layers = network.getLayerCount();
+
+        double[] weights = network.getFlat().getWeights();
+
+        ColumnStats[] stats = normalizer.getStats();
+
+        // Encode the strings first so we know how big the file is
+        byte[] title = bytes(classifying);
+        byte[] encoding = bytes(labels);
+        byte[][] activations = new byte[layers][];
+        byte[][] titles = new byte[inputs.size()][];
+        byte[][] names = new byte[subtypes.size()][];
+
+        int size = 4 + 4 + 4 + title.length + 4;
+
+        for(int layer=0; layer < layers; layer++) {
+            activations[layer] = bytes(network.getActivation(layer).getClass().getName());
+
+            size += 4 + 1 + 4 + activations[layer].length + 4 + 8 * network.getActivation(layer).getParams().length;
+        }
+
+        size += 4 + 8 * weights.length + 1 + 8 + 8 + 4;
+
+        for(int k=0; k < titles.length; k++) {
+            titles[k] = bytes(inputs.get(k));
+
+            size += 4 + titles[k].length + 5 * 8;
+        }
+
+        size += 4 + encoding.length + 4;
+
+        for(int k=0; k < names.length; k++) {
+            names[k] = bytes(subtypes.get(k));
+
+            size += 4 + names[k].length;
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+
+        buf.putInt(MAGIC).putInt(VERSION);
+
+        put(buf, title);
+
+        buf.putInt(layers);
+
+        for(int layer=0; layer < layers; layer++) {
+            ActivationFunction activation = network.getActivation(layer);
+
+            buf.putInt(network.getLayerNeuronCount(layer));
+            buf.put((byte) (network.isLayerBiased(layer) ? 1 : 0));
+
+            put(buf, activations[layer]);
+
+            double[] params = activation.getParams();
+
+            buf.putInt(params.length);
+
+            for(double param: params)
+                buf.putDouble(param);
+        }
+
+        buf.putInt(weights.length);
+
+        for(double weight: weights)
+            buf.putDouble(weight);
+
+        buf.put((byte) (normalizer.isZScore() ? 1 : 0));
+        buf.putDouble(normalizer.getLow()).putDouble(normalizer.getHigh());
+        buf.putInt(titles.length);
+
+        for(int k=0; k < titles.length; k++) {
+            put(buf, titles[k]);
+
+            buf.putLong(stats[k].getCount()).putDouble(stats[k].getMean()).putDouble(stats[k].getM2());
+            buf.putDouble(stats[k].getMin()).putDouble(stats[k].getMax());
+        }
+
+        put(buf, encoding);
+
+        buf.putInt(names.length);
+
+        for(byte[] name: names)
+            put(buf, name);
+
+        buf.flip();
+
+        // Write to the side and move it into place so a reader never sees half
+        // a file, nor do two writers share a temp file
+        Path target = Paths.get(path).toAbsolutePath();
+
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+
+        try (RandomAccessFile file = new RandomAccessFile(temp.toFile(), "rw")) {
+            FileChannel channel = file.getChannel();
+
+            while(buf.hasRemaining())
+                channel.write(buf);
+        } catch (IOException ex) {
+            Files.deleteIfExists(temp);
+
+            throw ex;
+        }
+
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Loads a model.
+     * @param path File path
+     * @return Model
+     * @throws IOException if the file isn't a whole model of this version
+     */
+    public static ModelArtifact load(String path) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(Paths.get(path))).order(ByteOrder.LITTLE_ENDIAN);
+
+        try {
+            return read(buf, path);
+        }
+        catch(BufferUnderflowException | NegativeArraySizeException ex) {
+            throw new IOException("truncated or corrupt model: " + path, ex);
+        }
+    }
+
+    /**
+     * Reads a model.
+     * @param buf Bytes of the file
+     * @param path File path, for errors
+     * @return Model
+     * @throws IOException if the file isn't a model of this version
+     */
+    private static ModelArtifact read(ByteBuffer buf, String path) throws IOException {
+        if(buf.remaining() < 8 || buf.getInt() != MAGIC)
+            throw new IOException("not a model: " + path);
+
+        int version = buf.getInt();
+
+        if(version != VERSION)
+            throw new IOException("model version " + version + " not " + VERSION + ": " + path);
+
+        String classifying = getString(buf);
+
+        // Rebuild the network layer by layer
+        BasicNetwork network = new BasicNetwork();
+
+        int layers = buf.getInt();
+
+        for(int layer=0; layer < layers; layer++) {
+            int neurons = buf.getInt();
+            boolean biased = buf.get() != 0;
+
+            String name = getString(buf);
+
+            ActivationFunction activation;
+
+            // Check the type before running any of the class's code
+            try {
+                Class<?> clazz = Class.forName(name, false, ModelArtifact.class.getClassLoader());
+
+                if(!ActivationFunction.class.isAssignableFrom(clazz))
+                    throw new IOException("bad activation " + name + " in " + path);
+
+                activation = clazz.asSubclass(ActivationFunction.class).getDeclaredConstructor().newInstance();
+            }
+            catch(ReflectiveOperationException ex) {
+                throw new IOException("bad activation " + name + " in " + path, ex);
+            }
+
+            int params = buf.getInt();
+
+            for(int k=0; k < params; k++)
+                activation.setParam(k, buf.getDouble());
+
+            network.addLayer(new BasicLayer(activation, biased, neurons));
+        }
+
+        network.getStructure().finalizeStructure();
+
+        double[] weights = network.getFlat().getWeights();
+
+        if(buf.getInt() != weights.length)
+            throw new IOException("weights don't fit the layers: " + path);
+
+        for(int k=0; k < weights.length; k++)
+            weights[k] = buf.getDouble();
+
+        // The normalization the network was trained with
+        boolean zscore = buf.get() != 0;
+        double low = buf.getDouble();
+        double high = buf.getDouble();
+
+        String[] inputs = new String[buf.getInt()];
+        ColumnStats[] stats = new ColumnStats[inputs.length];
+
+        for(int k=0; k < inputs.length; k++) {
+            inputs[k] = getString(buf);
+
+            long count = buf.getLong();
+            double mean = buf.getDouble();
+            double m2 = buf.getDouble();
+
+            stats[k] = new ColumnStats(count, mean, m2, buf.getDouble(), buf.getDouble());
+        }
+
+        Normalizer normalizer = zscore ? Normalizer.zscore(stats) : Normalizer.range(stats, low, high);
+
+        String labels = getString(buf);
+
+        String[] subtypes = new String[buf.getInt()];
+
+        for(int k=0; k < subtypes.length; k++)
+            subtypes[k] = getString(buf);
+
+        // The network has to fit the inputs and the label encoding
+        if(network.getInputCount() != inputs.length)
+            throw new IOException("network takes " + network.getInputCount() + " inputs not " + inputs.length + ": " + path);
+
+        LabelEncoding encoding;
+
+        try {
+            encoding = new LabelEncoding(labels, subtypes.length);
+        }
+        catch(IllegalArgumentException ex) {
+            throw new IOException(ex.getMessage() + ": " + path, ex);
+        }
+
+        if(network.getOutputCount() != encoding.getWidth())
+            throw new IOException("network gives " + network.getOutputCount() + " outputs not " + encoding.getWidth() + ": " + path);
+
+        return new ModelArtifact(network, normalizer, Arrays.asList(inputs), classifying, Arrays.asList(subtypes), labels);
+    }
+
+    /**
+     * Creates a classifier for raw feature rows, in input order.
+     * @return Classifier
+     */
+    public BatchClassifier createClassifier() {
+        return new BatchClassifier(network.getFlat(), normalizer, new LabelEncoding(labels, subtypes.size()), subtypes);
+    }
+
+    /**
+     * Gets the trained network.
+     * @return Network
+     */
+    public BasicNetwork getNetwork() {
+        return network;
+    }
+
+    /**
+     * Gets the normalization the network was trained with.
+     * @return Normalizer
+     */
+    public Normalizer getNormalizer() {
+        return normalizer;
+    }
+
+    /**
+     * Gets the titles of the input columns.
+     * @return Titles, in input order
+     */
+    public List<String> getInputs() {
+        return inputs;
+    }
+
+    /**
+     * Gets the title of the column classified.
+     * @return Title
+     */
+    public String getClassifying() {
+        return classifying;
+    }
+
+    /**
+     * Gets the subtypes.
+     * @return Subtypes by code
+     */
+    public List<String> getSubtypes() {
+        return subtypes;
+    }
+
+    /**
+     * Gets the label encoding.
+     * @return equilateral, oneofn, or binary
+     */
+    public String getLabels() {
+        return labels;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void put(ByteBuffer buf, byte[] bytes) {
+        buf.putInt(bytes.length).put(bytes);
+    }
+
+    private static String getString(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.getInt()];
+
+        buf.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import org.encog.mathutil.Equilateral;
+
+/**
+ * This class gives the nominals of a column stable integer codes, either in
+ * the order they first appear in the file or sorted, and keeps their
+ * one-of-n and equilateral encodings as flat lookup tables, each made the
+ * first time it's asked for since a wide column's tables are big. The same data
+ * always gets the same codes, however it was loaded, so models trained on
+ * them stay usable.
+ * @author Ron.Coleman
+ */
+public class NominalDictionary {
+    // Code orders
+    public final static String FIRST_SEEN = "first";
+    public final static String SORTED = "sorted";
+
+    // Default code order
+    public static String ORDER = System.getProperty("process.nominal.order", SORTED);
+
+    // Nominals by code
+    private final String[] names;
+
+    // Codes by nominal
+    private final HashMap<String, Integer> codes = new HashMap<>();
+
+    // Code of each table code, null if they're the same
+    private final int[] remap;
+
+    // One-of-n encodings, n per code: 1 for the code, -1 otherwise, made on
+    // first use
+    private volatile double[] oneOfN = null;
+
+    // Equilateral encodings over [-1, 1], n-1 per code, made on first use
+    private volatile double[] equilateral = null;
+
+    /**
+     * Constructor
+     * @param dictionary Nominals by table code, in first-seen order
+     * @param order Code order: first or sorted
+     */
+    public NominalDictionary(String[] dictionary, String order) {
+        switch(order) {
+            case FIRST_SEEN:
+                names = dictionary.clone();
+                break;
+
+            case SORTED:
+                names = dictionary.clone();
+                Arrays.sort(names);
+                break;
+
+            default:
+                throw new IllegalArgumentException("bad nominal order '" + order + "'");
+        }
+
+        int n = names.length;
+
+        for(int code=0; code < n; code++)
+            codes.put(names[code], code);
+
+        // Table codes are first-seen, so only other orders need translating
+        int[] translation = new int[n];
+
+        boolean identity = true;
+
+        for(int k=0; k < n; k++) {
+            translation[k] = codes.get(dictionary[k]);
+
+            identity &= translation[k] == k;
+        }
+
+        remap = identity ? null : translation;
+    }
+
+    /**
+     * Gets the dictionary of a nominal column in the default order.
+     * @param table Data
+     * @param col Nominal column
+     * @return Dictionary
+     */
+    public static NominalDictionary of(DataTable table, int col) {
+        return new NominalDictionary(table.getDictionary(col), ORDER);
+    }
+
+    /**
+     * Encodes a nominal column in one pass.
+     * @param table Data
+     * @param col Nominal column
+     * @return Code of each row, the table's own array when no translation's needed
+     */
+    public int[] encode(DataTable table, int col) {
+        int[] tableCodes = table.getCodes(col);
+
+        if(remap == null)
+            return tableCodes;
+
+        int[] encoded = new int[tableCodes.length];
+
+        for(int row=0; row < encoded.length; row++)
+            encoded[row] = remap[tableCodes[row]];
+
+        return encoded;
+    }
+
+    /**
+     * Gets the number of nominals.
+     * @return Size
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * Gets the nominal of a code.
+     * @param code Code
+     * @return Nominal
+     */
+    public String getName(int code) {
+        return names[code];
+    }
+
+    /**
+     * Gets the nominals in code order.
+     * @return Nominals
+     */
+    public String[] getNames() {
+        return names.clone();
+    }
+
+    /**
+     * Gets the code of a nominal.
+     * @param name Nominal
+     * @return Code or -1 if it's not in the dictionary
+     */
+    public int getCode(String name) {
+        Integer code = codes.get(name);
+
+        return code == null ? -1 : code;
+    }
+
+    /**
+     * Gets the one-of-n encodings, n per code.
+     * @return Table, which is this dictionary's own so don't modify it
+     */
+    public double[] getOneOfN() {
+        if(oneOfN == null)
+            makeOneOfN();
+
+        return oneOfN;
+    }
+
+    /**
+     * Gets the equilateral encodings over [-1, 1], n-1 per code.
+     * @return Table, which is this dictionary's own so don't modify it, or
+     * null if there are fewer than three nominals
+     */
+    public double[] getEquilateral() {
+        if(names.length < Equilateral.MIN_EQ)
+            return null;
+
+        if(equilateral == null)
+            makeEquilateral();
+
+        return equilateral;
+    }
+
+    /**
+     * Makes the one-of-n table, once.
+     */
+    private synchronized void makeOneOfN() {
+        if(oneOfN == null)
+            oneOfN = new LabelEncoding(LabelEncoding.ONE_OF_N, names.length).getTable();
+    }
+
+    /**
+     * Makes the equilateral table, once.
+     */
+    private synchronized void makeEquilateral() {
+        if(equilateral == null)
+            equilateral = new LabelEncoding(LabelEncoding.EQUILATERAL, names.length).getTable();
+    }
+}
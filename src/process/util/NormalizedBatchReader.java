@@ -0,0 +1,192 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.util;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class streams rows of a table too big to load, normalizing the
+ * decimal inputs and encoding the class as the ideals on the fly, the same
+ * as a plugin lays out its in-memory data. It also keeps what a saved model
+ * needs: the input titles, the normalizer, and the subtypes.
+ * @author Ron.Coleman
+ */
+public abstract class NormalizedBatchReader implements BatchReader {
+    // Title of each input
+    protected String[] inputs;
+
+    // Column of each input
+    protected int[] inputColumns;
+
+    // Title of the class column
+    protected String classifying;
+
+    // Class column
+    protected int classColumn;
+
+    // Normalizes the inputs
+    protected Normalizer normalizer;
+
+    // Subtypes in encoding order
+    protected NominalDictionary classes;
+
+    // Encodes the subtypes as ideals
+    protected LabelEncoding labels;
+
+    /**
+     * Opens a CSV file or, if the path ends in .snap, a snapshot of one.
+     * @param path File path
+     * @param types Column types of a CSV file, ignored for a snapshot
+     * @param classifying Title of the class column
+     * @param normalization Normalization: range or zscore
+     * @param labels Label encoding: equilateral, oneofn, or binary
+     * @return Reader
+     * @throws Exception
+     */
+    public static NormalizedBatchReader open(String path, char[] types, String classifying, String normalization, String labels) throws Exception {
+        if(path.endsWith(Snapshot.EXTENSION))
+            return new SnapshotBatchReader(path, classifying, normalization, labels);
+
+        return new CsvBatchReader(path, types, classifying, normalization, labels);
+    }
+
+    /**
+     * Sets up the inputs, the normalizer, and the encoding once the columns,
+     * their statistics, and the class dictionary are known.
+     * @param titles Column titles
+     * @param types Column types
+     * @param stats Statistics by column, null where the column isn't decimal
+     * @param dictionary Classes by table code, in first-seen order
+     * @param classifying Title of the class column
+     * @param normalization Normalization: range or zscore
+     * @param labels Label encoding: equilateral, oneofn, or binary
+     * @throws Exception
+     */
+    protected void define(String[] titles, char[] types, ColumnStats[] stats, String[] dictionary,
+            String classifying, String normalization, String labels) throws Exception {
+        this.classifying = classifying;
+
+        classColumn = Arrays.asList(titles).indexOf(classifying);
+
+        if(classColumn < 0 || types[classColumn] != Constant.TYPE_NOMINAL)
+            throw new Exception("no nominal column '" + classifying + "'");
+
+        // The inputs are the decimals we're not classifying
+        inputColumns = new int[titles.length];
+
+        int numCols = 0;
+
+        for(int col=0; col < titles.length; col++) {
+            if(types[col] == Constant.TYPE_DECIMAL && col != classColumn)
+                inputColumns[numCols++] = col;
+        }
+
+        inputColumns = Arrays.copyOf(inputColumns, numCols);
+
+        inputs = new String[numCols];
+
+        ColumnStats[] inputStats = new ColumnStats[numCols];
+
+        for(int k=0; k < numCols; k++) {
+            inputs[k] = titles[inputColumns[k]];
+            inputStats[k] = stats[inputColumns[k]];
+        }
+
+        normalizer = normalization.equals("zscore") ?
+                Normalizer.zscore(inputStats) : Normalizer.range(inputStats, -1, 1);
+
+        classes = new NominalDictionary(dictionary, NominalDictionary.ORDER);
+
+        this.labels = new LabelEncoding(labels, classes.size());
+    }
+
+    /**
+     * Gets the subtype code of each table code of the class column.
+     * @param dictionary Classes by table code
+     * @return Subtype codes
+     * @throws Exception if a class isn't one of the subtypes
+     */
+    protected int[] recode(String[] dictionary) throws Exception {
+        int[] recode = new int[dictionary.length];
+
+        for(int code=0; code < recode.length; code++) {
+            recode[code] = classes.getCode(dictionary[code]);
+
+            if(recode[code] < 0)
+                throw new Exception("unknown class '" + dictionary[code] + "'");
+        }
+
+        return recode;
+    }
+
+    @Override
+    public int getInputSize() {
+        return inputColumns.length;
+    }
+
+    @Override
+    public int getIdealSize() {
+        return labels.getWidth();
+    }
+
+    /**
+     * Gets the titles of the input columns.
+     * @return Titles, in input order
+     */
+    public List<String> getInputs() {
+        return Arrays.asList(inputs);
+    }
+
+    /**
+     * Gets the title of the class column.
+     * @return Title
+     */
+    public String getClassifying() {
+        return classifying;
+    }
+
+    /**
+     * Gets the normalization of the inputs.
+     * @return Normalizer
+     */
+    public Normalizer getNormalizer() {
+        return normalizer;
+    }
+
+    /**
+     * Gets the classes.
+     * @return Subtypes by code
+     */
+    public List<String> getSubtypes() {
+        return Arrays.asList(classes.getNames());
+    }
+
+    /**
+     * Gets the label encoding of the ideals.
+     * @return Encoding
+     */
+    public LabelEncoding getLabels() {
+        return labels;
+    }
+}
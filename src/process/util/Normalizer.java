@@ -0,0 +1,256 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.util;
+
+/**
+ * This class normalizes decimal columns, either scaling each one from its
+ * range onto [low, high] or turning it into z-scores. It writes the
+ * normalized rows straight into their final row-major layout in one pass,
+ * with no intermediate column copies.
+ * @author Ron.Coleman
+ */
+public class Normalizer {
+    // Low end of the normalized range
+    private final double low;
+
+    // High end of the normalized range
+    private final double high;
+
+    // Whether this gives z-scores rather than range scaling
+    private final boolean zscore;
+
+    // Statistics of each input
+    private final ColumnStats[] stats;
+
+    // Value of each input that maps to its offset: the min or the mean
+    private final double[] centers;
+
+    // Spread of each input: its range or standard deviation, infinite if constant
+    private final double[] scales;
+
+    // Normalized value of each input's center
+    private final double[] offsets;
+
+    // Width of the normalized range, one for z-scores
+    private final double span;
+
+    /**
+     * Constructor
+     * @param stats Statistics of each input
+     * @param zscore True for z-scores, false to scale onto [low, high]
+     * @param low Low end of the normalized range
+     * @param high High end of the normalized range
+     */
+    public Normalizer(ColumnStats[] stats, boolean zscore, double low, double high) {
+        this.stats = stats;
+        this.zscore = zscore;
+        this.low = low;
+        this.high = high;
+
+        this.span = zscore ? 1 : high - low;
+
+        this.centers = new double[stats.length];
+        this.scales = new double[stats.length];
+        this.offsets = new double[stats.length];
+
+        // A constant input always sits in the middle of the normalized range
+        for(int k=0; k < stats.length; k++) {
+            double spread = zscore ? stats[k].getStandardDeviation() : stats[k].getMax() - stats[k].getMin();
+
+            double offset = zscore ? 0 : low;
+
+            centers[k] = zscore ? stats[k].getMean() : stats[k].getMin();
+            scales[k] = spread == 0 ? Double.POSITIVE_INFINITY : spread;
+            offsets[k] = spread == 0 ? (zscore ? 0 : (low + high) / 2) : offset;
+        }
+    }
+
+    /**
+     * Gets a normalizer scaling each input from its range onto [low, high].
+     * @param stats Statistics of each input
+     * @param low Low end of the normalized range
+     * @param high High end of the normalized range
+     * @return Normalizer
+     */
+    public static Normalizer range(ColumnStats[] stats, double low, double high) {
+        return new Normalizer(stats, false, low, high);
+    }
+
+    /**
+     * Gets a normalizer giving the z-score of each input.
+     * @param stats Statistics of each input
+     * @return Normalizer
+     */
+    public static Normalizer zscore(ColumnStats[] stats) {
+        return new Normalizer(stats, true, 0, 0);
+    }
+
+    /**
+     * Gets a range normalizer for decimal columns of a table using the
+     * table's statistics, which it finds in a single scan if need be.
+     * @param table Data
+     * @param cols Decimal column indexes, in input order
+     * @param low Low end of the normalized range
+     * @param high High end of the normalized range
+     * @return Normalizer
+     */
+    public static Normalizer fit(DataTable table, int[] cols, double low, double high) {
+        return range(getStats(table, cols), low, high);
+    }
+
+    /**
+     * Gets a z-score normalizer for decimal columns of a table using the
+     * table's statistics, which it finds in a single scan if need be.
+     * @param table Data
+     * @param cols Decimal column indexes, in input order
+     * @return Normalizer
+     */
+    public static Normalizer fitZScore(DataTable table, int[] cols) {
+        return zscore(getStats(table, cols));
+    }
+
+    private static ColumnStats[] getStats(DataTable table, int[] cols) {
+        ColumnStats[] stats = new ColumnStats[cols.length];
+
+        for(int k=0; k < cols.length; k++)
+            stats[k] = table.getStats(cols[k]);
+
+        return stats;
+    }
+
+    /**
+     * Normalizes decimal columns of a table into rows of a store.
+     * @param table Data
+     * @param cols Decimal column indexes, in input order
+     * @param order Table row for each output row
+     * @param out Output store
+     * @param offset Index in the output of the first row
+     * @param stride Distance between output rows, at least cols.length
+     */
+    public void normalize(DataTable table, int[] cols, int[] order, DoubleStore out, long offset, int stride) {
+        normalize(table, cols, order, 0, order.length, out, offset, stride);
+    }
+
+    /**
+     * Normalizes decimal columns of a table into a run of rows of a store.
+     * Runs that don't overlap may be normalized concurrently.
+     * @param table Data
+     * @param cols Decimal column indexes, in input order
+     * @param order Table row for each output row
+     * @param from First output row
+     * @param to Output row just past the last
+     * @param out Output store
+     * @param offset Index in the output of output row zero
+     * @param stride Distance between output rows, at least cols.length
+     */
+    public void normalize(DataTable table, int[] cols, int[] order, int from, int to, DoubleStore out, long offset, int stride) {
+        assert(cols.length == stats.length && stride >= cols.length);
+
+        double[][] columns = new double[cols.length][];
+
+        for(int k=0; k < cols.length; k++)
+            columns[k] = table.getDecimals(cols[k]);
+
+        int width = cols.length;
+
+        // Write heap stores in place, others a row at a time
+        double[] heap = out instanceof DoubleStore.Heap ? ((DoubleStore.Heap) out).getData() : null;
+
+        double[] buffer = heap == null ? new double[width] : heap;
+
+        long dst = offset + (long) from * stride;
+
+        for(int row=from; row < to; row++, dst += stride) {
+            int src = order[row];
+
+            int at = heap == null ? 0 : (int) dst;
+
+            for(int k=0; k < width; k++)
+                buffer[at + k] = (columns[k][src] - centers[k]) / scales[k] * span + offsets[k];
+
+            if(heap == null)
+                out.put(dst, buffer, 0, width);
+        }
+    }
+
+    /**
+     * Normalizes a row of raw inputs in place.
+     * @param row Raw inputs, one per column
+     */
+    public void normalize(double[] row) {
+        int width = stats.length;
+
+        for(int k=0; k < width; k++)
+            row[k] = (row[k] - centers[k]) / scales[k] * span + offsets[k];
+    }
+
+    /**
+     * Normalizes a raw value.
+     * @param k Input index
+     * @param x Raw value
+     * @return Normalized value
+     */
+    public double normalize(int k, double x) {
+        return (x - centers[k]) / scales[k] * span + offsets[k];
+    }
+
+    /**
+     * Gets the number of inputs.
+     * @return Width
+     */
+    public int getWidth() {
+        return stats.length;
+    }
+
+    /**
+     * Gets the statistics of each input.
+     * @return Statistics
+     */
+    public ColumnStats[] getStats() {
+        return stats;
+    }
+
+    /**
+     * Tells whether this gives z-scores.
+     * @return True for z-scores, false for range scaling
+     */
+    public boolean isZScore() {
+        return zscore;
+    }
+
+    /**
+     * Gets the low end of the normalized range.
+     * @return Low
+     */
+    public double getLow() {
+        return low;
+    }
+
+    /**
+     * Gets the high end of the normalized range.
+     * @return High
+     */
+    public double getHigh() {
+        return high;
+    }
+}
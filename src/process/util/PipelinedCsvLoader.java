@@ -0,0 +1,401 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.util;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class loads a CSV file as a pipeline of stages over blocks of rows,
+ * joined by bounded queues, so reading the file overlaps parsing it:
+ * <ol>
+ * <li>a reader thread reads the file a block at a time into recycled
+ * buffers, cut on line boundaries;
+ * <li>parser threads turn each block into columns and their statistics;
+ * <li>the calling thread appends the columns in file order and merges the
+ * statistics, so the normalizer needn't scan the data again.
+ * </ol>
+ * The buffers are the only large allocations in flight and there are a
+ * fixed number of them, so a fast reader waits for the parsers rather than
+ * filling the heap. The rows, codes, and errors are the same as load() gives.
+ * @author Ron.Coleman
+ */
+public class PipelinedCsvLoader extends MappedCsvLoader {
+    // Bytes read at a time, e.g., -Dprocess.loader.block=4194304
+    public static int BLOCK_SIZE = Integer.getInteger("process.loader.block", 4 * 1024 * 1024);
+
+    // Blocks waiting between stages
+    public static int QUEUE_DEPTH = Integer.getInteger("process.loader.depth", 4);
+
+    // Parser threads, zero for one per core less the reader's
+    public static int PARSERS = Integer.getInteger("process.loader.parsers", 0);
+
+    // Marks the end of the blocks
+    private final static Chunk END = new Chunk(-1, null);
+
+    /**
+     * This class is a block of raw rows.
+     */
+    private static class Chunk {
+        // Place in the file
+        final int seq;
+
+        // Whole rows from index zero up to the limit
+        final ByteBuffer buf;
+
+        Chunk(int seq, ByteBuffer buf) {
+            this.seq = seq;
+            this.buf = buf;
+        }
+    }
+
+    /**
+     * This class is a block of parsed rows.
+     */
+    private static class Parsed {
+        // Place in the file
+        final int seq;
+
+        // Columns
+        final Block block;
+
+        // Statistics of the decimal columns
+        final ColumnStats[] stats;
+
+        Parsed(int seq, Block block, ColumnStats[] stats) {
+            this.seq = seq;
+            this.block = block;
+            this.stats = stats;
+        }
+    }
+
+    // First failure in any stage
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+
+    /**
+     * Constructor
+     * @param path Path to the file.
+     * @param types Types of data in each column: D decimal, N nominal, - skip
+     * @throws Exception
+     */
+    public PipelinedCsvLoader(String path, char[] types) throws Exception {
+        super(path, types);
+    }
+
+    /**
+     * Loads the data rows in file order, i.e., unshuffled, with the
+     * statistics of the decimal columns.
+     * Assumes first row is the header row.
+     * @return Data in file order
+     * @throws Exception
+     */
+    public DataTable loadTable() throws Exception {
+        int parsers = PARSERS > 0 ? PARSERS : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+        try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+            FileChannel channel = file.getChannel();
+
+            long dataStart = readHeader(channel);
+
+            // Enough buffers for every stage to have one in hand plus the queue
+            BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(QUEUE_DEPTH + parsers + 2);
+
+            for(int k=0; k < QUEUE_DEPTH + parsers + 2; k++)
+                free.add(ByteBuffer.allocate(BLOCK_SIZE));
+
+            BlockingQueue<Chunk> raw = new ArrayBlockingQueue<>(QUEUE_DEPTH);
+
+            BlockingQueue<Parsed> parsed = new ArrayBlockingQueue<>(QUEUE_DEPTH);
+
+            Thread[] threads = new Thread[parsers + 1];
+
+            threads[0] = new Thread(() -> read(channel, dataStart, free, raw, parsers), "csv-reader");
+
+            for(int k=1; k < threads.length; k++)
+                threads[k] = new Thread(() -> parse(free, raw, parsed), "csv-parser-" + k);
+
+            for(Thread thread: threads) {
+                thread.setDaemon(true);
+                thread.start();
+            }
+
+            try {
+                return assemble(parsed, parsers);
+            }
+            finally {
+                // Unblock the other stages if we're bailing out
+                for(Thread thread: threads)
+                    thread.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Reads the file into blocks of whole rows: the reader stage.
+     * @param channel File channel
+     * @param dataStart File offset of the first data row
+     * @param free Buffers to read into
+     * @param raw Blocks read
+     * @param parsers Number of parsers to tell when the blocks end
+     */
+    private void read(FileChannel channel, long dataStart, BlockingQueue<ByteBuffer> free, BlockingQueue<Chunk> raw, int parsers) {
+        try {
+            long pos = dataStart;
+
+            int seq = 0;
+
+            ByteBuffer buf = free.take();
+
+            buf.clear();
+
+            boolean eof = false;
+
+            while(!eof) {
+                // Fill the buffer after whatever's carried over
+                while(buf.hasRemaining()) {
+                    int n = channel.read(buf, pos);
+
+                    if(n < 0) {
+                        eof = true;
+                        break;
+                    }
+
+                    pos += n;
+                }
+
+                int length = buf.position();
+
+                int cut = length;
+
+                if(!eof) {
+                    // Cut after the last new line, carrying the partial row over
+                    while(cut > 0 && buf.get(cut - 1) != '\n')
+                        cut--;
+
+                    // A row longer than the buffer: grow it and keep reading
+                    if(cut == 0) {
+                        ByteBuffer bigger = ByteBuffer.allocate(2 * buf.capacity());
+
+                        buf.flip();
+                        bigger.put(buf);
+
+                        buf = bigger;
+
+                        continue;
+                    }
+                }
+
+                ByteBuffer next = eof ? null : free.take();
+
+                if(next != null) {
+                    next.clear();
+
+                    for(int k=cut; k < length; k++)
+                        next.put(buf.get(k));
+                }
+
+                buf.position(0);
+                buf.limit(cut);
+
+                if(cut > 0)
+                    raw.put(new Chunk(seq++, buf));
+
+                buf = next;
+            }
+
+            for(int k=0; k < parsers; k++)
+                raw.put(END);
+        } catch (InterruptedException ex) {
+            // The load is over
+        } catch (Exception ex) {
+            fail(ex);
+        }
+    }
+
+    /**
+     * Parses blocks into columns: a parser stage.
+     * @param free Buffers to recycle
+     * @param raw Blocks read
+     * @param parsed Blocks parsed
+     */
+    private void parse(BlockingQueue<ByteBuffer> free, BlockingQueue<Chunk> raw, BlockingQueue<Parsed> parsed) {
+        try {
+            for(Chunk chunk = raw.take(); chunk != END; chunk = raw.take()) {
+                Block block = parse(chunk.buf);
+
+                ColumnStats[] stats = block.faultLine >= 0 ? null : ColumnStats.of(block, types);
+
+                // Grown buffers go back too, the pool just ends up with bigger ones
+                free.offer(chunk.buf);
+
+                parsed.put(new Parsed(chunk.seq, block, stats));
+            }
+
+            parsed.put(new Parsed(-1, null, null));
+        } catch (InterruptedException ex) {
+            // The load is over
+        } catch (Exception ex) {
+            fail(ex);
+        }
+    }
+
+    /**
+     * Appends the parsed blocks in file order: the last stage.
+     * @param parsed Blocks parsed
+     * @param parsers Number of parsers, each of which ends with an empty block
+     * @return Data in file order
+     * @throws Exception
+     */
+    private DataTable assemble(BlockingQueue<Parsed> parsed, int parsers) throws Exception {
+        Block merged = new Block(types, 1024);
+
+        ColumnStats[] stats = new ColumnStats[types.length];
+
+        for(int col=0; col < types.length; col++) {
+            if(types[col] == Constant.TYPE_DECIMAL)
+                stats[col] = new ColumnStats();
+        }
+
+        // Blocks which came in ahead of their turn
+        HashMap<Integer, Parsed> pending = new HashMap<>();
+
+        int nextSeq = 0;
+
+        for(int ended = 0; ended < parsers; ) {
+            Parsed next = take(parsed);
+
+            if(next.seq < 0) {
+                ended++;
+                continue;
+            }
+
+            pending.put(next.seq, next);
+
+            for(Parsed ready = pending.remove(nextSeq); ready != null; ready = pending.remove(++nextSeq))
+                append(merged, stats, ready);
+        }
+
+        assert(pending.isEmpty());
+
+        String[] headers = getHeaders();
+
+        String[][] nominals = new String[types.length][];
+
+        for(int col=0; col < types.length; col++) {
+            if(merged.decimals[col] != null)
+                merged.decimals[col] = Arrays.copyOf(merged.decimals[col], merged.rows);
+
+            if(merged.codes[col] != null) {
+                merged.codes[col] = Arrays.copyOf(merged.codes[col], merged.rows);
+
+                Dictionary dictionary = merged.dictionaries[col];
+
+                nominals[col] = new String[dictionary.size()];
+
+                for(int code=0; code < dictionary.size(); code++)
+                    nominals[col][code] = dictionary.value(code);
+            }
+        }
+
+        return new DataTable(headers, types, merged.rows, merged.decimals, merged.codes, nominals, stats);
+    }
+
+    /**
+     * Appends a parsed block, recoding its nominals so codes follow
+     * first-seen file order, and merges its statistics.
+     * @param merged Rows so far
+     * @param stats Statistics so far
+     * @param parsed Block
+     * @throws Exception
+     */
+    private void append(Block merged, ColumnStats[] stats, Parsed parsed) throws Exception {
+        Block block = parsed.block;
+
+        if(block.faultLine >= 0)
+            throw new Exception(describeFault(block, merged.lines));
+
+        int row = merged.rows;
+
+        merged.ensure(row + block.rows);
+
+        for(int col=0; col < types.length; col++) {
+            if(types[col] == Constant.TYPE_DECIMAL) {
+                System.arraycopy(block.decimals[col], 0, merged.decimals[col], row, block.rows);
+
+                stats[col].merge(parsed.stats[col]);
+            }
+            else if(types[col] == Constant.TYPE_NOMINAL) {
+                Dictionary local = block.dictionaries[col];
+
+                int[] recode = new int[local.size()];
+
+                for(int code=0; code < recode.length; code++)
+                    recode[code] = merged.dictionaries[col].code(local.key(code));
+
+                int[] codes = block.codes[col];
+
+                int[] mergedCodes = merged.codes[col];
+
+                for(int k=0; k < block.rows; k++)
+                    mergedCodes[row + k] = recode[codes[k]];
+            }
+        }
+
+        merged.rows += block.rows;
+        merged.lines += block.lines;
+    }
+
+    /**
+     * Takes the next parsed block, giving up if a stage failed.
+     * @param parsed Blocks parsed
+     * @return Block
+     * @throws Exception
+     */
+    private Parsed take(BlockingQueue<Parsed> parsed) throws Exception {
+        while(true) {
+            if(failure.get() != null)
+                throw failure.get();
+
+            Parsed next = parsed.poll(100, TimeUnit.MILLISECONDS);
+
+            if(next != null)
+                return next;
+        }
+    }
+
+    /**
+     * Records a stage's failure.
+     * @param ex What went wrong
+     */
+    private void fail(Exception ex) {
+        failure.compareAndSet(null, ex);
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.util;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class reads batches on a background thread, a few ahead of the
+ * trainer, so reading and parsing overlap training. It goes straight on to
+ * the next pass at the end of one. Streamed rows are in file order, which
+ * may well be sorted by class, so the rows pass through a shuffle window:
+ * each row out is picked at random from the window and replaced by the
+ * next row in. Memory is the window plus the batches in flight.
+ * @author Ron.Coleman
+ */
+public class PrefetchingBatchReader implements BatchReader {
+    // Marks the end of a pass
+    private final static MiniBatch END = new MiniBatch(0, 0, 0);
+
+    // Reader running on the background thread
+    private final BatchReader reader;
+
+    // Batches ready to train on
+    private final BlockingQueue<MiniBatch> ready;
+
+    // Batches to fill
+    private final BlockingQueue<MiniBatch> free;
+
+    // Rows in the shuffle window, zero for none
+    private final int window;
+
+    // Picks rows out of the window
+    private final Random ran;
+
+    // Background thread
+    private final Thread thread;
+
+    // Why the background thread stopped, if it failed
+    private volatile Exception failure = null;
+
+    // Batch handed out by the last read, to recycle on the next
+    private MiniBatch lent = null;
+
+    /**
+     * Constructor
+     * @param reader Reader to run in the background
+     * @param batchSize Rows in a batch
+     * @param depth Batches read ahead
+     * @param window Rows in the shuffle window, zero for none
+     * @param seed Random seed for the shuffle
+     */
+    public PrefetchingBatchReader(BatchReader reader, int batchSize, int depth, int window, long seed) {
+        this.reader = reader;
+        this.window = window;
+        this.ran = new Random(seed);
+
+        // One more batch for the rows coming into the shuffle window and one
+        // for the trainer, plus room for the end of a pass
+        int batches = Math.max(1, depth) + 2;
+
+        ready = new ArrayBlockingQueue<>(batches + 1);
+        free = new ArrayBlockingQueue<>(batches);
+
+        for(int k=0; k < batches; k++)
+            free.add(new MiniBatch(batchSize, reader.getInputSize(), reader.getIdealSize()));
+
+        thread = new Thread(this::run, "prefetch");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Reads passes until closed: the background thread.
+     */
+    private void run() {
+        try {
+            while(true) {
+                if(window > 0)
+                    shuffled();
+                else
+                    straight();
+
+                ready.put(END);
+
+                reader.rewind();
+            }
+        } catch (InterruptedException ex) {
+            // Closed
+        } catch (Exception ex) {
+            failure = ex;
+
+            ready.offer(END);
+        }
+    }
+
+    /**
+     * Reads a pass in file order.
+     * @throws Exception
+     */
+    private void straight() throws Exception {
+        while(true) {
+            MiniBatch batch = free.take();
+
+            if(reader.read(batch) == 0) {
+                free.put(batch);
+                return;
+            }
+
+            ready.put(batch);
+        }
+    }
+
+    /**
+     * Reads a pass through the shuffle window.
+     * @throws Exception
+     */
+    private void shuffled() throws Exception {
+        int stride = reader.getInputSize() + reader.getIdealSize();
+
+        double[] rows = new double[window * stride];
+
+        // Rows come in through a batch of their own
+        MiniBatch in = free.take();
+
+        in.setRows(0);
+
+        int[] cursor = new int[1];
+
+        int count = 0;
+
+        while(count < window && next(in, cursor, rows, count * stride))
+            count++;
+
+        while(count > 0) {
+            MiniBatch out = free.take();
+
+            double[] data = out.getData();
+
+            int n = 0;
+
+            for(; n < out.getCapacity() && count > 0; n++) {
+                int pick = ran.nextInt(count);
+
+                System.arraycopy(rows, pick * stride, data, n * stride, stride);
+
+                // Refill the slot, or close the gap once the pass runs dry
+                if(!next(in, cursor, rows, pick * stride)) {
+                    count--;
+
+                    System.arraycopy(rows, count * stride, rows, pick * stride, stride);
+                }
+            }
+
+            out.setRows(n);
+
+            ready.put(out);
+        }
+
+        free.put(in);
+    }
+
+    /**
+     * Copies the next row of the pass.
+     * @param in Batch the rows come in through
+     * @param cursor Next row of the batch
+     * @param dst Destination
+     * @param offset Index in the destination
+     * @return False if the pass is over
+     * @throws IOException
+     */
+    private boolean next(MiniBatch in, int[] cursor, double[] dst, int offset) throws IOException {
+        if(cursor[0] >= in.getRows()) {
+            if(reader.read(in) == 0)
+                return false;
+
+            cursor[0] = 0;
+        }
+
+        System.arraycopy(in.getData(), cursor[0] * in.getStride(), dst, offset, in.getStride());
+
+        cursor[0]++;
+
+        return true;
+    }
+
+    @Override
+    public int getInputSize() {
+        return reader.getInputSize();
+    }
+
+    @Override
+    public int getIdealSize() {
+        return reader.getIdealSize();
+    }
+
+    /**
+     * Copies the next batch, which the background thread has ready.
+     * @param batch Batch to fill, with the capacity the reader was made with
+     * @return Rows read, zero once the pass is over
+     * @throws IOException
+     */
+    @Override
+    public int read(MiniBatch batch) throws IOException {
+        MiniBatch next = take();
+
+        if(next == END) {
+            if(failure != null)
+                throw new IOException(failure);
+
+            batch.setRows(0);
+
+            return 0;
+        }
+
+        int rows = next.getRows();
+
+        System.arraycopy(next.getData(), 0, batch.getData(), 0, rows * next.getStride());
+
+        batch.setRows(rows);
+
+        free.offer(next);
+
+        return rows;
+    }
+
+    /**
+     * Gets the next batch ready to train on, without copying it. It goes
+     * back to be refilled on the next call.
+     * @return Batch or null once the pass is over
+     * @throws IOException
+     */
+    public MiniBatch next() throws IOException {
+        if(lent != null) {
+            free.offer(lent);
+            lent = null;
+        }
+
+        MiniBatch next = take();
+
+        if(next == END) {
+            if(failure != null)
+                throw new IOException(failure);
+
+            return null;
+        }
+
+        lent = next;
+
+        return next;
+    }
+
+    /**
+     * Takes the next batch off the ready queue.
+     * @return Batch or END
+     * @throws IOException
+     */
+    private MiniBatch take() throws IOException {
+        try {
+            MiniBatch next;
+
+            while((next = ready.poll(100, TimeUnit.MILLISECONDS)) == null) {
+                if(failure != null)
+                    throw new IOException(failure);
+            }
+
+            return next;
+        } catch (InterruptedException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * Does nothing since the background thread starts each pass as soon as
+     * the last one's read.
+     */
+    @Override
+    public void rewind() {
+    }
+
+    /**
+     * Stops reading ahead, leaving the reader open.
+     */
+    public void stop() {
+        thread.interrupt();
+
+        try {
+            thread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        stop();
+
+        reader.close();
+    }
+}
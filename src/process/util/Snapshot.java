@@ -0,0 +1,495 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * This class saves a loaded data table to a compact binary file and maps it
+ * back in, so a later run can skip parsing the CSV. The snapshot records a
+ * checksum of the CSV it came from and is only used while that still matches.
+ * <p>
+ * Layout, little endian: magic, version, CSV checksum, column count, row
+ * count, then for each column its type and title plus the statistics of a
+ * decimal or the dictionary of a nominal. The columns follow, each starting
+ * on an eight byte boundary, as doubles or int codes.
+ * @author Ron.Coleman
+ */
+public class Snapshot {
+    // File name extension for a snapshot of a CSV
+    public final static String EXTENSION = ".snap";
+
+    // Format version, bump it whenever the layout changes
+    public final static int VERSION = 2;
+
+    // Marks a snapshot file: "IRIS"
+    private final static int MAGIC = 0x49524953;
+
+    // Bytes we checksum or write at a time
+    private final static int BLOCK_SIZE = 64 * 1024 * 1024;
+
+    // Size of the write buffer
+    private final static int BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * Gets the CRC-32 of a file.
+     * @param path File path
+     * @return Checksum
+     * @throws IOException
+     */
+    public static long checksum(String path) throws IOException {
+        CRC32 crc = new CRC32();
+
+        try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+            FileChannel channel = file.getChannel();
+
+            long size = channel.size();
+
+            for(long pos=0; pos < size; pos += BLOCK_SIZE) {
+                MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(BLOCK_SIZE, size - pos));
+
+                crc.update(buf);
+            }
+        }
+
+        return crc.getValue();
+    }
+
+    /**
+     * Writes a snapshot.
+     * @param path Snapshot path
+     * @param table Data to save
+     * @param checksum Checksum of the CSV the data came from
+     * @throws IOException
+     */
+    public static void write(String path, DataTable table, long checksum) throws IOException {
+        int numCols = table.getColumnCount();
+        int numRows = table.getRowCount();
+
+        // Encode the strings first so we know how big the header is
+        byte[][] titles = new byte[numCols][];
+        byte[][][] nominals = new byte[numCols][][];
+
+        int size = 4 + 4 + 8 + 4 + 4;
+
+        for(int col=0; col < numCols; col++) {
+            titles[col] = table.getTitle(col).getBytes(StandardCharsets.UTF_8);
+
+            size += 1 + 4 + titles[col].length;
+
+            if(table.getType(col) == Constant.TYPE_DECIMAL)
+                size += 5 * 8;
+
+            else if(table.getType(col) == Constant.TYPE_NOMINAL) {
+                String[] dictionary = table.getDictionary(col);
+
+                nominals[col] = new byte[dictionary.length][];
+
+                size += 4;
+
+                for(int code=0; code < dictionary.length; code++) {
+                    nominals[col][code] = dictionary[code].getBytes(StandardCharsets.UTF_8);
+
+                    size += 4 + nominals[col][code].length;
+                }
+            }
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(align(size)).order(ByteOrder.LITTLE_ENDIAN);
+
+        header.putInt(MAGIC).putInt(VERSION).putLong(checksum).putInt(numCols).putInt(numRows);
+
+        for(int col=0; col < numCols; col++) {
+            header.put((byte) table.getType(col));
+            header.putInt(titles[col].length).put(titles[col]);
+
+            if(table.getType(col) == Constant.TYPE_DECIMAL) {
+                ColumnStats stats = table.getStats(col);
+
+                header.putLong(stats.getCount()).putDouble(stats.getMean()).putDouble(stats.getM2());
+                header.putDouble(stats.getMin()).putDouble(stats.getMax());
+            }
+
+            else if(table.getType(col) == Constant.TYPE_NOMINAL) {
+                header.putInt(nominals[col].length);
+
+                for(byte[] nominal: nominals[col])
+                    header.putInt(nominal.length).put(nominal);
+            }
+        }
+
+        header.position(0);
+
+        // Write to the side and move it into place so a reader never sees half
+        // a file, nor do two writers share a temp file
+        Path target = Paths.get(path).toAbsolutePath();
+
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+
+        try (RandomAccessFile file = new RandomAccessFile(temp.toFile(), "rw")) {
+            FileChannel channel = file.getChannel();
+
+            while(header.hasRemaining())
+                channel.write(header);
+
+            ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+            for(int col=0; col < numCols; col++) {
+                if(table.getType(col) == Constant.TYPE_DECIMAL) {
+                    double[] decimals = table.getDecimals(col);
+
+                    for(int row=0; row < numRows; ) {
+                        int n = Math.min(numRows - row, BUFFER_SIZE / 8);
+
+                        buf.clear();
+                        buf.asDoubleBuffer().put(decimals, row, n);
+                        buf.limit(8 * n);
+
+                        while(buf.hasRemaining())
+                            channel.write(buf);
+
+                        row += n;
+                    }
+                }
+                else if(table.getType(col) == Constant.TYPE_NOMINAL) {
+                    int[] codes = table.getCodes(col);
+
+                    for(int row=0; row < numRows; ) {
+                        int n = Math.min(numRows - row, BUFFER_SIZE / 4);
+
+                        buf.clear();
+                        buf.asIntBuffer().put(codes, row, n);
+                        buf.limit(4 * n);
+
+                        while(buf.hasRemaining())
+                            channel.write(buf);
+
+                        row += n;
+                    }
+
+                    // Keep the next column aligned
+                    if(numRows % 2 != 0)
+                        channel.write(ByteBuffer.allocate(4));
+                }
+            }
+        } catch (IOException ex) {
+            Files.deleteIfExists(temp);
+
+            throw ex;
+        }
+
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Reads a snapshot by memory-mapping it.
+     * @param path Snapshot path
+     * @param types Types of data expected in each column
+     * @param checksum Checksum of the CSV the data should come from
+     * @return Data or null if there's no snapshot, it's unreadable, or it
+     * doesn't match the CSV
+     */
+    public static DataTable read(String path, char[] types, long checksum) {
+        if(!new File(path).exists())
+            return null;
+
+        try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+            FileChannel channel = file.getChannel();
+
+            Layout layout = Layout.of(channel);
+
+            if(layout == null || layout.checksum != checksum || !Arrays.equals(layout.types, types))
+                return null;
+
+            int numCols = types.length;
+            int numRows = layout.rows;
+
+            // Copy the columns straight out of the mapping
+            double[][] decimals = new double[numCols][];
+            int[][] codes = new int[numCols][];
+
+            for(int col=0; col < numCols; col++) {
+                if(types[col] == Constant.TYPE_DECIMAL) {
+                    decimals[col] = new double[numRows];
+
+                    map(channel, layout.offsets[col], 8L * numRows).asDoubleBuffer().get(decimals[col]);
+                }
+                else if(types[col] == Constant.TYPE_NOMINAL) {
+                    codes[col] = new int[numRows];
+
+                    map(channel, layout.offsets[col], 4L * numRows).asIntBuffer().get(codes[col]);
+
+                    // A damaged body can still have a good header
+                    if(!isInRange(codes[col], layout.dictionaries[col].length)) {
+                        Logger.getLogger(Snapshot.class.getName()).log(Level.WARNING, "corrupt snapshot {0}", path);
+
+                        return null;
+                    }
+                }
+            }
+
+            return new DataTable(layout.titles, types, numRows, decimals, codes, layout.dictionaries, layout.stats);
+        } catch (IOException | BufferUnderflowException ex) {
+            // Let the caller parse the CSV and snapshot it again
+            Logger.getLogger(Snapshot.class.getName()).log(Level.WARNING, "unreadable snapshot " + path, ex);
+
+            return null;
+        }
+    }
+
+    /**
+     * Tests if nominal codes are all in a dictionary.
+     * @param codes Codes
+     * @param size Dictionary size
+     * @return True if every code is in [0, size)
+     */
+    private static boolean isInRange(int[] codes, int size) {
+        for(int code: codes) {
+            if(code < 0 || code >= size)
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * This class is what the header of a snapshot says: the columns, their
+     * statistics and dictionaries, and where each column starts, so the
+     * rows can be read a few at a time without loading them all.
+     */
+    public static class Layout {
+        // Checksum of the CSV the data came from
+        final long checksum;
+
+        // Column titles
+        final String[] titles;
+
+        // Column types
+        final char[] types;
+
+        // Number of rows
+        final int rows;
+
+        // Statistics by column, null where the column isn't decimal
+        final ColumnStats[] stats;
+
+        // Nominals by code, null where the column isn't nominal
+        final String[][] dictionaries;
+
+        // File offset of each column, doubles or int codes, zero if skipped
+        final long[] offsets;
+
+        private Layout(long checksum, String[] titles, char[] types, int rows, ColumnStats[] stats, String[][] dictionaries, long[] offsets) {
+            this.checksum = checksum;
+            this.titles = titles;
+            this.types = types;
+            this.rows = rows;
+            this.stats = stats;
+            this.dictionaries = dictionaries;
+            this.offsets = offsets;
+        }
+
+        /**
+         * Reads the header of a snapshot.
+         * @param channel Snapshot file
+         * @return Layout or null if it isn't a whole snapshot of this version
+         * @throws IOException
+         */
+        public static Layout of(FileChannel channel) throws IOException {
+            long size = channel.size();
+
+            if(size < 24)
+                return null;
+
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, Integer.MAX_VALUE));
+
+            header.order(ByteOrder.LITTLE_ENDIAN);
+
+            if(header.getInt() != MAGIC || header.getInt() != VERSION)
+                return null;
+
+            // A truncated or corrupt header runs off the end or reads nonsense
+            try {
+                long checksum = header.getLong();
+
+                int numCols = header.getInt();
+                int numRows = header.getInt();
+
+                String[] titles = new String[numCols];
+                char[] types = new char[numCols];
+                String[][] dictionaries = new String[numCols][];
+                ColumnStats[] stats = new ColumnStats[numCols];
+
+                for(int col=0; col < numCols; col++) {
+                    types[col] = (char) header.get();
+
+                    titles[col] = getString(header);
+
+                    if(types[col] == Constant.TYPE_DECIMAL) {
+                        long count = header.getLong();
+                        double mean = header.getDouble();
+                        double m2 = header.getDouble();
+
+                        stats[col] = new ColumnStats(count, mean, m2, header.getDouble(), header.getDouble());
+                    }
+                    else if(types[col] == Constant.TYPE_NOMINAL) {
+                        dictionaries[col] = new String[header.getInt()];
+
+                        for(int code=0; code < dictionaries[col].length; code++)
+                            dictionaries[col][code] = getString(header);
+                    }
+                }
+
+                long[] offsets = new long[numCols];
+
+                long pos = align(header.position());
+
+                for(int col=0; col < numCols; col++) {
+                    if(types[col] == Constant.TYPE_DECIMAL) {
+                        offsets[col] = pos;
+
+                        pos += 8L * numRows;
+                    }
+                    else if(types[col] == Constant.TYPE_NOMINAL) {
+                        offsets[col] = pos;
+
+                        pos += align(4L * numRows);
+                    }
+                }
+
+                // The columns must all be there
+                if(numCols < 0 || numRows < 0 || pos > size)
+                    return null;
+
+                return new Layout(checksum, titles, types, numRows, stats, dictionaries, offsets);
+            } catch (BufferUnderflowException | NegativeArraySizeException ex) {
+                return null;
+            }
+        }
+
+        /**
+         * Gets the column titles.
+         * @return Titles
+         */
+        public String[] getTitles() {
+            return titles;
+        }
+
+        /**
+         * Gets the column types.
+         * @return Types: D decimal, N nominal, - skip
+         */
+        public char[] getTypes() {
+            return types;
+        }
+
+        /**
+         * Gets the number of rows.
+         * @return Rows
+         */
+        public int getRows() {
+            return rows;
+        }
+
+        /**
+         * Gets the statistics of a decimal column.
+         * @param col Column
+         * @return Statistics or null if the column isn't decimal
+         */
+        public ColumnStats getStats(int col) {
+            return stats[col];
+        }
+
+        /**
+         * Gets the nominals of a nominal column.
+         * @param col Column
+         * @return Nominals by code or null if the column isn't nominal
+         */
+        public String[] getDictionary(int col) {
+            return dictionaries[col];
+        }
+
+        /**
+         * Gets where a column starts in the file.
+         * @param col Column
+         * @return File offset
+         */
+        public long getOffset(int col) {
+            return offsets[col];
+        }
+    }
+
+    /**
+     * Maps a region of the snapshot.
+     * @param channel File channel
+     * @param pos File offset
+     * @param size Number of bytes
+     * @return Little endian buffer
+     * @throws IOException
+     */
+    private static ByteBuffer map(FileChannel channel, long pos, long size) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, pos, size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Gets a length-prefixed UTF-8 string.
+     * @param buf Buffer
+     * @return String
+     */
+    private static String getString(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.getInt()];
+
+        buf.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Rounds a size up to a multiple of eight.
+     * @param size Size in bytes
+     * @return Aligned size
+     */
+    private static int align(int size) {
+        return (size + 7) & ~7;
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+}
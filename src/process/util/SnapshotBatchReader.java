@@ -0,0 +1,170 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.util;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * This class streams the rows of a snapshot. The header has the statistics
+ * and the class dictionary, so there's nothing to scan first, and a batch is
+ * a read of a run of each column.
+ * @author Ron.Coleman
+ */
+public class SnapshotBatchReader extends NormalizedBatchReader {
+    // Snapshot file
+    private final RandomAccessFile file;
+
+    // What the header says
+    private final Snapshot.Layout layout;
+
+    // Subtype code of each table code
+    private final int[] recode;
+
+    // Next row to read
+    private int next = 0;
+
+    // Bytes of one column of a batch
+    private ByteBuffer buf = null;
+
+    // Decimals of one column of a batch
+    private double[] column = null;
+
+    // Class codes of a batch
+    private int[] codes = null;
+
+    /**
+     * Constructor
+     * @param path Snapshot path
+     * @param classifying Title of the class column
+     * @param normalization Normalization: range or zscore
+     * @param labels Label encoding: equilateral, oneofn, or binary
+     * @throws Exception
+     */
+    public SnapshotBatchReader(String path, String classifying, String normalization, String labels) throws Exception {
+        file = new RandomAccessFile(path, "r");
+
+        try {
+            layout = Snapshot.Layout.of(file.getChannel());
+
+            if(layout == null)
+                throw new Exception("not a snapshot: " + path);
+
+            int col = Arrays.asList(layout.titles).indexOf(classifying);
+
+            define(layout.titles, layout.types, layout.stats, col < 0 ? null : layout.dictionaries[col],
+                    classifying, normalization, labels);
+
+            recode = recode(layout.dictionaries[classColumn]);
+        }
+        catch(Exception ex) {
+            file.close();
+            throw ex;
+        }
+    }
+
+    @Override
+    public int read(MiniBatch batch) throws IOException {
+        int n = Math.min(batch.getCapacity(), layout.rows - next);
+
+        if(n <= 0) {
+            batch.setRows(0);
+            return 0;
+        }
+
+        if(column == null || column.length < n) {
+            buf = ByteBuffer.allocateDirect(8 * n).order(ByteOrder.LITTLE_ENDIAN);
+            column = new double[n];
+            codes = new int[n];
+        }
+
+        double[] data = batch.getData();
+
+        int stride = batch.getStride();
+
+        FileChannel channel = file.getChannel();
+
+        for(int k=0; k < inputColumns.length; k++) {
+            fill(channel, layout.offsets[inputColumns[k]] + 8L * next, 8 * n);
+
+            buf.asDoubleBuffer().get(column, 0, n);
+
+            for(int row=0; row < n; row++)
+                data[row * stride + k] = normalizer.normalize(k, column[row]);
+        }
+
+        fill(channel, layout.offsets[classColumn] + 4L * next, 4 * n);
+
+        buf.asIntBuffer().get(codes, 0, n);
+
+        int inputSize = inputColumns.length;
+
+        for(int row=0; row < n; row++) {
+            if(codes[row] < 0 || codes[row] >= recode.length)
+                throw new IOException("corrupt snapshot: bad class code " + codes[row] + " row " + (next + row + 1));
+
+            labels.encode(recode[codes[row]], data, row * stride + inputSize);
+        }
+
+        next += n;
+
+        batch.setRows(n);
+
+        return n;
+    }
+
+    /**
+     * Reads bytes of the file into the buffer.
+     * @param channel Snapshot file
+     * @param pos File offset
+     * @param length Number of bytes
+     * @throws IOException
+     */
+    private void fill(FileChannel channel, long pos, int length) throws IOException {
+        buf.clear();
+        buf.limit(length);
+
+        while(buf.hasRemaining()) {
+            int n = channel.read(buf, pos + buf.position());
+
+            if(n < 0)
+                throw new IOException("snapshot truncated");
+        }
+
+        buf.flip();
+    }
+
+    @Override
+    public void rewind() {
+        next = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
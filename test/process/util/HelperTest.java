@@ -0,0 +1,57 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * This class tests the helper's row shuffle.
+ * @author Ron.Coleman
+ */
+public class HelperTest {
+    @Test
+    public void testShuffleMatchesCollections() {
+        for(int n: new int[] { 0, 1, 2, 5, 150, 10000 }) {
+            for(long seed=0; seed < 3; seed++) {
+                List<Integer> rows = new ArrayList<>();
+
+                for(int k=0; k < n; k++)
+                    rows.add(k);
+
+                Collections.shuffle(rows, new Random(seed));
+
+                int[] order = Helper.shuffle(n, new Random(seed));
+
+                assertEquals(n, order.length);
+
+                for(int k=0; k < n; k++)
+                    assertEquals("n=" + n + " seed=" + seed, (int) rows.get(k), order[k]);
+            }
+        }
+    }
+}
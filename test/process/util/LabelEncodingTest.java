@@ -0,0 +1,167 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.util;
+
+import java.util.Random;
+import org.encog.mathutil.Equilateral;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This class tests that every label encoding decodes what it encodes,
+ * with and without some noise on the outputs.
+ * @author Ron.Coleman
+ */
+public class LabelEncodingTest {
+    // Class counts to try
+    private final static int[] CLASSES = { 3, 4, 7, 16, 100 };
+
+    @Test
+    public void testEquilateral() {
+        for(int classes: CLASSES) {
+            LabelEncoding labels = roundTrip(LabelEncoding.EQUILATERAL, classes);
+
+            assertEquals(classes - 1, labels.getWidth());
+
+            // Same encodings as Encog's
+            Equilateral eq = new Equilateral(classes, -1, 1);
+
+            for(int code=0; code < classes; code++)
+                assertArrayEquals(eq.encode(code), encode(labels, code), 0);
+        }
+    }
+
+    @Test
+    public void testOneOfN() {
+        for(int classes: CLASSES) {
+            LabelEncoding labels = roundTrip(LabelEncoding.ONE_OF_N, classes);
+
+            assertEquals(classes, labels.getWidth());
+        }
+    }
+
+    @Test
+    public void testBinary() {
+        for(int classes: CLASSES) {
+            LabelEncoding labels = roundTrip(LabelEncoding.BINARY, classes);
+
+            assertEquals(32 - Integer.numberOfLeadingZeros(classes - 1), labels.getWidth());
+        }
+
+        assertEquals(1, roundTrip(LabelEncoding.BINARY, 2).getWidth());
+    }
+
+    @Test
+    public void testBinaryPastLastClass() {
+        // Seven in three bits, but there are only five classes
+        LabelEncoding labels = new LabelEncoding(LabelEncoding.BINARY, 5);
+
+        int code = labels.decode(new double[] { 1, 1, 1 });
+
+        assertTrue(code >= 0 && code < 5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEquilateralTooFewClasses() {
+        new LabelEncoding(LabelEncoding.EQUILATERAL, Equilateral.MIN_EQ - 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadKind() {
+        new LabelEncoding("ordinal", 3);
+    }
+
+    /**
+     * Encodes and decodes every class, exactly and with noise.
+     * @param kind Encoding
+     * @param classes Number of classes
+     * @return Encoding
+     */
+    private static LabelEncoding roundTrip(String kind, int classes) {
+        LabelEncoding labels = new LabelEncoding(kind, classes);
+
+        assertEquals(kind, labels.getKind());
+        assertEquals(classes, labels.getClasses());
+        assertEquals(classes * labels.getWidth(), labels.getTable().length);
+
+        Random ran = new Random(0);
+
+        for(int code=0; code < classes; code++) {
+            double[] outputs = encode(labels, code);
+
+            assertEquals(kind + " " + classes, code, labels.decode(outputs));
+
+            // Well short of halfway to any other class
+            for(int k=0; k < outputs.length; k++)
+                outputs[k] += (ran.nextDouble() - 0.5) * noise(labels);
+
+            assertEquals(kind + " " + classes + " noisy", code, labels.decode(outputs));
+        }
+
+        return labels;
+    }
+
+    /**
+     * Gets a class's encoding.
+     * @param labels Encoding
+     * @param code Class code
+     * @return Encoding
+     */
+    private static double[] encode(LabelEncoding labels, int code) {
+        double[] outputs = new double[labels.getWidth()];
+
+        labels.encode(code, outputs, 0);
+
+        return outputs;
+    }
+
+    /**
+     * Gets the noise each output can take and still decode to the same
+     * class: under half the nearest distance between two classes spread
+     * over the outputs.
+     * @param labels Encoding
+     * @return Noise
+     */
+    private static double noise(LabelEncoding labels) {
+        double[] table = labels.getTable();
+
+        int width = labels.getWidth();
+
+        double min = Double.POSITIVE_INFINITY;
+
+        for(int a=0; a < labels.getClasses(); a++) {
+            for(int b=a+1; b < labels.getClasses(); b++) {
+                double dist = 0;
+
+                for(int k=0; k < width; k++)
+                    dist += Math.pow(table[a * width + k] - table[b * width + k], 2);
+
+                min = Math.min(min, Math.sqrt(dist));
+            }
+        }
+
+        return min / Math.sqrt(width);
+    }
+}
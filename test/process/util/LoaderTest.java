@@ -0,0 +1,299 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.util;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import process.bench.SyntheticCsv;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * This class tests that every loader gets the same table out of a CSV file
+ * as the line-at-a-time text loader.
+ * @author Ron.Coleman
+ */
+public class LoaderTest {
+    // Rows in the test file
+    private final static int ROWS = 20000;
+
+    // Features in the test file
+    private final static int WIDTH = 4;
+
+    // Test file
+    private File csv;
+
+    // Loader to put back after each test
+    private String loader;
+
+    // Snapshot setting to put back after each test
+    private boolean snapshot;
+
+    // Chunk sizes to put back after each test
+    private int chunkSize;
+    private int minChunkSize;
+    private int blockSize;
+    private int streamBlockSize;
+
+    @Before
+    public void setUp() throws Exception {
+        csv = File.createTempFile("iris", ".csv");
+
+        SyntheticCsv.write(csv.getPath(), ROWS, WIDTH, 3, 0);
+
+        loader = Helper.LOADER;
+        snapshot = Helper.SNAPSHOT;
+        chunkSize = MappedCsvLoader.CHUNK_SIZE;
+        minChunkSize = MappedCsvLoader.MIN_CHUNK_SIZE;
+        blockSize = PipelinedCsvLoader.BLOCK_SIZE;
+        streamBlockSize = CsvBatchReader.BLOCK_SIZE;
+
+        Helper.DEBUGGING = false;
+    }
+
+    @After
+    public void tearDown() {
+        Helper.LOADER = loader;
+        Helper.SNAPSHOT = snapshot;
+        MappedCsvLoader.CHUNK_SIZE = chunkSize;
+        MappedCsvLoader.MIN_CHUNK_SIZE = minChunkSize;
+        PipelinedCsvLoader.BLOCK_SIZE = blockSize;
+        CsvBatchReader.BLOCK_SIZE = streamBlockSize;
+
+        csv.delete();
+
+        new File(csv.getPath() + Snapshot.EXTENSION).delete();
+    }
+
+    @Test
+    public void testMapped() throws Exception {
+        assertSameTable(load("text"), load("mapped"));
+    }
+
+    @Test
+    public void testParallel() throws Exception {
+        // Small chunks so rows and nominals straddle many chunk boundaries
+        MappedCsvLoader.CHUNK_SIZE = 16 * 1024;
+        MappedCsvLoader.MIN_CHUNK_SIZE = 16 * 1024;
+
+        assertSameTable(load("text"), load("mapped"));
+        assertSameTable(load("text"), load("parallel"));
+    }
+
+    @Test
+    public void testPipelined() throws Exception {
+        // Small blocks so the pipeline carries partial rows many times over
+        PipelinedCsvLoader.BLOCK_SIZE = 4 * 1024;
+
+        assertSameTable(load("text"), load("pipelined"));
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        Dataset text = load("text");
+
+        Helper.SNAPSHOT = true;
+
+        // The first load writes the snapshot, the second maps it
+        assertSameTable(text, load("mapped"));
+
+        assertTrue(new File(csv.getPath() + Snapshot.EXTENSION).exists());
+
+        assertSameTable(text, load("mapped"));
+    }
+
+    @Test
+    public void testTruncatedSnapshot() throws Exception {
+        Dataset text = load("text");
+
+        Helper.SNAPSHOT = true;
+
+        load("mapped");
+
+        String path = csv.getPath() + Snapshot.EXTENSION;
+
+        try (RandomAccessFile file = new RandomAccessFile(path, "rw")) {
+            file.setLength(file.length() / 2);
+        }
+
+        long checksum = Snapshot.checksum(csv.getPath());
+
+        assertNull(Snapshot.read(path, SyntheticCsv.getTypes(WIDTH), checksum));
+
+        // A bad snapshot gets parsed over again and replaced
+        assertSameTable(text, load("mapped"));
+
+        assertSameTable(text, load("mapped"));
+    }
+
+    @Test
+    public void testCorruptSnapshot() throws Exception {
+        Dataset text = load("text");
+
+        Helper.SNAPSHOT = true;
+
+        load("mapped");
+
+        String path = csv.getPath() + Snapshot.EXTENSION;
+
+        // Good header, but a class code past the end of the dictionary
+        try (RandomAccessFile file = new RandomAccessFile(path, "rw")) {
+            Snapshot.Layout layout = Snapshot.Layout.of(file.getChannel());
+
+            file.seek(layout.getOffset(WIDTH) + 4L * (ROWS / 2));
+
+            file.writeInt(Integer.reverseBytes(999));
+        }
+
+        long checksum = Snapshot.checksum(csv.getPath());
+
+        assertNull(Snapshot.read(path, SyntheticCsv.getTypes(WIDTH), checksum));
+
+        assertSameTable(text, load("mapped"));
+    }
+
+    @Test
+    public void testBlankRows() throws Exception {
+        // Blank rows here and there, some with carriage returns, and at the end
+        StringBuilder text = new StringBuilder("a,b,c,d,iris\n");
+
+        for(int row=0; row < 3000; row++) {
+            text.append(row % 4).append(".5,1,2,").append(row).append(",class").append(row % 5).append('\n');
+
+            if(row % 7 == 0)
+                text.append(row % 2 == 0 ? "\n" : "\r\n");
+        }
+
+        text.append('\n');
+
+        Files.write(csv.toPath(), text.toString().getBytes(StandardCharsets.UTF_8));
+
+        MappedCsvLoader.CHUNK_SIZE = 1024;
+        MappedCsvLoader.MIN_CHUNK_SIZE = 1024;
+        PipelinedCsvLoader.BLOCK_SIZE = 1024;
+
+        Dataset expected = load("text");
+
+        assertEquals(3000, expected.getRowCount());
+
+        for(String loader: new String[] { "mapped", "parallel", "pipelined" })
+            assertSameTable(expected, load(loader));
+    }
+
+    @Test
+    public void testBadRowLine() throws Exception {
+        StringBuilder text = new StringBuilder("a,b,c,d,iris\n");
+
+        int line = 1;
+
+        for(int row=0; row < 2000; row++) {
+            text.append("1,2,3,4,setosa\n");
+            line++;
+
+            if(row % 10 == 0) {
+                text.append('\n');
+                line++;
+            }
+        }
+
+        text.append("1,2,x,4,setosa\n");
+        line++;
+
+        text.append("1,2,3,4,setosa\n");
+
+        Files.write(csv.toPath(), text.toString().getBytes(StandardCharsets.UTF_8));
+
+        MappedCsvLoader.CHUNK_SIZE = 1024;
+        MappedCsvLoader.MIN_CHUNK_SIZE = 1024;
+        PipelinedCsvLoader.BLOCK_SIZE = 1024;
+        CsvBatchReader.BLOCK_SIZE = 1024;
+
+        String expected = "bad decimal 'x' line " + line;
+
+        for(String loader: new String[] { "text", "mapped", "parallel", "pipelined" }) {
+            try {
+                load(loader);
+
+                fail(loader + " loaded a bad row");
+            } catch (Exception ex) {
+                assertEquals(loader, expected, ex.getMessage());
+            }
+        }
+
+        try {
+            new CsvBatchReader(csv.getPath(), SyntheticCsv.getTypes(WIDTH), SyntheticCsv.CLASSIFYING, "range", LabelEncoding.EQUILATERAL).close();
+
+            fail("streamed a bad row");
+        } catch (Exception ex) {
+            assertEquals("stream", expected, ex.getMessage());
+        }
+    }
+
+    /**
+     * Loads the test file.
+     * @param loader Loader to use
+     * @return Data set
+     * @throws Exception
+     */
+    private Dataset load(String loader) throws Exception {
+        Helper.LOADER = loader;
+
+        return Helper.loadCsv(csv.getPath(), SyntheticCsv.getTypes(WIDTH), SyntheticCsv.CLASSIFYING);
+    }
+
+    /**
+     * Asserts two data sets hold the same columns, codes, and row order.
+     * @param expected Data set from the text loader
+     * @param actual Data set from another loader
+     */
+    static void assertSameTable(Dataset expected, Dataset actual) {
+        DataTable want = expected.getTable();
+        DataTable got = actual.getTable();
+
+        assertEquals(want.getRowCount(), got.getRowCount());
+        assertEquals(want.getColumnCount(), got.getColumnCount());
+
+        for(int col=0; col < want.getColumnCount(); col++) {
+            assertEquals(want.getTitle(col), got.getTitle(col));
+            assertEquals(want.getType(col), got.getType(col));
+
+            if(want.getType(col) == Constant.TYPE_DECIMAL)
+                assertArrayEquals(want.getTitle(col), want.getDecimals(col), got.getDecimals(col), 0);
+
+            else if(want.getType(col) == Constant.TYPE_NOMINAL) {
+                assertArrayEquals(want.getTitle(col), want.getCodes(col), got.getCodes(col));
+                assertArrayEquals(want.getTitle(col), want.getDictionary(col), got.getDictionary(col));
+            }
+        }
+
+        assertArrayEquals(expected.getOrder(), actual.getOrder());
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.encog.engine.network.activation.ActivationSigmoid;
+import org.encog.engine.network.activation.ActivationTANH;
+import org.encog.neural.networks.BasicNetwork;
+import org.encog.neural.networks.layers.BasicLayer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import process.score.BatchClassifier;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+/**
+ * This class tests that a model loads back just as it was saved and that a
+ * damaged model fails to load rather than loading wrong.
+ * @author Ron.Coleman
+ */
+public class ModelArtifactTest {
+    // Input titles
+    private final static List<String> INPUTS = Arrays.asList("sepal length", "sepal width", "petal length", "petal width");
+
+    // Class titles
+    private final static List<String> SUBTYPES = Arrays.asList("setosa", "versicolor", "virginica");
+
+    // Set if a class named by a model file gets initialized
+    static boolean initialized = false;
+
+    /**
+     * This class isn't an activation and notes if it's ever initialized.
+     */
+    static class Trap {
+        static {
+            initialized = true;
+        }
+    }
+
+    // Model file
+    private File path;
+
+    // Model saved
+    private ModelArtifact model;
+
+    @Before
+    public void setUp() throws Exception {
+        path = File.createTempFile("iris", ModelArtifact.EXTENSION);
+
+        BasicNetwork network = new BasicNetwork();
+
+        network.addLayer(new BasicLayer(null, true, INPUTS.size()));
+        network.addLayer(new BasicLayer(new ActivationSigmoid(), true, 7));
+        network.addLayer(new BasicLayer(new ActivationTANH(), false, SUBTYPES.size() - 1));
+
+        network.getStructure().finalizeStructure();
+
+        network.reset(0);
+
+        ColumnStats[] stats = new ColumnStats[INPUTS.size()];
+
+        for(int k=0; k < stats.length; k++)
+            stats[k] = new ColumnStats(150, 3 + k, 20 + k, 1 + k, 7 + k);
+
+        Normalizer normalizer = Normalizer.range(stats, -1, 1);
+
+        model = new ModelArtifact(network, normalizer, INPUTS, "iris", SUBTYPES, LabelEncoding.EQUILATERAL);
+
+        model.save(path.getPath());
+    }
+
+    @After
+    public void tearDown() {
+        path.delete();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        ModelArtifact loaded = ModelArtifact.load(path.getPath());
+
+        assertEquals(INPUTS, loaded.getInputs());
+        assertEquals("iris", loaded.getClassifying());
+        assertEquals(SUBTYPES, loaded.getSubtypes());
+        assertEquals(LabelEncoding.EQUILATERAL, loaded.getLabels());
+
+        BasicNetwork want = model.getNetwork();
+        BasicNetwork got = loaded.getNetwork();
+
+        assertEquals(want.getLayerCount(), got.getLayerCount());
+
+        for(int layer=0; layer < want.getLayerCount(); layer++) {
+            assertEquals(want.getLayerNeuronCount(layer), got.getLayerNeuronCount(layer));
+            assertEquals(want.isLayerBiased(layer), got.isLayerBiased(layer));
+
+            if(layer > 0)
+                assertEquals(want.getActivation(layer).getClass(), got.getActivation(layer).getClass());
+        }
+
+        assertArrayEquals(want.getFlat().getWeights(), got.getFlat().getWeights(), 0);
+
+        Normalizer norm = loaded.getNormalizer();
+
+        assertEquals(model.getNormalizer().isZScore(), norm.isZScore());
+        assertEquals(model.getNormalizer().getLow(), norm.getLow(), 0);
+        assertEquals(model.getNormalizer().getHigh(), norm.getHigh(), 0);
+
+        for(int k=0; k < INPUTS.size(); k++) {
+            ColumnStats a = model.getNormalizer().getStats()[k];
+            ColumnStats b = norm.getStats()[k];
+
+            assertEquals(a.getCount(), b.getCount());
+            assertEquals(a.getMean(), b.getMean(), 0);
+            assertEquals(a.getM2(), b.getM2(), 0);
+            assertEquals(a.getMin(), b.getMin(), 0);
+            assertEquals(a.getMax(), b.getMax(), 0);
+        }
+
+        // Same answers on raw rows
+        BatchClassifier before = model.createClassifier();
+        BatchClassifier after = loaded.createClassifier();
+
+        Random ran = new Random(0);
+
+        double[] rows = new double[100 * INPUTS.size()];
+
+        for(int k=0; k < rows.length; k++)
+            rows[k] = 1 + 8 * ran.nextDouble();
+
+        int[] wantClasses = new int[100];
+        int[] gotClasses = new int[100];
+
+        before.classify(rows, 100, wantClasses);
+        after.classify(rows, 100, gotClasses);
+
+        assertArrayEquals(wantClasses, gotClasses);
+    }
+
+    @Test
+    public void testNotAnActivation() throws Exception {
+        byte[] bytes = Files.readAllBytes(path.toPath());
+
+        Files.write(path.toPath(), replace(bytes, ActivationSigmoid.class.getName(), Trap.class.getName()));
+
+        try {
+            ModelArtifact.load(path.getPath());
+
+            fail("loaded " + Trap.class.getName() + " as an activation");
+        } catch (IOException ex) {
+            // Expected
+        }
+
+        assertFalse(initialized);
+    }
+
+    @Test
+    public void testOutputsDontFitLabels() throws Exception {
+        // Three outputs but equilateral needs two for three classes
+        BasicNetwork network = new BasicNetwork();
+
+        network.addLayer(new BasicLayer(null, true, INPUTS.size()));
+        network.addLayer(new BasicLayer(new ActivationTANH(), false, SUBTYPES.size()));
+
+        network.getStructure().finalizeStructure();
+
+        new ModelArtifact(network, model.getNormalizer(), INPUTS, "iris", SUBTYPES, LabelEncoding.EQUILATERAL).save(path.getPath());
+
+        try {
+            ModelArtifact.load(path.getPath());
+
+            fail("loaded a network with the wrong outputs");
+        } catch (IOException ex) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testTruncated() throws Exception {
+        byte[] bytes = Files.readAllBytes(path.toPath());
+
+        for(int length: new int[] { 0, 3, 20, bytes.length / 2, bytes.length - 1 }) {
+            Files.write(path.toPath(), Arrays.copyOf(bytes, length));
+
+            try {
+                ModelArtifact.load(path.getPath());
+
+                fail("loaded " + length + " of " + bytes.length + " bytes");
+            } catch (IOException ex) {
+                // Expected
+            }
+        }
+    }
+
+    /**
+     * Replaces a length-prefixed string in a model file.
+     * @param bytes Model file
+     * @param from String to replace
+     * @param to Replacement
+     * @return New model file
+     */
+    private static byte[] replace(byte[] bytes, String from, String to) {
+        byte[] old = from.getBytes(StandardCharsets.UTF_8);
+        byte[] with = to.getBytes(StandardCharsets.UTF_8);
+
+        for(int at=4; at + old.length <= bytes.length; at++) {
+            if(!Arrays.equals(old, Arrays.copyOfRange(bytes, at, at + old.length)))
+                continue;
+
+            ByteBuffer buf = ByteBuffer.allocate(bytes.length - old.length + with.length).order(ByteOrder.LITTLE_ENDIAN);
+
+            buf.put(bytes, 0, at - 4);
+            buf.putInt(with.length).put(with);
+            buf.put(bytes, at + old.length, bytes.length - at - old.length);
+
+            return buf.array();
+        }
+
+        throw new AssertionError(from + " not found");
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ Copyright (c) Ron Coleman
+
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package process.util;
+
+import java.util.Random;
+import org.encog.util.arrayutil.NormalizationAction;
+import org.encog.util.arrayutil.NormalizedField;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * This class tests the normalizer against Encog's NormalizedField, which
+ * it replaced, and against z-scores worked out the long way.
+ * @author Ron.Coleman
+ */
+public class NormalizerTest {
+    // Rows in the test table
+    private final static int ROWS = 1000;
+
+    // Largest difference we accept from the reference
+    private final static double TOLERANCE = 1e-12;
+
+    // Test table: two decimal columns, a constant one, and the class
+    private DataTable table;
+
+    // Decimal columns, in input order
+    private final int[] cols = { 0, 1, 2 };
+
+    // Shuffled row order
+    private int[] order;
+
+    @Before
+    public void setUp() {
+        Random ran = new Random(0);
+
+        double[][] decimals = new double[4][ROWS];
+        int[][] codes = new int[4][];
+
+        codes[3] = new int[ROWS];
+
+        for(int row=0; row < ROWS; row++) {
+            decimals[0][row] = 4 + 4 * ran.nextDouble();
+            decimals[1][row] = 100 * ran.nextGaussian();
+            decimals[2][row] = 5;
+        }
+
+        String[] titles = { "a", "b", "c", "iris" };
+        char[] types = { Constant.TYPE_DECIMAL, Constant.TYPE_DECIMAL, Constant.TYPE_DECIMAL, Constant.TYPE_NOMINAL };
+        String[][] dictionaries = { null, null, null, { "setosa" } };
+
+        table = new DataTable(titles, types, ROWS, new double[][] { decimals[0], decimals[1], decimals[2], null }, codes, dictionaries);
+
+        order = Helper.shuffle(ROWS, ran);
+    }
+
+    @Test
+    public void testRangeMatchesNormalizedField() {
+        Normalizer normalizer = Normalizer.fit(table, cols, -1, 1);
+
+        double[] out = normalize(normalizer);
+
+        // The constant column is left out, NormalizedField gives NaN for it
+        for(int k=0; k < 2; k++) {
+            double[] column = table.getDecimals(cols[k]);
+
+            NormalizedField field = new NormalizedField(NormalizationAction.Normalize, null, max(column), min(column), 1, -1);
+
+            for(int row=0; row < ROWS; row++)
+                assertEquals(field.normalize(column[order[row]]), out[row * cols.length + k], TOLERANCE);
+        }
+
+        for(int row=0; row < ROWS; row++)
+            assertEquals(0, out[row * cols.length + 2], 0);
+    }
+
+    @Test
+    public void testZScore() {
+        Normalizer normalizer = Normalizer.fitZScore(table, cols);
+
+        double[] out = normalize(normalizer);
+
+        for(int k=0; k < 2; k++) {
+            double[] column = table.getDecimals(cols[k]);
+
+            double mean = 0;
+
+            for(double x: column)
+                mean += x / ROWS;
+
+            double variance = 0;
+
+            for(double x: column)
+                variance += (x - mean) * (x - mean) / ROWS;
+
+            double sd = Math.sqrt(variance);
+
+            for(int row=0; row < ROWS; row++)
+                assertEquals((column[order[row]] - mean) / sd, out[row * cols.length + k], 1e-9);
+        }
+
+        for(int row=0; row < ROWS; row++)
+            assertEquals(0, out[row * cols.length + 2], 0);
+    }
+
+    @Test
+    public void testRowMatchesTable() {
+        Normalizer normalizer = Normalizer.fit(table, cols, -1, 1);
+
+        double[] out = normalize(normalizer);
+
+        for(int row=0; row < ROWS; row++) {
+            double[] raw = new double[cols.length];
+
+            for(int k=0; k < cols.length; k++)
+                raw[k] = table.getDecimals(cols[k])[order[row]];
+
+            normalizer.normalize(raw);
+
+            for(int k=0; k < cols.length; k++)
+                assertEquals(out[row * cols.length + k], raw[k], 0);
+        }
+    }
+
+    /**
+     * Normalizes the test table in two runs of rows.
+     * @param normalizer Normalizer
+     * @return Normalized rows
+     */
+    private double[] normalize(Normalizer normalizer) {
+        double[] data = new double[ROWS * cols.length];
+
+        DoubleStore store = new DoubleStore.Heap(data);
+
+        normalizer.normalize(table, cols, order, 0, ROWS / 3, store, 0, cols.length);
+        normalizer.normalize(table, cols, order, ROWS / 3, ROWS, store, 0, cols.length);
+
+        return data;
+    }
+
+    private static double min(double[] xs) {
+        double min = Double.POSITIVE_INFINITY;
+
+        for(double x: xs)
+            min = Math.min(min, x);
+
+        return min;
+    }
+
+    private static double max(double[] xs) {
+        double max = Double.NEGATIVE_INFINITY;
+
+        for(double x: xs)
+            max = Math.max(max, x);
+
+        return max;
+    }
+}